@@ -5,6 +5,8 @@ plugins {
 	id("io.freefair.lombok") version "8.6"
 	id("com.diffplug.spotless") version "6.25.0"
 	id("org.openapi.generator") version "7.4.0"
+	id("me.champeau.jmh") version "0.7.2"
+	id("org.graalvm.buildtools.native") version "0.10.3"
 }
 
 group = "gae.piaz"
@@ -29,6 +31,8 @@ repositories {
 dependencies {
 	implementation("org.springframework.boot:spring-boot-starter-data-jpa")
 	implementation("org.springframework.boot:spring-boot-starter-web")
+	implementation("org.hibernate.orm:hibernate-jcache")
+	implementation("com.github.ben-manes.caffeine:jcache")
 
 	implementation("com.flipkart.zjsonpatch:zjsonpatch:0.4.16")
 
@@ -36,6 +40,9 @@ dependencies {
 	implementation("org.springframework.boot:spring-boot-starter-actuator")
 
 	compileOnly("org.projectlombok:lombok")
+	// generates the update beans, mappers and Jackson (de)serializers of the @PatchBean entities
+	compileOnly(project(":patch-processor"))
+	annotationProcessor(project(":patch-processor"))
 	runtimeOnly("com.h2database:h2")
 	annotationProcessor("org.projectlombok:lombok")
 	testImplementation("org.springframework.boot:spring-boot-starter-test")
@@ -46,19 +53,86 @@ tasks.withType<Test> {
 	useJUnitPlatform()
 }
 
+// the integration tests against the AOT-processed contexts of processTestAot, on the JVM: a quicker
+// check of the AOT and runtime hints setup than nativeTest, which compiles them to a native image
+val testAot by tasks.registering(Test::class) {
+	group = "verification"
+	description = "Runs the integration tests against their AOT-processed application contexts."
+	testClassesDirs = sourceSets.test.get().output.classesDirs
+	// the Spring Boot plugin adds the output of processTestAot to the test runtime classpath
+	classpath = sourceSets.test.get().runtimeClasspath
+	systemProperty("spring.aot.enabled", "true")
+	filter {
+		includeTestsMatching("*IntegrationTest")
+	}
+}
+
 spotless {
 	java {
+		// not the sources generated by processAot and processTestAot under build/
+		target("src/*/java/**/*.java")
 		toggleOffOn()
 		googleJavaFormat().aosp()
 	}
 }
 
+jmh {
+	// gc adds the allocation rate and GC counts per operation to every benchmark
+	profilers.add("gc")
+	// JSON results, to compare the numbers between changes
+	resultFormat.set("JSON")
+	resultsFile.set(layout.buildDirectory.file("results/jmh/results.json"))
+	// run a subset with e.g. ./gradlew jmh -PjmhIncludes=AuthorPatchServiceBenchmark
+	includes.addAll(providers.gradleProperty("jmhIncludes").map { listOf(it) }.orElse(listOf()))
+}
+
+tasks.jmhJar {
+	// the fat jar keeps the JDK 21 classes of the dependencies, e.g. the virtual threads of Spring
+	manifest {
+		attributes("Multi-Release" to "true")
+	}
+}
+
+// the OpenAPI document of the @JsonPatchUpdate endpoints, see OpenApiGenerator: the YAML feeds the
+// typescript-axios generator and openApiValidate, the JSON is packaged and served at /api-docs;
+// both are build outputs, regenerated from the controllers, none is kept in the source tree
+val openApiDocsDir = layout.buildDirectory.dir("generated/openapi")
+val openApiYaml = layout.buildDirectory.file("generated/api/api-docs.yaml")
+
+val generateOpenApi by tasks.registering(JavaExec::class) {
+	group = "documentation"
+	description = "Generates the OpenAPI document of the JSON Patch endpoints."
+	classpath = files(sourceSets.main.get().output.classesDirs, configurations.runtimeClasspath)
+	mainClass.set("gae.piaz.jsonpatch.config.OpenApiGenerator")
+	val json = openApiDocsDir.map { it.file("openapi/api-docs.json") }
+	inputs.files(sourceSets.main.get().output.classesDirs)
+	outputs.file(openApiYaml)
+	outputs.dir(openApiDocsDir)
+	argumentProviders.add(
+		CommandLineArgumentProvider {
+			listOf(openApiYaml.get().asFile.absolutePath, json.get().asFile.absolutePath)
+		}
+	)
+}
+
+sourceSets.main {
+	resources.srcDir(files(openApiDocsDir).builtBy(generateOpenApi))
+}
+
 openApiValidate {
-	inputSpec.set("$rootDir/api/api-docs.yaml")
+	inputSpec.set(openApiYaml.map { it.asFile.absolutePath })
+}
+
+tasks.openApiValidate {
+	dependsOn(generateOpenApi)
+}
+
+tasks.openApiGenerate {
+	dependsOn(generateOpenApi)
 }
 
 openApiGenerate {
 	generatorName.set("typescript-axios")
-	inputSpec.set("$rootDir/api/api-docs.yaml")
+	inputSpec.set(openApiYaml.map { it.asFile.absolutePath })
 	outputDir.set("$rootDir/frontend/api/")
 }
@@ -0,0 +1,19 @@
+// Annotation processor generating the update beans, their mappers and their Jackson
+// (de)serializers from @PatchBean entities. It has no dependencies: the generated code only
+// refers to classes of the project it runs on.
+plugins {
+	`java-library`
+}
+
+group = "gae.piaz"
+version = "0.0.1-SNAPSHOT"
+
+java {
+	toolchain {
+		languageVersion = JavaLanguageVersion.of(22)
+	}
+}
+
+repositories {
+	mavenCentral()
+}
@@ -0,0 +1,692 @@
+package gae.piaz.jsonpatch.processor;
+
+import gae.piaz.jsonpatch.processor.PatchBeanProcessor.Items;
+import gae.piaz.jsonpatch.processor.PatchBeanProcessor.Model;
+import gae.piaz.jsonpatch.processor.PatchBeanProcessor.Property;
+import gae.piaz.jsonpatch.processor.PatchBeanProcessor.Reference;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/** Writes the sources of the classes generated for a {@link PatchBean} entity. */
+final class BeanWriter {
+
+    private static final String JACKSON_CORE = "com.fasterxml.jackson.core.";
+    private static final String JACKSON_DATABIND = "com.fasterxml.jackson.databind.";
+    private static final String JSON_SERIALIZE =
+            "@" + JACKSON_DATABIND + "annotation.JsonSerialize(using = ";
+    private static final String JSON_DESERIALIZE =
+            "@" + JACKSON_DATABIND + "annotation.JsonDeserialize(using = ";
+    private static final String PATCH_CORE = "gae.piaz.jsonpatch.service.core.";
+
+    private static final Map<String, String> BOXES =
+            Map.of(
+                    "boolean", "java.lang.Boolean",
+                    "byte", "java.lang.Byte",
+                    "short", "java.lang.Short",
+                    "int", "java.lang.Integer",
+                    "long", "java.lang.Long",
+                    "char", "java.lang.Character",
+                    "float", "java.lang.Float",
+                    "double", "java.lang.Double");
+
+    /** Boxed types written by a JsonGenerator method, and the token read straight from them. */
+    private static final Map<String, String[]> SCALARS =
+            Map.of(
+                    "java.lang.String", new String[] {"writeString", "VALUE_STRING", "getText"},
+                    "java.lang.Integer",
+                            new String[] {"writeNumber", "VALUE_NUMBER_INT", "getIntValue"},
+                    "java.lang.Long",
+                            new String[] {"writeNumber", "VALUE_NUMBER_INT", "getLongValue"},
+                    "java.lang.Short", new String[] {"writeNumber", null, null},
+                    "java.lang.Double",
+                            new String[] {"writeNumber", "VALUE_NUMBER_FLOAT", "getDoubleValue"},
+                    "java.lang.Float", new String[] {"writeNumber", null, null},
+                    "java.math.BigDecimal", new String[] {"writeNumber", null, null},
+                    "java.math.BigInteger", new String[] {"writeNumber", null, null},
+                    "java.lang.Boolean", new String[] {"writeBoolean", null, null});
+
+    private BeanWriter() {}
+
+    static String bean(Model model) {
+        StringBuilder out = header(model);
+        out.append(model.generated()).append('\n');
+        out.append(JSON_SERIALIZE).append(model.jsonName()).append(".Serializer.class)\n");
+        out.append(JSON_DESERIALIZE).append(model.jsonName()).append(".Deserializer.class)\n");
+        out.append("public record ").append(model.beanName()).append('(');
+        out.append(
+                model.properties().stream()
+                        .map(property -> property.componentType(model) + " " + property.name())
+                        .collect(Collectors.joining(", ")));
+        out.append(") {\n");
+        for (Property property : references(model)) {
+            Reference reference = property.reference();
+            String ref = property.refName();
+            out.append('\n');
+            out.append("    /** The id of the referenced {@code ")
+                    .append(simpleName(reference.entityType()))
+                    .append("}. */\n");
+            out.append("    ")
+                    .append(JSON_SERIALIZE)
+                    .append(model.jsonName())
+                    .append('.')
+                    .append(ref)
+                    .append("Serializer.class)\n");
+            out.append("    ")
+                    .append(JSON_DESERIALIZE)
+                    .append(model.jsonName())
+                    .append('.')
+                    .append(ref)
+                    .append("Deserializer.class)\n");
+            out.append("    public record ")
+                    .append(ref)
+                    .append('(')
+                    .append(reference.idType())
+                    .append(' ')
+                    .append(reference.idName())
+                    .append(") {}\n");
+        }
+        for (Property property : collections(model)) {
+            Items items = property.items();
+            String item = property.itemName();
+            out.append('\n');
+            out.append("    /** A {@code ")
+                    .append(simpleName(items.entityType()))
+                    .append("} of ")
+                    .append(property.name())
+                    .append(", matched to the existing ones by id. */\n");
+            out.append("    ")
+                    .append(JSON_SERIALIZE)
+                    .append(model.jsonName())
+                    .append('.')
+                    .append(item)
+                    .append("Serializer.class)\n");
+            out.append("    ")
+                    .append(JSON_DESERIALIZE)
+                    .append(model.jsonName())
+                    .append('.')
+                    .append(item)
+                    .append("Deserializer.class)\n");
+            out.append("    public record ")
+                    .append(item)
+                    .append('(')
+                    .append(
+                            items.components().stream()
+                                    .map(component -> component.type() + " " + component.name())
+                                    .collect(Collectors.joining(", ")))
+                    .append(") {}\n");
+        }
+        return out.append("}\n").toString();
+    }
+
+    static String json(Model model) {
+        StringBuilder out = header(model);
+        out.append("/** Jackson serializers of {@link ")
+                .append(model.beanName())
+                .append("}, reading and writing its components without reflection. */\n");
+        out.append(model.generated()).append('\n');
+        out.append("public final class ").append(model.jsonName()).append(" {\n\n");
+        out.append("    private ").append(model.jsonName()).append("() {}\n");
+
+        writeCodec(out, model, "", model.beanName(), model.properties());
+        for (Property property : references(model)) {
+            Reference reference = property.reference();
+            Property id = new Property(reference.idName(), reference.idType(), false, null, null);
+            writeCodec(
+                    out,
+                    model,
+                    property.refName(),
+                    model.beanName() + "." + property.refName(),
+                    List.of(id));
+        }
+        for (Property property : collections(model)) {
+            writeCodec(
+                    out,
+                    model,
+                    property.itemName(),
+                    model.beanName() + "." + property.itemName(),
+                    property.items().components());
+        }
+        return out.append("}\n").toString();
+    }
+
+    static String service(Model model) {
+        String entity = model.entityType();
+        String bean = model.beanName();
+        StringBuilder out = header(model);
+        out.append("/**\n");
+        out.append(" * Maps {@link ")
+                .append(entity)
+                .append("} to its update bean {@link ")
+                .append(bean)
+                .append("} and back.\n");
+        out.append(" * References are written back through the {@code resolve} methods");
+        out.append(collections(model).isEmpty() ? ".\n" : ", collections are reconciled by id.\n");
+        out.append(" */\n");
+        out.append(model.generated()).append('\n');
+        out.append("public abstract class ")
+                .append(model.serviceName())
+                .append("\n        extends ")
+                .append(PATCH_CORE)
+                .append("AbstractPatchService<")
+                .append(entity)
+                .append(", ")
+                .append(bean)
+                .append("> {\n\n");
+        out.append("    protected ")
+                .append(model.serviceName())
+                .append('(')
+                .append(PATCH_CORE)
+                .append("JsonPatchService jsonPatchService) {\n");
+        out.append("        super(jsonPatchService);\n");
+        out.append("    }\n\n");
+
+        out.append("    @Override\n");
+        out.append("    protected ")
+                .append(bean)
+                .append(" mapEntityToBean(\n            ")
+                .append(entity)
+                .append(" entity, ")
+                .append(PATCH_CORE)
+                .append("PatchDocument patch) {\n");
+        out.append("        return new ").append(bean).append("(");
+        out.append(
+                model.properties().stream()
+                        .map(property -> "\n                " + toComponent(model, property))
+                        .collect(Collectors.joining(",")));
+        out.append(");\n");
+        out.append("    }\n\n");
+
+        out.append("    @Override\n");
+        out.append("    protected void updateEntityFields(\n            ")
+                .append(entity)
+                .append(" entity, ")
+                .append(bean)
+                .append(" original, ")
+                .append(bean)
+                .append(" updateBean) {\n");
+        if (!references(model).isEmpty()) {
+            out.append("        // references are resolved first, so an invalid one fails before")
+                    .append(" the entity is modified\n");
+        }
+        for (Property property : references(model)) {
+            String name = property.name();
+            out.append("        if (!java.util.Objects.equals(original.")
+                    .append(name)
+                    .append("(), updateBean.")
+                    .append(name)
+                    .append("())) {\n");
+            out.append("            entity.")
+                    .append(property.setter())
+                    .append("(\n                    resolve")
+                    .append(property.capitalized())
+                    .append("(\n                            updateBean.")
+                    .append(name)
+                    .append("() == null ? null : updateBean.")
+                    .append(name)
+                    .append("().")
+                    .append(property.reference().idName())
+                    .append("()));\n");
+            out.append("        }\n");
+        }
+        for (Property property : model.properties()) {
+            if (property.reference() != null || property.items() != null) {
+                continue;
+            }
+            out.append("        setIfChanged(original.")
+                    .append(property.name())
+                    .append("(), updateBean.")
+                    .append(property.name())
+                    .append("(), entity::")
+                    .append(property.setter())
+                    .append(");\n");
+        }
+        for (Property property : collections(model)) {
+            String name = property.name();
+            out.append("        if (updateBean.")
+                    .append(name)
+                    .append("() != null && !updateBean.")
+                    .append(name)
+                    .append("().equals(original.")
+                    .append(name)
+                    .append("())) {\n");
+            out.append("            reconcile")
+                    .append(property.capitalized())
+                    .append("(entity, updateBean.")
+                    .append(name)
+                    .append("());\n");
+            out.append("        }\n");
+        }
+        out.append("    }\n");
+        for (Property property : collections(model)) {
+            writeReconcile(out, model, property);
+        }
+
+        for (Property property : references(model)) {
+            Reference reference = property.reference();
+            out.append('\n');
+            out.append("    /**\n");
+            out.append("     * Returns the {@code ")
+                    .append(simpleName(reference.entityType()))
+                    .append("} to set as ")
+                    .append(property.name())
+                    .append(", given the patched id.\n");
+            out.append("     * The id is null if the patch removed the reference.\n");
+            out.append("     */\n");
+            out.append("    protected abstract ")
+                    .append(reference.entityType())
+                    .append(" resolve")
+                    .append(property.capitalized())
+                    .append('(')
+                    .append(boxed(reference.idType()))
+                    .append(" id);\n");
+        }
+        return out.append("}\n").toString();
+    }
+
+    /**
+     * Writes the reconciliation of a collection, in linear time: the existing entities are indexed
+     * by id, those whose id is not patched anymore are removed on the way, then every patched item
+     * updates the entity with its id or, without id or with an unknown one, is added as a new one.
+     */
+    private static void writeReconcile(StringBuilder out, Model model, Property property) {
+        Items items = property.items();
+        String entity = items.entityType();
+        String item = model.beanName() + "." + property.itemName();
+        String id = boxed(items.id().type());
+        String idGetter = items.id().getter();
+        String getter = "entity." + property.getter() + "()";
+
+        out.append('\n');
+        out.append("    /**\n");
+        out.append("     * Makes the ")
+                .append(property.name())
+                .append(" of the entity match the patched items: existing ones are matched by\n");
+        out.append("     * id, the others are removed, and items without a known id are added.\n");
+        out.append("     */\n");
+        out.append("    private static void reconcile")
+                .append(property.capitalized())
+                .append("(\n            ")
+                .append(model.entityType())
+                .append(" entity, java.util.Collection<")
+                .append(item)
+                .append("> items) {\n");
+        out.append("        java.util.Set<")
+                .append(id)
+                .append("> patchedIds = new java.util.HashSet<>();\n");
+        out.append("        for (").append(item).append(" item : items) {\n");
+        out.append("            if (item.").append(items.id().name()).append("() != null) {\n");
+        out.append("                patchedIds.add(item.")
+                .append(items.id().name())
+                .append("());\n");
+        out.append("            }\n");
+        out.append("        }\n\n");
+        out.append("        java.util.Map<")
+                .append(id)
+                .append(", ")
+                .append(entity)
+                .append("> existing = new java.util.HashMap<>();\n");
+        out.append("        java.util.Iterator<")
+                .append(entity)
+                .append("> iterator = ")
+                .append(getter)
+                .append(".iterator();\n");
+        out.append("        while (iterator.hasNext()) {\n");
+        out.append("            ").append(entity).append(" current = iterator.next();\n");
+        out.append("            if (current.")
+                .append(idGetter)
+                .append("() != null && patchedIds.contains(current.")
+                .append(idGetter)
+                .append("())) {\n");
+        out.append("                existing.put(current.")
+                .append(idGetter)
+                .append("(), current);\n");
+        out.append("            } else if (current.").append(idGetter).append("() != null) {\n");
+        out.append("                iterator.remove();\n");
+        out.append("            }\n");
+        out.append("        }\n\n");
+        out.append("        for (").append(item).append(" item : items) {\n");
+        out.append("            ")
+                .append(entity)
+                .append(" current =\n                    item.")
+                .append(items.id().name())
+                .append("() != null ? existing.get(item.")
+                .append(items.id().name())
+                .append("()) : null;\n");
+        out.append("            if (current == null) {\n");
+        out.append("                current = new ").append(entity).append("();\n");
+        if (items.mappedBy() != null) {
+            out.append("                current.set")
+                    .append(Character.toUpperCase(items.mappedBy().charAt(0)))
+                    .append(items.mappedBy().substring(1))
+                    .append("(entity);\n");
+        }
+        out.append("                ").append(getter).append(".add(current);\n");
+        out.append("            }\n");
+        for (Property component : items.properties()) {
+            out.append("            setIfChanged(current.")
+                    .append(component.getter())
+                    .append("(), item.")
+                    .append(component.name())
+                    .append("(), current::")
+                    .append(component.setter())
+                    .append(");\n");
+        }
+        out.append("        }\n");
+        out.append("    }\n");
+    }
+
+    /** Writes the serializer and the deserializer of a record with the given components. */
+    private static void writeCodec(
+            StringBuilder out,
+            Model model,
+            String prefix,
+            String recordType,
+            List<Property> components) {
+        String serializer = prefix + "Serializer";
+        String deserializer = prefix + "Deserializer";
+
+        out.append('\n');
+        out.append("    public static final class ")
+                .append(serializer)
+                .append("\n            extends ")
+                .append(JACKSON_DATABIND)
+                .append("ser.std.StdSerializer<")
+                .append(recordType)
+                .append("> {\n\n");
+        out.append("        static final ")
+                .append(serializer)
+                .append(" INSTANCE = new ")
+                .append(serializer)
+                .append("();\n\n");
+        out.append("        public ").append(serializer).append("() {\n");
+        out.append("            super(").append(recordType).append(".class);\n");
+        out.append("        }\n\n");
+        out.append("        @Override\n");
+        out.append("        public void serialize(\n                ")
+                .append(recordType)
+                .append(" value,\n                ")
+                .append(JACKSON_CORE)
+                .append("JsonGenerator gen,\n                ")
+                .append(JACKSON_DATABIND)
+                .append("SerializerProvider provider)\n");
+        out.append("                throws java.io.IOException {\n");
+        out.append("            gen.writeStartObject(value);\n");
+        for (Property component : components) {
+            writeComponent(out, model, component);
+        }
+        out.append("            gen.writeEndObject();\n");
+        out.append("        }\n");
+        out.append("    }\n\n");
+
+        out.append("    public static final class ")
+                .append(deserializer)
+                .append("\n            extends ")
+                .append(JACKSON_DATABIND)
+                .append("deser.std.StdDeserializer<")
+                .append(recordType)
+                .append("> {\n\n");
+        out.append("        static final ")
+                .append(deserializer)
+                .append(" INSTANCE = new ")
+                .append(deserializer)
+                .append("();\n\n");
+        // generic component types are resolved once, not on every read
+        for (Property component : components) {
+            String type = component.componentType(model);
+            if (type.indexOf('<') >= 0) {
+                out.append("        private static final ")
+                        .append(JACKSON_DATABIND)
+                        .append("JavaType ")
+                        .append(typeConstant(component))
+                        .append(" =\n                ")
+                        .append(JACKSON_DATABIND)
+                        .append("type.TypeFactory.defaultInstance()\n                        ")
+                        .append(".constructType(new ")
+                        .append(JACKSON_CORE)
+                        .append("type.TypeReference<")
+                        .append(type)
+                        .append(">() {});\n\n");
+            }
+        }
+        out.append("        public ").append(deserializer).append("() {\n");
+        out.append("            super(").append(recordType).append(".class);\n");
+        out.append("        }\n\n");
+        // stateless, so Jackson may keep it instead of building the enclosing collection
+        // deserializers again on every read
+        out.append("        @Override\n");
+        out.append("        public boolean isCachable() {\n");
+        out.append("            return true;\n");
+        out.append("        }\n\n");
+        out.append("        @Override\n");
+        out.append("        public ")
+                .append(recordType)
+                .append(" deserialize(\n                ")
+                .append(JACKSON_CORE)
+                .append("JsonParser p, ")
+                .append(JACKSON_DATABIND)
+                .append("DeserializationContext ctxt)\n");
+        out.append("                throws java.io.IOException {\n");
+        out.append("            ")
+                .append(JACKSON_CORE)
+                .append("JsonToken token = p.currentToken();\n");
+        out.append("            if (token == ")
+                .append(JACKSON_CORE)
+                .append("JsonToken.START_OBJECT) {\n");
+        out.append("                token = p.nextToken();\n");
+        out.append("            } else if (token != ")
+                .append(JACKSON_CORE)
+                .append("JsonToken.FIELD_NAME) {\n");
+        out.append("                return (")
+                .append(recordType)
+                .append(") ctxt.handleUnexpectedToken(")
+                .append(recordType)
+                .append(".class, p);\n");
+        out.append("            }\n");
+        for (Property component : components) {
+            out.append("            ")
+                    .append(component.componentType(model))
+                    .append(' ')
+                    .append(component.name())
+                    .append(" = ")
+                    .append(defaultValue(component.type()))
+                    .append(";\n");
+        }
+        out.append("            for (; token == ")
+                .append(JACKSON_CORE)
+                .append("JsonToken.FIELD_NAME; token = p.nextToken()) {\n");
+        // no local for the field name, which could collide with a component
+        out.append("                p.nextToken();\n");
+        out.append("                switch (p.currentName()) {\n");
+        for (Property component : components) {
+            out.append("                    case \"")
+                    .append(component.name())
+                    .append("\" -> ")
+                    .append(component.name())
+                    .append(" = ")
+                    .append(readComponent(model, component))
+                    .append(";\n");
+        }
+        out.append("                    default -> ctxt.handleUnknownProperty(p, this, ")
+                .append(recordType)
+                .append(".class, p.currentName());\n");
+        out.append("                }\n");
+        out.append("            }\n");
+        out.append("            return new ")
+                .append(recordType)
+                .append('(')
+                .append(components.stream().map(Property::name).collect(Collectors.joining(", ")))
+                .append(");\n");
+        out.append("        }\n");
+        out.append("    }\n");
+    }
+
+    private static void writeComponent(StringBuilder out, Model model, Property component) {
+        String value = "value." + component.name() + "()";
+        String type = component.type();
+        if (component.reference() != null) {
+            writeFieldName(out, component);
+            writeNullable(
+                    out,
+                    value,
+                    component.refName() + "Serializer.INSTANCE.serialize(" + value
+                            + ", gen, provider);");
+        } else if (BOXES.containsKey(type) && !type.equals("char")) {
+            String method = type.equals("boolean") ? "writeBoolean" : "writeNumber";
+            writeFieldName(out, component);
+            out.append("            gen.").append(method).append('(').append(value).append(");\n");
+        } else if (SCALARS.containsKey(type)) {
+            writeFieldName(out, component);
+            writeNullable(out, value, "gen." + SCALARS.get(type)[0] + "(" + value + ");");
+        } else {
+            out.append("            provider.defaultSerializeField(\"")
+                    .append(component.name())
+                    .append("\", ")
+                    .append(value)
+                    .append(", gen);\n");
+        }
+    }
+
+    private static void writeFieldName(StringBuilder out, Property component) {
+        out.append("            gen.writeFieldName(\"").append(component.name()).append("\");\n");
+    }
+
+    private static void writeNullable(StringBuilder out, String value, String write) {
+        out.append("            if (").append(value).append(" == null) {\n");
+        out.append("                gen.writeNull();\n");
+        out.append("            } else {\n");
+        out.append("                ").append(write).append('\n');
+        out.append("            }\n");
+    }
+
+    /** Returns the expression reading the component from the current token of the parser. */
+    private static String readComponent(Model model, Property component) {
+        String type = component.componentType(model);
+        if (BOXES.containsKey(type)) {
+            // primitives go through Jackson, which handles null and coercions
+            return "ctxt.readValue(p, " + type + ".class)";
+        }
+        String indent = "\n                            ";
+        StringBuilder read = new StringBuilder("switch (p.currentToken()) {");
+        read.append(indent).append("case VALUE_NULL -> null;");
+        if (component.reference() != null) {
+            read.append(indent)
+                    .append("default -> ")
+                    .append(component.refName())
+                    .append("Deserializer.INSTANCE.deserialize(p, ctxt);");
+        } else {
+            String[] scalar = SCALARS.get(type);
+            if (type.equals("java.lang.Boolean")) {
+                read.append(indent).append("case VALUE_TRUE -> true;");
+                read.append(indent).append("case VALUE_FALSE -> false;");
+            } else if (scalar != null && scalar[1] != null) {
+                read.append(indent)
+                        .append("case ")
+                        .append(scalar[1])
+                        .append(" -> p.")
+                        .append(scalar[2])
+                        .append("();");
+            }
+            read.append(indent)
+                    .append("default -> ")
+                    .append(readValue(type, component))
+                    .append(';');
+        }
+        return read.append("\n                        }").toString();
+    }
+
+    private static String readValue(String type, Property component) {
+        if (type.indexOf('<') < 0) {
+            return "ctxt.readValue(p, " + type + ".class)";
+        }
+        return "ctxt.readValue(p, " + typeConstant(component) + ")";
+    }
+
+    /** The constant of the deserializer holding the resolved generic type of the component. */
+    private static String typeConstant(Property component) {
+        return component.name().replaceAll("([a-z0-9])([A-Z])", "$1_$2").toUpperCase(Locale.ROOT)
+                + "_TYPE";
+    }
+
+    private static String toComponent(Model model, Property property) {
+        if (property.items() != null) {
+            return toItems(model, property);
+        }
+        if (property.reference() == null) {
+            return "entity." + property.getter() + "()";
+        }
+        // the id of a lazy reference is read from its proxy, without loading it
+        String reference = "entity." + property.getter() + "()";
+        return reference
+                + " == null\n                        ? null\n                        : new "
+                + model.beanName()
+                + "."
+                + property.refName()
+                + "("
+                + reference
+                + "."
+                + property.reference().idGetter()
+                + "())";
+    }
+
+    /** Maps a collection only when the patch touches it, so a lazy one is not loaded otherwise. */
+    private static String toItems(Model model, Property property) {
+        Items items = property.items();
+        String indent = "\n                                ";
+        String components =
+                items.components().stream()
+                        .map(component -> "item." + component.getter() + "()")
+                        .collect(Collectors.joining(", "));
+        return "patch.touches(\""
+                + property.name()
+                + "\")\n                        ? entity."
+                + property.getter()
+                + "().stream()"
+                + indent
+                + ".map(item -> new "
+                + model.beanName()
+                + "."
+                + property.itemName()
+                + "("
+                + components
+                + "))"
+                + indent
+                + ".collect(java.util.stream.Collectors.toCollection("
+                + items.implementation()
+                + "::new))\n                        : null";
+    }
+
+    private static String defaultValue(String type) {
+        if (type.equals("boolean")) {
+            return "false";
+        }
+        return BOXES.containsKey(type) ? "(" + type + ") 0" : "null";
+    }
+
+    private static String boxed(String type) {
+        return BOXES.getOrDefault(type, type);
+    }
+
+    private static List<Property> references(Model model) {
+        return model.properties().stream()
+                .filter(property -> property.reference() != null)
+                .toList();
+    }
+
+    private static List<Property> collections(Model model) {
+        return model.properties().stream().filter(property -> property.items() != null).toList();
+    }
+
+    private static String simpleName(String qualifiedName) {
+        return qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1);
+    }
+
+    private static StringBuilder header(Model model) {
+        StringBuilder out = new StringBuilder();
+        if (!model.packageName().isEmpty()) {
+            out.append("package ").append(model.packageName()).append(";\n\n");
+        }
+        return out;
+    }
+}
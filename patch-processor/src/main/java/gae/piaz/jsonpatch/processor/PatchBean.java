@@ -0,0 +1,29 @@
+package gae.piaz.jsonpatch.processor;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates the patch support of an entity from its {@link PatchProperty} fields, for an entity
+ * named {@code XEntity}:
+ *
+ * <ul>
+ *   <li>{@code XEntityUpdateBean}, the record update bean, with a nested {@code <Field>Ref} record
+ *       holding the id of each referenced entity and a nested {@code <Field>Item} record holding
+ *       the id and the {@link PatchProperty} fields of each entity of a collection.
+ *   <li>{@code XEntityUpdateBeanJson}, the Jackson serializers and deserializers of those records,
+ *       which read and write the components without reflection.
+ *   <li>{@code AbstractXEntityPatchService}, an {@code AbstractPatchService} mapping the entity to
+ *       the update bean and back, with an abstract {@code resolve<Field>(id)} per reference and a
+ *       {@code reconcile<Field>} method per collection, which matches the items by id.
+ * </ul>
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.SOURCE)
+public @interface PatchBean {
+
+    /** The package of the generated classes, the package of the entity if empty. */
+    String packageName() default "";
+}
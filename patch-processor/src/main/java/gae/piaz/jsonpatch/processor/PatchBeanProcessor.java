@@ -0,0 +1,364 @@
+package gae.piaz.jsonpatch.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates the update bean, the Jackson (de)serializers and the abstract patch service of each
+ * {@link PatchBean} entity, see {@link PatchBean} for the generated classes. Entities are read
+ * from their fields, so the processor does not depend on the getters and setters generated by
+ * Lombok; JPA annotations are matched by name, so it does not depend on JPA either.
+ */
+@SupportedAnnotationTypes("gae.piaz.jsonpatch.processor.PatchBean")
+public class PatchBeanProcessor extends AbstractProcessor {
+
+    private static final String GENERATED =
+            "@javax.annotation.processing.Generated(\""
+                    + PatchBeanProcessor.class.getName()
+                    + "\")";
+
+    private static final Set<String> REFERENCE_ANNOTATIONS =
+            Set.of("jakarta.persistence.ManyToOne", "jakarta.persistence.OneToOne");
+
+    private static final Set<String> COLLECTION_TYPES =
+            Set.of("java.util.Collection", "java.util.List", "java.util.Set", "java.util.Map");
+
+    private static final String ONE_TO_MANY = "jakarta.persistence.OneToMany";
+
+    /** The collection types of the {@code @OneToMany} fields that can be patched. */
+    private static final Set<String> ITEMS_TYPES = Set.of("java.util.List", "java.util.Set");
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(PatchBean.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@PatchBean must annotate an entity class");
+                continue;
+            }
+            TypeElement entity = (TypeElement) element;
+            List<Property> properties = readProperties(entity);
+            if (properties == null) {
+                continue;
+            }
+            String packageName = entity.getAnnotation(PatchBean.class).packageName();
+            if (packageName.isEmpty()) {
+                packageName =
+                        processingEnv.getElementUtils().getPackageOf(entity).toString();
+            }
+            Model model =
+                    new Model(
+                            packageName,
+                            entity.getQualifiedName().toString(),
+                            entity.getSimpleName().toString(),
+                            properties);
+            write(entity, model.packageName(), model.beanName(), BeanWriter.bean(model));
+            write(entity, model.packageName(), model.jsonName(), BeanWriter.json(model));
+            write(entity, model.packageName(), model.serviceName(), BeanWriter.service(model));
+        }
+        return true;
+    }
+
+    /** Returns the patch properties of the entity, null if one of them is not supported. */
+    private List<Property> readProperties(TypeElement entity) {
+        List<Property> properties = new ArrayList<>();
+        boolean valid = true;
+        for (Element member : entity.getEnclosedElements()) {
+            if (member.getKind() != ElementKind.FIELD
+                    || member.getAnnotation(PatchProperty.class) == null) {
+                continue;
+            }
+            VariableElement field = (VariableElement) member;
+            String name = field.getSimpleName().toString();
+            TypeMirror type = field.asType();
+            if (isCollection(type)) {
+                Items items = readItems(field);
+                valid &= items != null;
+                properties.add(new Property(name, type.toString(), false, null, items));
+            } else if (hasAnnotation(field, REFERENCE_ANNOTATIONS)) {
+                Reference reference = readReference(field);
+                valid &= reference != null;
+                properties.add(
+                        new Property(name, type.toString(), isBoolean(type), reference, null));
+            } else {
+                properties.add(new Property(name, type.toString(), isBoolean(type), null, null));
+            }
+        }
+        if (properties.isEmpty() && valid) {
+            error(entity, "@PatchBean entity has no @PatchProperty field");
+            valid = false;
+        }
+        return valid ? properties : null;
+    }
+
+    private Reference readReference(VariableElement field) {
+        TypeElement target = (TypeElement) processingEnv.getTypeUtils().asElement(field.asType());
+        for (Element member : target.getEnclosedElements()) {
+            if (member.getKind() == ElementKind.FIELD
+                    && hasAnnotation(member, Set.of("jakarta.persistence.Id"))) {
+                return new Reference(
+                        target.getQualifiedName().toString(),
+                        member.getSimpleName().toString(),
+                        member.asType().toString());
+            }
+        }
+        error(field, "The referenced entity " + target.getSimpleName() + " has no @Id field");
+        return null;
+    }
+
+    /**
+     * Reads the items of a {@code @OneToMany} {@link Set} or {@link List} of entities: their id and
+     * their {@link PatchProperty} fields, which must be scalars apart from the {@code mappedBy}
+     * reference to the owner.
+     */
+    private Items readItems(VariableElement field) {
+        AnnotationMirror oneToMany = findAnnotation(field, ONE_TO_MANY);
+        DeclaredType type = field.asType() instanceof DeclaredType declared ? declared : null;
+        if (oneToMany == null || type == null || type.getTypeArguments().size() != 1) {
+            error(field, "@PatchProperty collections must be @OneToMany associations of entities");
+            return null;
+        }
+        String collectionType = type.asElement().toString();
+        if (!ITEMS_TYPES.contains(collectionType)) {
+            error(field, "@PatchProperty collections must be declared as a Set or a List");
+            return null;
+        }
+        String mappedBy = null;
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> member :
+                oneToMany.getElementValues().entrySet()) {
+            if (member.getKey().getSimpleName().contentEquals("mappedBy")) {
+                mappedBy = (String) member.getValue().getValue();
+            }
+        }
+
+        TypeElement item =
+                (TypeElement) processingEnv.getTypeUtils().asElement(type.getTypeArguments().get(0));
+        Property id = null;
+        List<Property> properties = new ArrayList<>();
+        boolean valid = true;
+        for (Element member : item.getEnclosedElements()) {
+            if (member.getKind() != ElementKind.FIELD) {
+                continue;
+            }
+            String name = member.getSimpleName().toString();
+            TypeMirror memberType = member.asType();
+            if (hasAnnotation(member, Set.of("jakarta.persistence.Id"))) {
+                id = new Property(name, memberType.toString(), false, null, null);
+            } else if (member.getAnnotation(PatchProperty.class) != null
+                    && !name.equals(mappedBy)) {
+                if (isCollection(memberType) || hasAnnotation(member, REFERENCE_ANNOTATIONS)) {
+                    error(
+                            field,
+                            "@PatchProperty collection items support scalar fields only, not "
+                                    + item.getSimpleName()
+                                    + "."
+                                    + name);
+                    valid = false;
+                }
+                properties.add(
+                        new Property(
+                                name, memberType.toString(), isBoolean(memberType), null, null));
+            }
+        }
+        if (id == null) {
+            error(field, "The collection item " + item.getSimpleName() + " has no @Id field");
+            return null;
+        }
+        return valid
+                ? new Items(
+                        collectionType,
+                        item.getQualifiedName().toString(),
+                        mappedBy == null || mappedBy.isEmpty() ? null : mappedBy,
+                        id,
+                        properties)
+                : null;
+    }
+
+    private boolean isCollection(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return type.getKind() == TypeKind.ARRAY;
+        }
+        for (String collection : COLLECTION_TYPES) {
+            TypeElement collectionType = processingEnv.getElementUtils().getTypeElement(collection);
+            if (processingEnv
+                    .getTypeUtils()
+                    .isAssignable(
+                            processingEnv.getTypeUtils().erasure(type),
+                            processingEnv.getTypeUtils().erasure(collectionType.asType()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isBoolean(TypeMirror type) {
+        return type.getKind() == TypeKind.BOOLEAN;
+    }
+
+    private static boolean hasAnnotation(Element element, Set<String> names) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            DeclaredType annotationType = annotation.getAnnotationType();
+            if (names.contains(annotationType.asElement().toString())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static AnnotationMirror findAnnotation(Element element, String name) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            if (annotation.getAnnotationType().asElement().toString().equals(name)) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    private void write(Element origin, String packageName, String simpleName, String source) {
+        String name = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        try (Writer writer = processingEnv.getFiler().createSourceFile(name, origin).openWriter()) {
+            writer.write(source);
+        } catch (IOException e) {
+            error(origin, "Cannot write " + name + ": " + e.getMessage());
+        }
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    /** An entity annotated with {@link PatchBean}. */
+    record Model(
+            String packageName, String entityType, String entityName, List<Property> properties) {
+
+        String beanName() {
+            return entityName + "UpdateBean";
+        }
+
+        String jsonName() {
+            return beanName() + "Json";
+        }
+
+        String serviceName() {
+            return "Abstract" + entityName + "PatchService";
+        }
+
+        String generated() {
+            return GENERATED;
+        }
+    }
+
+    /**
+     * A {@link PatchProperty} field.
+     *
+     * @param type the qualified type of the field
+     * @param reference the referenced entity, null if the field is not a reference
+     * @param items the entities of the collection, null if the field is not a collection
+     */
+    record Property(
+            String name,
+            String type,
+            boolean primitiveBoolean,
+            Reference reference,
+            Items items) {
+
+        String capitalized() {
+            return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        }
+
+        /**
+         * The type of the record component: the nested reference record for a reference, a
+         * collection of the nested item record for a collection.
+         */
+        String componentType(Model model) {
+            if (items != null) {
+                return items.collectionType() + "<" + model.beanName() + "." + itemName() + ">";
+            }
+            return reference == null ? type : model.beanName() + "." + refName();
+        }
+
+        String refName() {
+            return capitalized() + "Ref";
+        }
+
+        String itemName() {
+            return capitalized() + "Item";
+        }
+
+        String getter() {
+            return (primitiveBoolean ? "is" : "get") + capitalized();
+        }
+
+        String setter() {
+            return "set" + capitalized();
+        }
+    }
+
+    /**
+     * The entity referenced by a {@code @ManyToOne} or {@code @OneToOne} field.
+     *
+     * @param entityType the qualified type of the referenced entity
+     * @param idName the name of its {@code @Id} field
+     * @param idType the qualified type of its {@code @Id} field
+     */
+    record Reference(String entityType, String idName, String idType) {
+
+        String idGetter() {
+            return "get" + Character.toUpperCase(idName.charAt(0)) + idName.substring(1);
+        }
+    }
+
+    /**
+     * The entities of a {@code @OneToMany} field, matched to the patched items by id.
+     *
+     * @param collectionType the qualified collection interface, {@link List} or {@link Set}
+     * @param entityType the qualified type of the entities
+     * @param mappedBy the field of the entities referencing the owner, null if unidirectional
+     * @param id the {@code @Id} field of the entities
+     * @param properties the {@link PatchProperty} fields of the entities, but {@code mappedBy}
+     */
+    record Items(
+            String collectionType,
+            String entityType,
+            String mappedBy,
+            Property id,
+            List<Property> properties) {
+
+        /** The id and then the properties, the components of the item record. */
+        List<Property> components() {
+            List<Property> components = new ArrayList<>(properties.size() + 1);
+            components.add(id);
+            components.addAll(properties);
+            return components;
+        }
+
+        String implementation() {
+            return collectionType.equals("java.util.Set")
+                    ? "java.util.LinkedHashSet"
+                    : "java.util.ArrayList";
+        }
+    }
+}
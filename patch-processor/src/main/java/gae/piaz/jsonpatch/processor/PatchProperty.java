@@ -0,0 +1,16 @@
+package gae.piaz.jsonpatch.processor;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * A field of a {@link PatchBean} entity that is part of its update bean. A {@code @ManyToOne} or
+ * {@code @OneToOne} field is mapped to a reference holding the id of the target entity. A {@code
+ * @OneToMany} {@code Set} or {@code List} of entities is mapped to items holding their id and their
+ * scalar {@code @PatchProperty} fields; an item without a known id is added as a new entity.
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.SOURCE)
+public @interface PatchProperty {}
@@ -1 +1,3 @@
 rootProject.name = "jsonpatch"
+
+include("patch-processor")
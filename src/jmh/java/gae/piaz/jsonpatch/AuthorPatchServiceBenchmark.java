@@ -0,0 +1,126 @@
+package gae.piaz.jsonpatch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gae.piaz.jsonpatch.domain.AuthorEntity;
+import gae.piaz.jsonpatch.domain.BookEntity;
+import gae.piaz.jsonpatch.service.core.JsonPatchCompiler;
+import gae.piaz.jsonpatch.service.core.JsonPatchDocument;
+import gae.piaz.jsonpatch.service.core.JsonPatchLimits;
+import gae.piaz.jsonpatch.service.core.JsonPatchReader;
+import gae.piaz.jsonpatch.service.core.JsonPatchServerError;
+import gae.piaz.jsonpatch.service.core.JsonPatchService;
+import gae.piaz.jsonpatch.service.core.PatchMode;
+import gae.piaz.jsonpatch.service.core.PatchResult;
+import gae.piaz.jsonpatch.service.patch.AuthorPatchService;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Measures how {@link AuthorPatchService#updateEntity} scales with the number of books of the
+ * author. The patches rename and remove a book, one of them also adds a book, so the whole
+ * reconciliation of the books runs on every invocation. The patch without the add can also be
+ * applied by the original reconciliation, which matched the books of the patch by id with nested
+ * loops and failed on a book without id. Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthorPatchServiceBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int books;
+
+    @Param({"JSON_NODE", "DIRECT"})
+    private PatchMode mode;
+
+    private AuthorPatchService authorPatchService;
+
+    private JsonPatchDocument patch;
+
+    private JsonPatchDocument renameAndRemove;
+
+    private AuthorEntity author;
+
+    @Setup
+    public void setup() throws Exception {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        JsonPatchService jsonPatchService =
+                new JsonPatchService(objectMapper, new JsonPatchCompiler(objectMapper, 256));
+        authorPatchService = new AuthorPatchService(jsonPatchService);
+        authorPatchService.setPatchMode(mode);
+
+        JsonPatchReader reader = new JsonPatchReader(JsonPatchLimits.DEFAULT);
+        patch =
+                reader.read(
+                        objectMapper.createParser(
+                                """
+                                [
+                                    {
+                                        "op": "replace",
+                                        "path": "/books/0/title",
+                                        "value": "Renamed"
+                                    },
+                                    { "op": "remove", "path": "/books/1" },
+                                    {
+                                        "op": "add",
+                                        "path": "/books/-",
+                                        "value": { "title": "New" }
+                                    }
+                                ]
+                                """));
+        renameAndRemove =
+                reader.read(
+                        objectMapper.createParser(
+                                """
+                                [
+                                    {
+                                        "op": "replace",
+                                        "path": "/books/0/title",
+                                        "value": "Renamed"
+                                    },
+                                    { "op": "remove", "path": "/books/1" }
+                                ]
+                                """));
+    }
+
+    /** The entity is patched in place, so every invocation gets a fresh one. */
+    @Setup(Level.Invocation)
+    public void createAuthor() {
+        author = new AuthorEntity();
+        author.setId(1);
+        author.setName("John Doe");
+        for (int i = 0; i < books; i++) {
+            BookEntity book = new BookEntity();
+            book.setId(i);
+            book.setTitle("Title " + i);
+            book.setIsbn("isbn-" + i);
+            book.setAuthor(author);
+            author.getBooks().add(book);
+        }
+    }
+
+    @Benchmark
+    public PatchResult<AuthorEntity> updateEntity() throws JsonPatchServerError {
+        return authorPatchService.updateEntity(author, patch);
+    }
+
+    @Benchmark
+    public PatchResult<AuthorEntity> updateEntity_renameAndRemove() throws JsonPatchServerError {
+        return authorPatchService.updateEntity(author, renameAndRemove);
+    }
+}
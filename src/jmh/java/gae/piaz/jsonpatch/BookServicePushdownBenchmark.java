@@ -0,0 +1,85 @@
+package gae.piaz.jsonpatch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gae.piaz.jsonpatch.controller.dto.BookDTO;
+import gae.piaz.jsonpatch.service.BookService;
+import gae.piaz.jsonpatch.service.core.JsonPatchDocument;
+import gae.piaz.jsonpatch.service.core.JsonPatchLimits;
+import gae.piaz.jsonpatch.service.core.JsonPatchReader;
+import gae.piaz.jsonpatch.service.core.JsonPatchServerError;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Measures {@link BookService#updateBook} on the in-memory H2 database, with the title replace
+ * pushed down to a single UPDATE or applied to the loaded book, read through the second level
+ * cache, and saved. Each invocation sets the other of two titles, so every patch changes the book.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookServicePushdownBenchmark {
+
+    @Param({"true", "false"})
+    private boolean pushdown;
+
+    private ConfigurableApplicationContext context;
+
+    private BookService bookService;
+
+    private final JsonPatchDocument[] patches = new JsonPatchDocument[2];
+
+    private int invocations;
+
+    @Setup
+    public void setup() throws Exception {
+        // arguments, application.yml would override default properties
+        context =
+                new SpringApplicationBuilder(JsonPatchApplication.class)
+                        .run(
+                                "--server.port=0",
+                                "--management.server.port=0",
+                                "--jsonpatch.pushdown.enabled=" + pushdown,
+                                "--spring.jpa.show-sql=false",
+                                "--logging.level.org.hibernate.SQL=WARN",
+                                "--logging.level.org.hibernate.type.descriptor.sql=WARN",
+                                "--logging.level.gae.piaz=WARN");
+        bookService = context.getBean(BookService.class);
+        ObjectMapper objectMapper = context.getBean(ObjectMapper.class);
+        JsonPatchReader reader = new JsonPatchReader(JsonPatchLimits.DEFAULT);
+        for (int i = 0; i < patches.length; i++) {
+            patches[i] =
+                    reader.read(
+                            objectMapper.createParser(
+                                    "[{ \"op\": \"replace\", \"path\": \"/title\", \"value\": \"Title "
+                                            + i
+                                            + "\" }]"));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public BookDTO updateBook() throws JsonPatchServerError {
+        return bookService.updateBook(1, patches[invocations++ & 1], null);
+    }
+}
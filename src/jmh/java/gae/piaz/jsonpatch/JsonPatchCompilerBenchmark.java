@@ -0,0 +1,82 @@
+package gae.piaz.jsonpatch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gae.piaz.jsonpatch.service.core.JsonPatchCompiler;
+import gae.piaz.jsonpatch.service.core.JsonPatchDocument;
+import gae.piaz.jsonpatch.service.core.JsonPatchLimits;
+import gae.piaz.jsonpatch.service.core.JsonPatchReader;
+import gae.piaz.jsonpatch.service.patch.BookEntityUpdateBean;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Measures the front of the patch pipeline: reading a JSON Patch body with {@link JsonPatchReader}
+ * and compiling it, which tells whether the patch only holds test operations. The compiled plans
+ * are cached, so {@code compile} mostly measures the cache lookup and the binding of the values.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonPatchCompilerBenchmark {
+
+    @Param({"1", "100"})
+    private int operations;
+
+    @Param({"true", "false"})
+    private boolean testOnly;
+
+    private ObjectMapper objectMapper;
+
+    private JsonPatchReader jsonPatchReader;
+
+    private JsonPatchCompiler jsonPatchCompiler;
+
+    private String body;
+
+    private JsonPatchDocument patch;
+
+    @Setup
+    public void setup() throws IOException {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        jsonPatchReader = new JsonPatchReader(JsonPatchLimits.DEFAULT);
+        jsonPatchCompiler = new JsonPatchCompiler(objectMapper, 256);
+
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < operations; i++) {
+            String op = testOnly || i < operations - 1 ? "test" : "replace";
+            json.append(i > 0 ? "," : "")
+                    .append("{ \"op\": \"")
+                    .append(op)
+                    .append("\", \"path\": \"/title\", \"value\": \"Java ")
+                    .append(i)
+                    .append("\" }");
+        }
+        body = json.append("]").toString();
+        patch = read();
+    }
+
+    @Benchmark
+    public JsonPatchDocument read() throws IOException {
+        return jsonPatchReader.read(objectMapper.createParser(body));
+    }
+
+    @Benchmark
+    public boolean compile_isTestOnly() {
+        return jsonPatchCompiler.compile(patch, BookEntityUpdateBean.class).plan().testOnly();
+    }
+}
@@ -0,0 +1,109 @@
+package gae.piaz.jsonpatch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gae.piaz.jsonpatch.service.core.JsonPatchCompiler;
+import gae.piaz.jsonpatch.service.core.JsonPatchDocument;
+import gae.piaz.jsonpatch.service.core.JsonPatchLimits;
+import gae.piaz.jsonpatch.service.core.JsonPatchReader;
+import gae.piaz.jsonpatch.service.core.JsonPatchServerError;
+import gae.piaz.jsonpatch.service.core.JsonPatchService;
+import gae.piaz.jsonpatch.service.core.PatchMode;
+import gae.piaz.jsonpatch.service.patch.AuthorEntityUpdateBean;
+import gae.piaz.jsonpatch.service.patch.AuthorEntityUpdateBean.BooksItem;
+import gae.piaz.jsonpatch.service.patch.BookEntityUpdateBean;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Compares the {@link PatchMode#JSON_NODE} and {@link PatchMode#DIRECT} flows of {@link
+ * JsonPatchService#applyPatch}. Run with {@code ./gradlew jmh}, the gc profiler reports the
+ * allocation rate per operation next to the average time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonPatchServiceBenchmark {
+
+    @Param({"JSON_NODE", "DIRECT"})
+    private PatchMode mode;
+
+    @Param({"10", "1000"})
+    private int books;
+
+    private JsonPatchService jsonPatchService;
+
+    private BookEntityUpdateBean book;
+
+    private AuthorEntityUpdateBean author;
+
+    private JsonPatchDocument bookPatch;
+
+    private JsonPatchDocument authorPatch;
+
+    @Setup
+    public void setup() throws Exception {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        jsonPatchService =
+                new JsonPatchService(objectMapper, new JsonPatchCompiler(objectMapper, 256));
+
+        book =
+                new BookEntityUpdateBean(
+                        "123456", "Java 101", new BookEntityUpdateBean.AuthorRef(1));
+        Set<BooksItem> authorBooks = new LinkedHashSet<>();
+        for (int i = 0; i < books; i++) {
+            authorBooks.add(new BooksItem(i, "isbn-" + i, "Title " + i));
+        }
+        author = new AuthorEntityUpdateBean("John Doe", authorBooks);
+
+        JsonPatchReader reader = new JsonPatchReader(JsonPatchLimits.DEFAULT);
+        bookPatch =
+                reader.read(
+                        objectMapper.createParser(
+                                """
+                                [
+                                    { "op": "test", "path": "/title", "value": "Java 101" },
+                                    { "op": "replace", "path": "/title", "value": "Java 102" },
+                                    { "op": "replace", "path": "/isbn", "value": "654321" }
+                                ]
+                                """));
+        authorPatch =
+                reader.read(
+                        objectMapper.createParser(
+                                """
+                                [
+                                    { "op": "replace", "path": "/name", "value": "Jane Doe" },
+                                    {
+                                        "op": "replace",
+                                        "path": "/books/0/title",
+                                        "value": "Renamed"
+                                    }
+                                ]
+                                """));
+    }
+
+    @Benchmark
+    public BookEntityUpdateBean applyPatch_book() throws JsonPatchServerError {
+        return jsonPatchService.applyPatch(bookPatch, book, BookEntityUpdateBean.class, mode);
+    }
+
+    @Benchmark
+    public AuthorEntityUpdateBean applyPatch_author() throws JsonPatchServerError {
+        return jsonPatchService.applyPatch(authorPatch, author, AuthorEntityUpdateBean.class, mode);
+    }
+}
@@ -0,0 +1,118 @@
+package gae.piaz.jsonpatch;
+
+import static gae.piaz.jsonpatch.config.Constants.APPLICATION_JSON_PATCH_VALUE;
+
+import gae.piaz.jsonpatch.config.OpenApiConfiguration;
+import gae.piaz.jsonpatch.controller.AuthorController;
+import gae.piaz.jsonpatch.controller.BookController;
+import io.swagger.v3.oas.models.OpenAPI;
+import io.swagger.v3.oas.models.Operation;
+import io.swagger.v3.oas.models.PathItem;
+import io.swagger.v3.oas.models.Paths;
+import io.swagger.v3.oas.models.media.Content;
+import io.swagger.v3.oas.models.parameters.RequestBody;
+import io.swagger.v3.oas.models.responses.ApiResponses;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springdoc.core.customizers.OpenApiCustomizer;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+/**
+ * Measures the {@link OpenApiConfiguration} customizer, which runs over every handler method each
+ * time the API docs are generated. The handler mapping holds the PATCH endpoints of the book and
+ * author controllers, repeated under different paths to simulate a larger API. Each invocation
+ * customizes a freshly built OpenAPI model, whose construction is part of the measure.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OpenApiConfigurationBenchmark {
+
+    @Param({"1", "25"})
+    private int copies;
+
+    private OpenApiCustomizer customizer;
+
+    private List<String> patterns;
+
+    @Setup
+    public void setup() {
+        RequestMappingHandlerMapping handlerMapping = new RequestMappingHandlerMapping();
+        patterns = new ArrayList<>();
+        BookController bookController = new BookController(null, null, null);
+        AuthorController authorController = new AuthorController(null, null, null);
+        for (int i = 0; i < copies; i++) {
+            String prefix = "/api/v" + (i + 1);
+            register(handlerMapping, prefix + "/books/{id}", true, bookController, "updateBook");
+            register(handlerMapping, prefix + "/books", false, bookController, "updateBooks");
+            register(
+                    handlerMapping,
+                    prefix + "/authors/{id}",
+                    true,
+                    authorController,
+                    "updateAuthor");
+            register(handlerMapping, prefix + "/authors", false, authorController, "updateAuthors");
+        }
+        customizer = new OpenApiConfiguration(handlerMapping).customOpenApi();
+    }
+
+    @Benchmark
+    public OpenAPI customise() {
+        Paths paths = new Paths();
+        for (String pattern : patterns) {
+            paths.addPathItem(
+                    pattern,
+                    new PathItem()
+                            .patch(
+                                    new Operation()
+                                            .requestBody(new RequestBody().content(new Content()))
+                                            .responses(new ApiResponses())));
+        }
+        OpenAPI openApi = new OpenAPI().paths(paths);
+        customizer.customise(openApi);
+        return openApi;
+    }
+
+    private void register(
+            RequestMappingHandlerMapping handlerMapping,
+            String pattern,
+            boolean jsonPatch,
+            Object controller,
+            String methodName) {
+        Method method =
+                Arrays.stream(controller.getClass().getMethods())
+                        .filter(m -> m.getName().equals(methodName))
+                        .findFirst()
+                        .orElseThrow();
+        RequestMappingInfo mapping =
+                RequestMappingInfo.paths(pattern)
+                        .methods(RequestMethod.PATCH)
+                        .consumes(
+                                jsonPatch
+                                        ? APPLICATION_JSON_PATCH_VALUE
+                                        : MediaType.APPLICATION_JSON_VALUE)
+                        .build();
+        handlerMapping.registerMapping(mapping, controller, method);
+        patterns.add(pattern);
+    }
+}
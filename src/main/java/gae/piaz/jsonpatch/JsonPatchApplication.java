@@ -1,9 +1,14 @@
 package gae.piaz.jsonpatch;
 
+import gae.piaz.jsonpatch.config.JsonPatchRuntimeHints;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
+import org.springframework.context.annotation.ImportRuntimeHints;
 
 @SpringBootApplication
+@ConfigurationPropertiesScan
+@ImportRuntimeHints(JsonPatchRuntimeHints.class)
 public class JsonPatchApplication {
 
     public static void main(String[] args) {
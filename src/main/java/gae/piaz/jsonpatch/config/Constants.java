@@ -4,4 +4,9 @@ public final class Constants {
     private Constants() {}
 
     public static final String APPLICATION_JSON_PATCH_VALUE = "application/json-patch+json";
+
+    public static final String APPLICATION_MERGE_PATCH_VALUE = "application/merge-patch+json";
+
+    /** JDBC fetch size of the export queries, the default number of rows of an export page. */
+    public static final String EXPORT_FETCH_SIZE = "500";
 }
@@ -0,0 +1,73 @@
+package gae.piaz.jsonpatch.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import gae.piaz.jsonpatch.domain.AuthorEntity;
+import gae.piaz.jsonpatch.domain.BookEntity;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.JCacheMetrics;
+import java.time.Duration;
+import java.util.List;
+import java.util.OptionalLong;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Hibernate second level cache for the entities read at the start of every patch. The regions are
+ * Caffeine caches bounded in size and time to live. READ_WRITE concurrency keeps them in sync with
+ * the successful patches, which update or invalidate the cached entries when they commit. Hit,
+ * miss, put and eviction counts of each region are published as the {@code cache.*} meters of
+ * actuator.
+ *
+ * <p>Only the entities are cached. The books of an author are a collection on the inverse side of
+ * the association, that a patch of a book moving it to another author would leave stale.
+ */
+@Configuration
+@Slf4j
+public class EntityCacheConfiguration {
+
+    private static final List<String> REGIONS =
+            List.of(AuthorEntity.class.getName(), BookEntity.class.getName());
+
+    @Bean(destroyMethod = "close")
+    public CacheManager entityCacheManager(
+            @Value("${jsonpatch.entity-cache.max-size:10000}") long maxSize,
+            @Value("${jsonpatch.entity-cache.ttl:10m}") Duration ttl) {
+        CacheManager cacheManager =
+                Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+                        .getCacheManager();
+        for (String region : REGIONS) {
+            CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+            configuration.setMaximumSize(OptionalLong.of(maxSize));
+            configuration.setExpireAfterWrite(OptionalLong.of(ttl.toNanos()));
+            configuration.setStoreByValue(false);
+            configuration.setStatisticsEnabled(true);
+            if (cacheManager.getCache(region) == null) {
+                cacheManager.createCache(region, configuration);
+            }
+        }
+        log.info("Entity cache regions {}, max size {}, ttl {}", REGIONS, maxSize, ttl);
+        return cacheManager;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer entityCacheHibernateProperties(CacheManager cacheManager) {
+        return properties -> properties.put(ConfigSettings.CACHE_MANAGER, cacheManager);
+    }
+
+    @Bean
+    public MeterBinder entityCacheMetrics(CacheManager cacheManager) {
+        return registry -> {
+            for (String region : REGIONS) {
+                JCacheMetrics.monitor(registry, cacheManager.getCache(region), Tags.empty());
+            }
+        };
+    }
+}
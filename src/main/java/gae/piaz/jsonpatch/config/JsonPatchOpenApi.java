@@ -0,0 +1,437 @@
+package gae.piaz.jsonpatch.config;
+
+import static gae.piaz.jsonpatch.config.Constants.APPLICATION_JSON_PATCH_VALUE;
+import static gae.piaz.jsonpatch.config.Constants.APPLICATION_MERGE_PATCH_VALUE;
+
+import gae.piaz.jsonpatch.controller.support.IdempotencyKeyFilter;
+import gae.piaz.jsonpatch.service.core.AllowedPath;
+import gae.piaz.jsonpatch.service.core.JsonPatchUpdate;
+import io.swagger.v3.core.converter.AnnotatedType;
+import io.swagger.v3.core.converter.ModelConverters;
+import io.swagger.v3.core.converter.ResolvedSchema;
+import io.swagger.v3.oas.annotations.Hidden;
+import io.swagger.v3.oas.models.OpenAPI;
+import io.swagger.v3.oas.models.Operation;
+import io.swagger.v3.oas.models.PathItem;
+import io.swagger.v3.oas.models.info.Info;
+import io.swagger.v3.oas.models.media.*;
+import io.swagger.v3.oas.models.parameters.HeaderParameter;
+import io.swagger.v3.oas.models.parameters.PathParameter;
+import io.swagger.v3.oas.models.parameters.QueryParameter;
+import io.swagger.v3.oas.models.parameters.RequestBody;
+import io.swagger.v3.oas.models.responses.ApiResponse;
+import io.swagger.v3.oas.models.responses.ApiResponses;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ValueConstants;
+
+/**
+ * Documents the {@link JsonPatchUpdate} endpoints and the DTOs they return. The OpenAPI document of
+ * the API is generated from them and from the GET endpoints at build time, see {@link
+ * OpenApiGenerator}; when springdoc is enabled, {@link OpenApiConfiguration} uses the same methods
+ * to complete the document it scans.
+ */
+public final class JsonPatchOpenApi {
+
+    private static final String JSON_PATCH_ITEM_REF = "#/components/schemas/JsonPatchItem";
+
+    /** Header parameters that OpenAPI documents with the content of the operation instead. */
+    private static final Set<String> CONTENT_HEADERS =
+            Set.of(HttpHeaders.ACCEPT, HttpHeaders.CONTENT_TYPE);
+
+    private JsonPatchOpenApi() {}
+
+    /**
+     * Builds the document of the {@link JsonPatchUpdate} endpoints and of the GET endpoints of the
+     * controllers, from their mapping and swagger annotations alone. Controllers annotated with
+     * {@link Hidden} are left out.
+     */
+    public static OpenAPI generate(List<Class<?>> controllers) {
+        OpenAPI openApi = new OpenAPI();
+        initialize(openApi);
+        for (Class<?> controller : controllers) {
+            if (controller.isAnnotationPresent(Hidden.class)) {
+                continue;
+            }
+            RequestMapping base =
+                    AnnotatedElementUtils.findMergedAnnotation(controller, RequestMapping.class);
+            String basePath = base == null ? "" : firstPath(base);
+            Method[] methods = controller.getDeclaredMethods();
+            Arrays.sort(methods, Comparator.comparing(Method::getName));
+            for (Method method : methods) {
+                JsonPatchUpdate annotation = method.getAnnotation(JsonPatchUpdate.class);
+                RequestMapping mapping =
+                        AnnotatedElementUtils.findMergedAnnotation(method, RequestMapping.class);
+                if (mapping == null) {
+                    continue;
+                }
+                String pattern = basePath + firstPath(mapping);
+                if (annotation != null) {
+                    Set<String> consumes = Set.of(mapping.consumes());
+                    Operation operation = operation(controller, method, consumes);
+                    responseContent(openApi, operation, method, mapping);
+                    pathItem(openApi, pattern).patch(operation);
+                    customize(
+                            openApi,
+                            annotation,
+                            pattern,
+                            consumes.contains(APPLICATION_JSON_PATCH_VALUE),
+                            consumes.contains(APPLICATION_MERGE_PATCH_VALUE));
+                } else if (Arrays.asList(mapping.method()).contains(RequestMethod.GET)) {
+                    Operation operation = operation(controller, method, Set.of());
+                    ApiResponses responses = operation.getResponses();
+                    responses.put("200", new ApiResponse().description("Successful operation"));
+                    responseContent(openApi, operation, method, mapping);
+                    if (operation.getParameters() != null
+                            && operation.getParameters().stream()
+                                    .anyMatch(PathParameter.class::isInstance)) {
+                        responses.put("404", new ApiResponse().description("Resource not found"));
+                    }
+                    responses.put("500", new ApiResponse().description("Internal server error"));
+                    pathItem(openApi, pattern).get(operation);
+                }
+            }
+        }
+        return openApi;
+    }
+
+    /** The path item of the pattern, shared by the operations of its methods. */
+    private static PathItem pathItem(OpenAPI openApi, String pattern) {
+        if (openApi.getPaths() == null || openApi.getPaths().get(pattern) == null) {
+            openApi.path(pattern, new PathItem());
+        }
+        return openApi.getPaths().get(pattern);
+    }
+
+    /**
+     * Documents the body of the successful response: the contents of the swagger {@code
+     * ApiResponse} of the method for code 200, otherwise the body type of its {@link
+     * ResponseEntity}. The schemas of the DTOs are added to the components.
+     */
+    private static void responseContent(
+            OpenAPI openApi, Operation operation, Method method, RequestMapping mapping) {
+        String produces =
+                mapping.produces().length == 0
+                        ? org.springframework.http.MediaType.APPLICATION_JSON_VALUE
+                        : mapping.produces()[0];
+        ApiResponse ok = new ApiResponse().description("Successful operation");
+        Content content = new Content();
+        for (io.swagger.v3.oas.annotations.responses.ApiResponse response :
+                method.getAnnotationsByType(
+                        io.swagger.v3.oas.annotations.responses.ApiResponse.class)) {
+            if (!response.responseCode().equals("200")) {
+                continue;
+            }
+            if (!response.description().isEmpty()) {
+                ok.description(response.description());
+            }
+            for (io.swagger.v3.oas.annotations.media.Content annotated : response.content()) {
+                String mediaType =
+                        annotated.mediaType().isEmpty() ? produces : annotated.mediaType();
+                content.addMediaType(
+                        mediaType,
+                        new MediaType()
+                                .schema(
+                                        responseSchema(
+                                                openApi, annotated.schema().implementation())));
+            }
+        }
+        Type body = responseBody(method);
+        if (content.isEmpty() && body != null) {
+            content.addMediaType(produces, new MediaType().schema(responseSchema(openApi, body)));
+        }
+        if (!content.isEmpty()) {
+            operation.getResponses().put("200", ok.content(content));
+        }
+    }
+
+    /**
+     * The body type of a {@link ResponseEntity}, null when the signature does not tell, e.g. for
+     * {@code Object} or a {@code StreamingResponseBody}.
+     */
+    private static Type responseBody(Method method) {
+        if (!(method.getGenericReturnType() instanceof ParameterizedType returnType)
+                || returnType.getRawType() != ResponseEntity.class) {
+            return null;
+        }
+        Type body = returnType.getActualTypeArguments()[0];
+        if (body instanceof Class<?> type && (type == Object.class || type.isInterface())) {
+            return null;
+        }
+        return body;
+    }
+
+    /** The schema of a response body, as a reference to the component schemas of its DTOs. */
+    private static Schema<?> responseSchema(OpenAPI openApi, Type type) {
+        ResolvedSchema resolved =
+                ModelConverters.getInstance()
+                        .resolveAsResolvedSchema(new AnnotatedType(type).resolveAsRef(true));
+        resolved.referencedSchemas.forEach(openApi.getComponents().getSchemas()::putIfAbsent);
+        return resolved.schema;
+    }
+
+    private static Operation operation(Class<?> controller, Method method, Set<String> consumes) {
+        Operation operation =
+                new Operation()
+                        .operationId(method.getName())
+                        .addTagsItem(tag(controller))
+                        .responses(new ApiResponses());
+        for (Parameter parameter : method.getParameters()) {
+            PathVariable pathVariable =
+                    AnnotatedElementUtils.findMergedAnnotation(parameter, PathVariable.class);
+            RequestHeader header =
+                    AnnotatedElementUtils.findMergedAnnotation(parameter, RequestHeader.class);
+            RequestParam param =
+                    AnnotatedElementUtils.findMergedAnnotation(parameter, RequestParam.class);
+            if (pathVariable != null) {
+                operation.addParametersItem(
+                        new PathParameter()
+                                .name(name(pathVariable.name(), parameter))
+                                .required(true)
+                                .schema(schema(parameter.getType())));
+            } else if (header != null && !CONTENT_HEADERS.contains(header.name())) {
+                operation.addParametersItem(
+                        new HeaderParameter()
+                                .name(name(header.name(), parameter))
+                                .required(header.required())
+                                .schema(schema(parameter.getType())));
+            } else if (param != null) {
+                operation.addParametersItem(
+                        new QueryParameter()
+                                .name(name(param.name(), parameter))
+                                .required(
+                                        param.required()
+                                                && param.defaultValue()
+                                                        .equals(ValueConstants.DEFAULT_NONE))
+                                .schema(schema(parameter.getType())));
+            } else if (parameter.isAnnotationPresent(
+                    org.springframework.web.bind.annotation.RequestBody.class)) {
+                // bulk bodies map each entity id to its JSON Patch, customize adds the patches
+                Content content = new Content();
+                String json = org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+                if (consumes.contains(json)) {
+                    Schema<?> bulk = new MapSchema().additionalProperties(jsonPatchSchema());
+                    content.addMediaType(json, new MediaType().schema(bulk));
+                }
+                operation.requestBody(new RequestBody().content(content));
+            }
+        }
+        return operation;
+    }
+
+    /** The info and the shared JSON Patch schemas of the document. */
+    public static void initialize(OpenAPI openApi) {
+        // Ensure the schema is added to components
+        if (openApi.getComponents() == null) {
+            openApi.setComponents(new io.swagger.v3.oas.models.Components());
+        }
+        if (openApi.getComponents().getSchemas() == null) {
+            openApi.getComponents().setSchemas(new TreeMap<>());
+        }
+
+        openApi.info(
+                new Info()
+                        .title("Sia Modulith API")
+                        .version("1.0")
+                        .description(
+                                "This is the API description for the awesome brand new FAST SiA Modulith backend."));
+
+        // create a new schema for JsonPatch operations and JsonPatch values
+        Schema<?> jsonPatchOps =
+                new StringSchema()
+                        ._enum(
+                                Stream.of("add", "remove", "replace", "move", "copy", "test")
+                                        .toList());
+
+        Schema<?> jsonPatchValue =
+                new Schema<>()
+                        .anyOf(
+                                List.of(
+                                        new StringSchema(),
+                                        new NumberSchema(),
+                                        new BooleanSchema(),
+                                        new ObjectSchema()));
+
+        Schema<?> patchDTO =
+                new ObjectSchema()
+                        .addProperty("op", new Schema<>().$ref("#/components/schemas/JsonPatchOps"))
+                        .addProperty("path", new StringSchema())
+                        .addProperty(
+                                "value",
+                                new Schema<>().$ref("#/components/schemas/JsonPatchValue"));
+
+        patchDTO.required(List.of("op", "path"));
+
+        openApi.getComponents().getSchemas().putIfAbsent("JsonPatchOps", jsonPatchOps);
+        openApi.getComponents().getSchemas().putIfAbsent("JsonPatchValue", jsonPatchValue);
+        openApi.getComponents().getSchemas().putIfAbsent("JsonPatchItem", patchDTO);
+    }
+
+    /**
+     * Documents the PATCH operation of the pattern: the JSON Patch and JSON Merge Patch contents of
+     * the body, the allowed paths and the responses.
+     */
+    public static void customize(
+            OpenAPI openApi,
+            JsonPatchUpdate annotation,
+            String pattern,
+            boolean consumesJsonPatch,
+            boolean consumesMergePatch) {
+        // Ensure the path and request body exist
+        if (openApi.getPaths() == null
+                || openApi.getPaths().get(pattern) == null
+                || openApi.getPaths().get(pattern).getPatch() == null
+                || openApi.getPaths().get(pattern).getPatch().getRequestBody() == null) {
+            return;
+        }
+        Operation patch = openApi.getPaths().get(pattern).getPatch();
+        RequestBody requestBody = patch.getRequestBody();
+
+        // Update the request body content schema to be an array of the patch schema,
+        // bulk endpoints consume application/json and keep their own schema
+        if (consumesJsonPatch) {
+            requestBody
+                    .getContent()
+                    .put(APPLICATION_JSON_PATCH_VALUE, new MediaType().schema(jsonPatchSchema()));
+        }
+        if (consumesMergePatch) {
+            requestBody
+                    .getContent()
+                    .put(
+                            APPLICATION_MERGE_PATCH_VALUE,
+                            new MediaType()
+                                    .schema(
+                                            new ObjectSchema()
+                                                    .description(
+                                                            "JSON Merge Patch (RFC 7386):"
+                                                                    + " members set the allowed"
+                                                                    + " paths, null resets"
+                                                                    + " them")));
+        }
+
+        requestBody.setRequired(true); // Make the requestBody required
+
+        patch.setDescription(
+                "<b>Allowed paths are:</b><br><br>- "
+                        + Arrays.stream(annotation.allowedPaths())
+                                .map(JsonPatchOpenApi::describe)
+                                .collect(Collectors.joining("<br>- ")));
+
+        // Add or update the responses
+        ApiResponses responses = patch.getResponses();
+        // the 200 keeps the DTO content documented for the endpoint
+        ApiResponse ok = responses.computeIfAbsent("200", code -> new ApiResponse());
+        ok.description("Successful operation");
+        responses.put("304", new ApiResponse().description("Not modified"));
+        responses.put("400", new ApiResponse().description("Precondition failed"));
+        responses.put("404", new ApiResponse().description("Resource not found"));
+        responses.put(
+                "409",
+                new ApiResponse()
+                        .description("Updated concurrently by another request, without If-Match"));
+        if (consumesJsonPatch) {
+            patch.addParametersItem(
+                    new HeaderParameter()
+                            .name(IdempotencyKeyFilter.HEADER)
+                            .schema(new StringSchema().maxLength(255))
+                            .description(
+                                    "Retries with the same key and request get the response of"
+                                            + " the first one"));
+            ok.description(
+                    "Successful operation, with Accept: application/json-patch+json the body is"
+                            + " the RFC 6902 diff of the changes");
+            if (ok.getContent() == null) {
+                ok.content(new Content());
+            }
+            ok.getContent()
+                    .addMediaType(
+                            APPLICATION_JSON_PATCH_VALUE,
+                            new MediaType().schema(jsonPatchSchema()));
+            responses.put(
+                    "204",
+                    new ApiResponse()
+                            .description(
+                                    "Successful operation with Prefer: return=minimal, only the"
+                                            + " ETag is returned"));
+            responses.put(
+                    "202",
+                    new ApiResponse()
+                            .description(
+                                    "Accepted with Prefer: respond-async, the Location header is"
+                                            + " the job status URL"));
+            responses.put(
+                    "412",
+                    new ApiResponse().description("If-Match does not match the current ETag"));
+        }
+        responses.put(
+                "429",
+                new ApiResponse()
+                        .description(
+                                "Too many patches waiting, retry after the Retry-After header"));
+        responses.put(
+                "503",
+                new ApiResponse()
+                        .description(
+                                "Timed out waiting to patch, retry after the Retry-After header"));
+        responses.put("500", new ApiResponse().description("Internal server error"));
+    }
+
+    /** A JSON Patch body: an array of {@code JsonPatchItem}. */
+    static Schema<?> jsonPatchSchema() {
+        return new ArraySchema().items(new Schema<>().$ref(JSON_PATCH_ITEM_REF));
+    }
+
+    private static String describe(AllowedPath allowedPath) {
+        if (allowedPath.description().isEmpty()) {
+            return allowedPath.pattern();
+        }
+        return allowedPath.pattern() + " -> " + allowedPath.description();
+    }
+
+    private static String firstPath(RequestMapping mapping) {
+        return mapping.path().length == 0 ? "" : mapping.path()[0];
+    }
+
+    /** The springdoc tag of a controller, e.g. book-controller for BookController. */
+    private static String tag(Class<?> controller) {
+        return controller.getSimpleName().replaceAll("([a-z0-9])([A-Z])", "$1-$2").toLowerCase();
+    }
+
+    private static String name(String name, Parameter parameter) {
+        return name.isEmpty() ? parameter.getName() : name;
+    }
+
+    private static Schema<?> schema(Class<?> type) {
+        if (type == Integer.class || type == int.class) {
+            return new IntegerSchema();
+        }
+        if (type == Long.class || type == long.class) {
+            return new IntegerSchema().format("int64");
+        }
+        if (type == Boolean.class || type == boolean.class) {
+            return new BooleanSchema();
+        }
+        if (type == UUID.class) {
+            return new UUIDSchema();
+        }
+        return new StringSchema();
+    }
+}
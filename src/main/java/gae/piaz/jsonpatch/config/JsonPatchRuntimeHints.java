@@ -0,0 +1,101 @@
+package gae.piaz.jsonpatch.config;
+
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import gae.piaz.jsonpatch.controller.dto.AuthorDTO;
+import gae.piaz.jsonpatch.controller.dto.BookDTO;
+import gae.piaz.jsonpatch.controller.dto.BulkPatchResultDTO;
+import gae.piaz.jsonpatch.controller.dto.PatchJobDTO;
+import gae.piaz.jsonpatch.domain.AuthorEntity;
+import gae.piaz.jsonpatch.domain.BookEntity;
+import gae.piaz.jsonpatch.service.journal.JournalRecord;
+import gae.piaz.jsonpatch.service.patch.AuthorEntityUpdateBean;
+import gae.piaz.jsonpatch.service.patch.BookEntityUpdateBean;
+import java.util.List;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+
+/**
+ * Reflection and resource hints for what AOT processing cannot infer from the bean definitions.
+ * They are checked on the JVM by {@code testAot} only: no native image has been built with them
+ * yet. They cover:
+ *
+ * <ul>
+ *   <li>the update beans, read and written by Jackson through their generated (de)serializers and
+ *       by {@code BeanPatchEngine} through their record components and canonical constructor;
+ *   <li>the DTOs, which the controllers return as {@code ResponseEntity<Object>}, and the journal
+ *       entries;
+ *   <li>the entities, read by Hibernate through their fields;
+ *   <li>the zjsonpatch classes, a library without native metadata of its own;
+ *   <li>the JCache provider and region factory, both loaded by name;
+ *   <li>the OpenAPI document generated at build time.
+ * </ul>
+ */
+public class JsonPatchRuntimeHints implements RuntimeHintsRegistrar {
+
+    private static final List<Class<?>> UPDATE_BEANS =
+            List.of(
+                    AuthorEntityUpdateBean.class,
+                    AuthorEntityUpdateBean.BooksItem.class,
+                    BookEntityUpdateBean.class,
+                    BookEntityUpdateBean.AuthorRef.class);
+
+    private static final List<Class<?>> JSON_TYPES =
+            List.of(
+                    AuthorDTO.class,
+                    BookDTO.class,
+                    BulkPatchResultDTO.class,
+                    PatchJobDTO.class,
+                    JournalRecord.class);
+
+    private static final List<Class<?>> ENTITIES = List.of(AuthorEntity.class, BookEntity.class);
+
+    private static final List<String> ZJSONPATCH_TYPES =
+            List.of(
+                    "com.flipkart.zjsonpatch.JsonPatch",
+                    "com.flipkart.zjsonpatch.JsonDiff",
+                    "com.flipkart.zjsonpatch.Operation",
+                    "com.flipkart.zjsonpatch.CompatibilityFlags",
+                    "com.flipkart.zjsonpatch.DiffFlags");
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        BindingReflectionHintsRegistrar binding = new BindingReflectionHintsRegistrar();
+        // also registers the serializers of the @JsonSerialize and @JsonDeserialize annotations
+        binding.registerReflectionHints(hints.reflection(), UPDATE_BEANS.toArray(Class<?>[]::new));
+        binding.registerReflectionHints(hints.reflection(), JSON_TYPES.toArray(Class<?>[]::new));
+        for (Class<?> bean : UPDATE_BEANS) {
+            hints.reflection()
+                    .registerType(
+                            bean,
+                            MemberCategory.DECLARED_FIELDS,
+                            MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                            MemberCategory.INVOKE_PUBLIC_METHODS);
+        }
+        for (Class<?> entity : ENTITIES) {
+            hints.reflection()
+                    .registerType(
+                            entity,
+                            MemberCategory.DECLARED_FIELDS,
+                            MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                            MemberCategory.INVOKE_DECLARED_METHODS);
+        }
+        for (String type : ZJSONPATCH_TYPES) {
+            hints.reflection()
+                    .registerType(
+                            TypeReference.of(type),
+                            MemberCategory.INVOKE_PUBLIC_METHODS,
+                            MemberCategory.PUBLIC_FIELDS);
+        }
+        hints.reflection()
+                .registerType(
+                        CaffeineCachingProvider.class, MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+        hints.reflection()
+                .registerType(
+                        TypeReference.of("org.hibernate.cache.jcache.internal.JCacheRegionFactory"),
+                        MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+        hints.resources().registerPattern(OpenApiDocument.RESOURCE);
+    }
+}
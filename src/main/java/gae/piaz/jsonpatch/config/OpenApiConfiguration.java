@@ -1,18 +1,21 @@
 package gae.piaz.jsonpatch.config;
 
+import static gae.piaz.jsonpatch.config.Constants.APPLICATION_JSON_PATCH_VALUE;
+import static gae.piaz.jsonpatch.config.Constants.APPLICATION_MERGE_PATCH_VALUE;
+
+import gae.piaz.jsonpatch.service.core.BulkPatchRequest;
+import gae.piaz.jsonpatch.service.core.JsonPatchDocument;
 import gae.piaz.jsonpatch.service.core.JsonPatchUpdate;
-import io.swagger.v3.oas.models.OpenAPI;
-import io.swagger.v3.oas.models.info.Info;
-import io.swagger.v3.oas.models.media.*;
-import io.swagger.v3.oas.models.parameters.RequestBody;
-import java.util.HashMap;
-import java.util.List;
+import gae.piaz.jsonpatch.service.core.PatchDocument;
+import io.swagger.v3.oas.models.media.MapSchema;
+import io.swagger.v3.oas.models.media.Schema;
 import java.util.Map;
-import java.util.stream.Stream;
+import java.util.Set;
 import lombok.AllArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
 import org.springdoc.core.customizers.OpenApiCustomizer;
 import org.springdoc.core.models.GroupedOpenApi;
+import org.springdoc.core.utils.SpringDocUtils;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.method.HandlerMethod;
@@ -21,15 +24,29 @@ import org.springframework.web.servlet.mvc.condition.PatternsRequestCondition;
 import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
 import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
 
+/**
+ * Springdoc, which scans the controllers at runtime and serves the swagger UI. It is off by default
+ * and enabled by the dev profile: the document served at {@code /api-docs} is generated at build
+ * time, see {@link OpenApiGenerator}.
+ */
 @Configuration
+@ConditionalOnProperty(name = "springdoc.api-docs.enabled", matchIfMissing = true)
 @AllArgsConstructor
-@Slf4j
 public class OpenApiConfiguration {
 
     private final RequestMappingHandlerMapping handlerMapping;
 
     static {
         io.swagger.v3.core.jackson.ModelResolver.enumsAsRef = true;
+        // JSON Patch bodies are documented as an array of JsonPatchItem, see JsonPatchOpenApi
+        Schema<?> jsonPatch = JsonPatchOpenApi.jsonPatchSchema();
+        SpringDocUtils.getConfig().replaceWithSchema(JsonPatchDocument.class, jsonPatch);
+        // endpoints that also take merge patches get their merge content in customize
+        SpringDocUtils.getConfig().replaceWithSchema(PatchDocument.class, jsonPatch);
+        // bulk bodies map each entity id to its JSON Patch
+        SpringDocUtils.getConfig()
+                .replaceWithSchema(
+                        BulkPatchRequest.class, new MapSchema().additionalProperties(jsonPatch));
     }
 
     @Bean
@@ -40,21 +57,11 @@ public class OpenApiConfiguration {
     @Bean
     public OpenApiCustomizer customOpenApi() {
         return openApi -> {
-            initialize(openApi);
-
-            openApi.info(
-                    new Info()
-                            .title("Sia Modulith API")
-                            .version("1.0")
-                            .description(
-                                    "This is the API description for the awesome brand new FAST SiA Modulith backend."));
+            JsonPatchOpenApi.initialize(openApi);
 
             Map<RequestMappingInfo, HandlerMethod> handlerMethods =
                     handlerMapping.getHandlerMethods();
 
-            // create a new schema for JsonPatch operations and JsonPatch values
-            createJsonPatchSchema(openApi);
-
             for (Map.Entry<RequestMappingInfo, HandlerMethod> entry : handlerMethods.entrySet()) {
                 RequestMappingInfo requestMappingInfo = entry.getKey();
                 PatternsRequestCondition patternsCondition =
@@ -63,36 +70,26 @@ public class OpenApiConfiguration {
                 if (pattern == null) {
                     continue;
                 }
-                log.info("Processing pattern: {}", pattern);
                 JsonPatchUpdate annotation =
                         entry.getValue().getMethodAnnotation(JsonPatchUpdate.class);
                 if (annotation != null) {
-                    customizeJsonPatch(openApi, annotation, pattern);
+                    Set<org.springframework.http.MediaType> consumes =
+                            requestMappingInfo.getConsumesCondition().getConsumableMediaTypes();
+                    boolean consumesJsonPatch =
+                            consumes.contains(
+                                    org.springframework.http.MediaType.valueOf(
+                                            APPLICATION_JSON_PATCH_VALUE));
+                    boolean consumesMergePatch =
+                            consumes.contains(
+                                    org.springframework.http.MediaType.valueOf(
+                                            APPLICATION_MERGE_PATCH_VALUE));
+                    JsonPatchOpenApi.customize(
+                            openApi, annotation, pattern, consumesJsonPatch, consumesMergePatch);
                 }
             }
         };
     }
 
-    private void createJsonPatchSchema(OpenAPI openApi) {
-        Schema<?> jsonPatchOps =
-                new StringSchema()
-                        ._enum(
-                                Stream.of("add", "remove", "replace", "move", "copy", "test")
-                                        .toList());
-
-        Schema<?> jsonPatchValue =
-                new Schema<>()
-                        .anyOf(
-                                List.of(
-                                        new StringSchema(),
-                                        new NumberSchema(),
-                                        new BooleanSchema(),
-                                        new ObjectSchema()));
-
-        openApi.getComponents().getSchemas().putIfAbsent("JsonPatchOps", jsonPatchOps);
-        openApi.getComponents().getSchemas().putIfAbsent("JsonPatchValue", jsonPatchValue);
-    }
-
     private static String getEndpointPattern(
             PatternsRequestCondition patternsCondition, RequestMappingInfo requestMappingInfo) {
         String pattern = null;
@@ -110,96 +107,4 @@ public class OpenApiConfiguration {
         }
         return pattern;
     }
-
-    private static void customizeJsonPatch(
-            OpenAPI openApi, JsonPatchUpdate annotation, String pattern) {
-        String schemaRef = "#/components/schemas/" + "JsonPatchItem";
-
-        Schema<?> patchDTO =
-                new ObjectSchema()
-                        .addProperty("op", new Schema<>().$ref("#/components/schemas/JsonPatchOps"))
-                        .addProperty("path", new StringSchema())
-                        .addProperty(
-                                "value",
-                                new Schema<>().$ref("#/components/schemas/JsonPatchValue"));
-
-        patchDTO.required(List.of("op", "path"));
-
-        // Add or update the array schema
-        openApi.getComponents().getSchemas().putIfAbsent("JsonPatchItem", patchDTO);
-
-        // Ensure the path and request body exist
-        if (openApi.getPaths() != null
-                && openApi.getPaths().get(pattern) != null
-                && openApi.getPaths().get(pattern).getPatch() != null
-                && openApi.getPaths().get(pattern).getPatch().getRequestBody() != null) {
-
-            RequestBody requestBody = openApi.getPaths().get(pattern).getPatch().getRequestBody();
-
-            // Update the request body content schema to be an array of the patch schema
-            requestBody
-                    .getContent()
-                    .put(
-                            "application/json-patch+json",
-                            new io.swagger.v3.oas.models.media.MediaType()
-                                    .schema(
-                                            new ArraySchema()
-                                                    .items(new Schema<>().$ref(schemaRef))));
-
-            requestBody.setRequired(true); // Make the requestBody required
-
-            openApi.getPaths().get(pattern)
-                    .getPatch().setDescription("<b>Allowed paths are:</b><br><br>- " + String.join("<br>- ", annotation.allowedPaths()));            // Add or update the responses
-            openApi.getPaths()
-                    .get(pattern)
-                    .getPatch()
-                    .getResponses()
-                    .put(
-                            "200",
-                            new io.swagger.v3.oas.models.responses.ApiResponse()
-                                    .description("Successful operation"));
-            openApi.getPaths()
-                    .get(pattern)
-                    .getPatch()
-                    .getResponses()
-                    .put(
-                            "304",
-                            new io.swagger.v3.oas.models.responses.ApiResponse()
-                                    .description("Not modified"));
-            openApi.getPaths()
-                    .get(pattern)
-                    .getPatch()
-                    .getResponses()
-                    .put(
-                            "400",
-                            new io.swagger.v3.oas.models.responses.ApiResponse()
-                                    .description("Precondition failed"));
-            openApi.getPaths()
-                    .get(pattern)
-                    .getPatch()
-                    .getResponses()
-                    .put(
-                            "404",
-                            new io.swagger.v3.oas.models.responses.ApiResponse()
-                                    .description("Resource not found"));
-            openApi.getPaths()
-                    .get(pattern)
-                    .getPatch()
-                    .getResponses()
-                    .put(
-                            "500",
-                            new io.swagger.v3.oas.models.responses.ApiResponse()
-                                    .description("Internal server error"));
-        }
-    }
-
-    private static void initialize(OpenAPI openApi) {
-        // Ensure the schema is added to components
-        if (openApi.getComponents() == null) {
-            openApi.setComponents(new io.swagger.v3.oas.models.Components());
-        }
-        if (openApi.getComponents().getSchemas() == null) {
-            openApi.getComponents().setSchemas(new HashMap<>());
-        }
-    }
 }
@@ -0,0 +1,36 @@
+package gae.piaz.jsonpatch.config;
+
+import java.io.IOException;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+/**
+ * The OpenAPI document of the API, as the JSON bytes written at build time by {@link
+ * OpenApiGenerator}, read once and served as is. Without the generated resource, e.g. when run from
+ * an IDE, the document is generated at startup instead.
+ */
+@Component
+@Slf4j
+public class OpenApiDocument {
+
+    static final String RESOURCE = "openapi/api-docs.json";
+
+    @Getter private final byte[] json;
+
+    /** The quoted MD5 of the document, which only changes with a new build. */
+    @Getter private final String etag;
+
+    public OpenApiDocument() throws IOException {
+        ClassPathResource resource = new ClassPathResource(RESOURCE);
+        if (resource.exists()) {
+            this.json = resource.getContentAsByteArray();
+        } else {
+            log.warn("{} not found, generating the OpenAPI document at startup", RESOURCE);
+            this.json = OpenApiGenerator.json(OpenApiGenerator.generate());
+        }
+        this.etag = "\"" + DigestUtils.md5DigestAsHex(json) + "\"";
+    }
+}
@@ -0,0 +1,61 @@
+package gae.piaz.jsonpatch.config;
+
+import io.swagger.v3.core.util.Json;
+import io.swagger.v3.core.util.Yaml;
+import io.swagger.v3.oas.models.OpenAPI;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.util.ClassUtils;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Generates the OpenAPI document of the {@link gae.piaz.jsonpatch.service.core.JsonPatchUpdate}
+ * endpoints, run by the {@code generateOpenApi} Gradle task. The controllers are found on the
+ * classpath, no application context is started. Writes the YAML read by the typescript-axios
+ * generator and the JSON served by {@link OpenApiDocument}.
+ */
+public final class OpenApiGenerator {
+
+    private static final String CONTROLLER_PACKAGE = "gae.piaz.jsonpatch.controller";
+
+    private OpenApiGenerator() {}
+
+    /**
+     * @param args the YAML output file, then the JSON output file
+     */
+    public static void main(String[] args) throws IOException {
+        OpenAPI openApi = generate();
+        write(Path.of(args[0]), Yaml.pretty().writeValueAsBytes(openApi));
+        write(Path.of(args[1]), json(openApi));
+    }
+
+    public static OpenAPI generate() {
+        return JsonPatchOpenApi.generate(controllers());
+    }
+
+    public static byte[] json(OpenAPI openApi) throws IOException {
+        return Json.mapper().writeValueAsBytes(openApi);
+    }
+
+    private static List<Class<?>> controllers() {
+        ClassPathScanningCandidateComponentProvider scanner =
+                new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter(new AnnotationTypeFilter(RestController.class));
+        return scanner.findCandidateComponents(CONTROLLER_PACKAGE).stream()
+                .map(BeanDefinition::getBeanClassName)
+                .sorted(Comparator.naturalOrder())
+                .<Class<?>>map(name -> ClassUtils.resolveClassName(name, null))
+                .toList();
+    }
+
+    private static void write(Path file, byte[] content) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Files.write(file, content);
+    }
+}
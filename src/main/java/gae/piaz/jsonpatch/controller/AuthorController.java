@@ -1,16 +1,35 @@
 package gae.piaz.jsonpatch.controller;
 
 import static gae.piaz.jsonpatch.config.Constants.APPLICATION_JSON_PATCH_VALUE;
+import static gae.piaz.jsonpatch.config.Constants.APPLICATION_MERGE_PATCH_VALUE;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import gae.piaz.jsonpatch.controller.dto.AuthorDTO;
+import gae.piaz.jsonpatch.controller.dto.BulkPatchResultDTO;
+import gae.piaz.jsonpatch.controller.support.NdjsonStream;
+import gae.piaz.jsonpatch.controller.support.PatchResponses;
+import gae.piaz.jsonpatch.controller.support.PreferHeader;
+import gae.piaz.jsonpatch.controller.support.VersionETag;
 import gae.piaz.jsonpatch.service.AuthorService;
+import gae.piaz.jsonpatch.service.PatchJobService;
+import gae.piaz.jsonpatch.service.PatchOutcome;
+import gae.piaz.jsonpatch.service.ReturnPreference;
+import gae.piaz.jsonpatch.service.core.AllowedPath;
+import gae.piaz.jsonpatch.service.core.BulkPatchRequest;
 import gae.piaz.jsonpatch.service.core.JsonPatchServerError;
 import gae.piaz.jsonpatch.service.core.JsonPatchUpdate;
+import gae.piaz.jsonpatch.service.core.PatchDocument;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import java.util.List;
+import java.util.UUID;
 import lombok.AllArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/api/v1/authors")
@@ -19,21 +38,94 @@ import org.springframework.web.bind.annotation.*;
 public class AuthorController {
 
     private final AuthorService authorService;
+    private final PatchJobService patchJobService;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Streams all the authors as newline delimited JSON, in id order. Memory does not grow with the
+     * number of authors, see {@link AuthorService#exportAuthors}.
+     */
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @ApiResponse(
+            responseCode = "200",
+            description = "One author per line",
+            content =
+                    @Content(
+                            mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                            schema = @Schema(implementation = AuthorDTO.class)))
+    public ResponseEntity<StreamingResponseBody> exportAuthors() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(NdjsonStream.of(objectMapper, AuthorDTO.class, authorService::exportAuthors));
+    }
 
     @PatchMapping(
             path = "/{id}",
-            consumes = APPLICATION_JSON_PATCH_VALUE,
-            produces = MediaType.APPLICATION_JSON_VALUE)
+            consumes = {APPLICATION_JSON_PATCH_VALUE, APPLICATION_MERGE_PATCH_VALUE},
+            produces = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_JSON_PATCH_VALUE})
+    @ApiResponse(
+            responseCode = "200",
+            content =
+                    @Content(
+                            mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            schema = @Schema(implementation = AuthorDTO.class)))
     @JsonPatchUpdate(
             allowedPaths = {
-                "name -> change the name of the author",
-                "books/- -> add and remove items from the books of this author",
-                "books/-/title -> update an author's book title",
-                "books/-/isbn -> update an author's book isbn"
+                @AllowedPath(pattern = "name", description = "change the name of the author"),
+                @AllowedPath(
+                        pattern = "books/-",
+                        description = "add and remove items from the books of this author"),
+                @AllowedPath(
+                        pattern = "books/-/title",
+                        description = "update an author's book title"),
+                @AllowedPath(pattern = "books/-/isbn", description = "update an author's book isbn")
             })
-    public ResponseEntity<AuthorDTO> updateAuthor(
-            @PathVariable("id") Integer authorId, @RequestBody JsonNode patch)
+    public ResponseEntity<Object> updateAuthor(
+            @PathVariable("id") Integer authorId,
+            @RequestBody PatchDocument patch,
+            @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestHeader(name = PreferHeader.NAME, required = false) String prefer,
+            @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept)
             throws JsonPatchServerError {
-        return ResponseEntity.ok(authorService.updateAuthor(authorId, patch));
+        Integer expectedVersion = VersionETag.parseIfMatch(ifMatch);
+        if (PreferHeader.has(prefer, PreferHeader.RESPOND_ASYNC)) {
+            UUID jobId =
+                    patchJobService.submit(
+                            () -> authorService.updateAuthor(authorId, patch, expectedVersion));
+            return ResponseEntity.accepted()
+                    .location(PatchJobController.location(jobId))
+                    .header(PreferHeader.PREFERENCE_APPLIED, PreferHeader.RESPOND_ASYNC)
+                    .build();
+        }
+
+        ReturnPreference preference = PatchResponses.preference(prefer, accept);
+        PatchOutcome<AuthorDTO> outcome =
+                authorService.updateAuthor(authorId, patch, expectedVersion, preference);
+        return PatchResponses.of(outcome, preference);
+    }
+
+    /**
+     * Patches many authors at once. The body maps each author id to its JSON Patch, and the
+     * response holds a result per author. With {@code atomic=true} a single failed patch rolls back
+     * all the others.
+     */
+    @PatchMapping(
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    @JsonPatchUpdate(
+            allowedPaths = {
+                @AllowedPath(pattern = "name", description = "change the name of the author"),
+                @AllowedPath(
+                        pattern = "books/-",
+                        description = "add and remove items from the books of this author"),
+                @AllowedPath(
+                        pattern = "books/-/title",
+                        description = "update an author's book title"),
+                @AllowedPath(pattern = "books/-/isbn", description = "update an author's book isbn")
+            })
+    public ResponseEntity<List<BulkPatchResultDTO<AuthorDTO>>> updateAuthors(
+            @RequestBody BulkPatchRequest patches,
+            @RequestParam(name = "atomic", defaultValue = "false") boolean atomic) {
+        return ResponseEntity.ok(authorService.updateAuthors(patches, atomic));
     }
 }
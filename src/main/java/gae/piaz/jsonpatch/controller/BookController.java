@@ -1,16 +1,35 @@
 package gae.piaz.jsonpatch.controller;
 
 import static gae.piaz.jsonpatch.config.Constants.APPLICATION_JSON_PATCH_VALUE;
+import static gae.piaz.jsonpatch.config.Constants.APPLICATION_MERGE_PATCH_VALUE;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import gae.piaz.jsonpatch.controller.dto.BookDTO;
+import gae.piaz.jsonpatch.controller.dto.BulkPatchResultDTO;
+import gae.piaz.jsonpatch.controller.support.NdjsonStream;
+import gae.piaz.jsonpatch.controller.support.PatchResponses;
+import gae.piaz.jsonpatch.controller.support.PreferHeader;
+import gae.piaz.jsonpatch.controller.support.VersionETag;
 import gae.piaz.jsonpatch.service.BookService;
+import gae.piaz.jsonpatch.service.PatchJobService;
+import gae.piaz.jsonpatch.service.PatchOutcome;
+import gae.piaz.jsonpatch.service.ReturnPreference;
+import gae.piaz.jsonpatch.service.core.AllowedPath;
+import gae.piaz.jsonpatch.service.core.BulkPatchRequest;
 import gae.piaz.jsonpatch.service.core.JsonPatchServerError;
 import gae.piaz.jsonpatch.service.core.JsonPatchUpdate;
+import gae.piaz.jsonpatch.service.core.PatchDocument;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import java.util.List;
+import java.util.UUID;
 import lombok.AllArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @RequestMapping("/api/v1/books")
@@ -19,15 +38,84 @@ import org.springframework.web.bind.annotation.*;
 public class BookController {
 
     private final BookService bookService;
+    private final PatchJobService patchJobService;
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Streams all the books as newline delimited JSON, in id order. Memory does not grow with the
+     * number of books, see {@link BookService#exportBooks}.
+     */
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @ApiResponse(
+            responseCode = "200",
+            description = "One book per line",
+            content =
+                    @Content(
+                            mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                            schema = @Schema(implementation = BookDTO.class)))
+    public ResponseEntity<StreamingResponseBody> exportBooks() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(NdjsonStream.of(objectMapper, BookDTO.class, bookService::exportBooks));
+    }
 
     @PatchMapping(
             path = "/{id}",
-            consumes = APPLICATION_JSON_PATCH_VALUE,
-            produces = MediaType.APPLICATION_JSON_VALUE)
-    @JsonPatchUpdate(allowedPaths = {"title", "author/id", "isbn"})
-    public ResponseEntity<BookDTO> updateBook(
-            @PathVariable("id") Integer bookId, @RequestBody JsonNode patch)
+            consumes = {APPLICATION_JSON_PATCH_VALUE, APPLICATION_MERGE_PATCH_VALUE},
+            produces = {MediaType.APPLICATION_JSON_VALUE, APPLICATION_JSON_PATCH_VALUE})
+    @ApiResponse(
+            responseCode = "200",
+            content =
+                    @Content(
+                            mediaType = MediaType.APPLICATION_JSON_VALUE,
+                            schema = @Schema(implementation = BookDTO.class)))
+    @JsonPatchUpdate(
+            allowedPaths = {
+                @AllowedPath(pattern = "title"),
+                @AllowedPath(pattern = "author/id"),
+                @AllowedPath(pattern = "isbn")
+            })
+    public ResponseEntity<Object> updateBook(
+            @PathVariable("id") Integer bookId,
+            @RequestBody PatchDocument patch,
+            @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestHeader(name = PreferHeader.NAME, required = false) String prefer,
+            @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept)
             throws JsonPatchServerError {
-        return ResponseEntity.ok(bookService.updateBook(bookId, patch));
+        Integer expectedVersion = VersionETag.parseIfMatch(ifMatch);
+        if (PreferHeader.has(prefer, PreferHeader.RESPOND_ASYNC)) {
+            UUID jobId =
+                    patchJobService.submit(
+                            () -> bookService.updateBook(bookId, patch, expectedVersion));
+            return ResponseEntity.accepted()
+                    .location(PatchJobController.location(jobId))
+                    .header(PreferHeader.PREFERENCE_APPLIED, PreferHeader.RESPOND_ASYNC)
+                    .build();
+        }
+
+        ReturnPreference preference = PatchResponses.preference(prefer, accept);
+        PatchOutcome<BookDTO> outcome =
+                bookService.updateBook(bookId, patch, expectedVersion, preference);
+        return PatchResponses.of(outcome, preference);
+    }
+
+    /**
+     * Patches many books at once. The body maps each book id to its JSON Patch, and the response
+     * holds a result per book. With {@code atomic=true} a single failed patch rolls back all the
+     * others.
+     */
+    @PatchMapping(
+            consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    @JsonPatchUpdate(
+            allowedPaths = {
+                @AllowedPath(pattern = "title"),
+                @AllowedPath(pattern = "author/id"),
+                @AllowedPath(pattern = "isbn")
+            })
+    public ResponseEntity<List<BulkPatchResultDTO<BookDTO>>> updateBooks(
+            @RequestBody BulkPatchRequest patches,
+            @RequestParam(name = "atomic", defaultValue = "false") boolean atomic) {
+        return ResponseEntity.ok(bookService.updateBooks(patches, atomic));
     }
 }
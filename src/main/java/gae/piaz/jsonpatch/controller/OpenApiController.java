@@ -0,0 +1,36 @@
+package gae.piaz.jsonpatch.controller;
+
+import gae.piaz.jsonpatch.config.OpenApiDocument;
+import io.swagger.v3.oas.annotations.Hidden;
+import lombok.AllArgsConstructor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+@RestController
+@Hidden
+@AllArgsConstructor
+@CrossOrigin
+public class OpenApiController {
+
+    private final OpenApiDocument openApiDocument;
+
+    /**
+     * Serves the OpenAPI document generated at build time. Clients revalidate it with
+     * If-None-Match, and get a 304 until the next deployment.
+     */
+    @GetMapping(path = "/api-docs", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<byte[]> apiDocs(WebRequest request) {
+        if (request.checkNotModified(openApiDocument.getEtag())) {
+            return null;
+        }
+        return ResponseEntity.ok()
+                .eTag(openApiDocument.getEtag())
+                .cacheControl(CacheControl.noCache())
+                .body(openApiDocument.getJson());
+    }
+}
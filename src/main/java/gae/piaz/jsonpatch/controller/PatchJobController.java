@@ -0,0 +1,36 @@
+package gae.piaz.jsonpatch.controller;
+
+import gae.piaz.jsonpatch.controller.dto.PatchJobDTO;
+import gae.piaz.jsonpatch.service.PatchJobService;
+import gae.piaz.jsonpatch.service.core.EntityNotFoundException;
+import java.net.URI;
+import java.util.UUID;
+import lombok.AllArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+/** Status URLs of the patches requested with {@code Prefer: respond-async}. */
+@RestController
+@RequestMapping("/api/v1/patch-jobs")
+@AllArgsConstructor
+@CrossOrigin
+public class PatchJobController {
+
+    private final PatchJobService patchJobService;
+
+    @GetMapping(path = "/{id}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<PatchJobDTO> getJob(@PathVariable("id") UUID jobId) {
+        return ResponseEntity.ok(
+                patchJobService.find(jobId).orElseThrow(EntityNotFoundException::new));
+    }
+
+    /** Returns the status URL of the job, relative to the context path of the current request. */
+    static URI location(UUID jobId) {
+        return ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path("/api/v1/patch-jobs/{id}")
+                .buildAndExpand(jobId)
+                .toUri();
+    }
+}
@@ -3,4 +3,4 @@ package gae.piaz.jsonpatch.controller.dto;
 import lombok.Builder;
 
 @Builder
-public record AuthorDTO(Integer id, String name) {}
+public record AuthorDTO(Integer id, String name, Integer version) {}
@@ -0,0 +1,14 @@
+package gae.piaz.jsonpatch.controller.dto;
+
+import lombok.Builder;
+
+/**
+ * The outcome of one item of a bulk patch request.
+ *
+ * @param id the id of the patched entity
+ * @param status the HTTP status the item would have had as a single PATCH request
+ * @param result the updated entity, only set on success
+ * @param error the reason of the failure, only set on error
+ */
+@Builder
+public record BulkPatchResultDTO<T>(Integer id, int status, T result, String error) {}
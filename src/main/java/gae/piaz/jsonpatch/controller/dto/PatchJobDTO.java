@@ -0,0 +1,25 @@
+package gae.piaz.jsonpatch.controller.dto;
+
+import java.util.UUID;
+import lombok.Builder;
+
+/**
+ * The state of a patch requested with {@code Prefer: respond-async}.
+ *
+ * @param id the id of the job, part of its status URL
+ * @param state whether the patch is still queued, running or done
+ * @param status the HTTP status the patch would have had as a synchronous request, only set once
+ *     done
+ * @param result the updated entity, only set on success
+ * @param error the reason of the failure, only set on error
+ */
+@Builder(toBuilder = true)
+public record PatchJobDTO(UUID id, State state, Integer status, Object result, String error) {
+
+    public enum State {
+        PENDING,
+        RUNNING,
+        SUCCEEDED,
+        FAILED
+    }
+}
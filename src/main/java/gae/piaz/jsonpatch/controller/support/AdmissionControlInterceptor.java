@@ -0,0 +1,144 @@
+package gae.piaz.jsonpatch.controller.support;
+
+import gae.piaz.jsonpatch.service.core.AdmissionTimeoutException;
+import gae.piaz.jsonpatch.service.core.JsonPatchUpdate;
+import gae.piaz.jsonpatch.service.core.TooManyPatchesException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Admission control in front of the patch services. With virtual threads every request gets a
+ * thread, and they would all queue on the small JDBC pool, some of them pinning their carrier in
+ * synchronized driver code. Instead at most {@code jsonpatch.admission.max-concurrent} {@link
+ * JsonPatchUpdate} requests run at once, by default the size of the pool, and up to {@code
+ * max-waiting} more wait for a slot, for at most {@code max-wait}. Requests over the queue are
+ * rejected at once with a 429, the ones that wait too long with a 503, both with a Retry-After
+ * header, so that latency degrades gracefully rather than every request timing out. Waiting parks
+ * the virtual thread without pinning it.
+ *
+ * <p>Meters: the {@code jsonpatch.admission.active} and {@code jsonpatch.admission.waiting} gauges,
+ * the {@code jsonpatch.admission.wait} timer of the requests that had to wait, and the {@code
+ * jsonpatch.admission.rejected} counter tagged with the reason: queue_full or timeout.
+ */
+@Component
+public class AdmissionControlInterceptor implements HandlerInterceptor {
+
+    private static final String ADMITTED =
+            AdmissionControlInterceptor.class.getName() + ".ADMITTED";
+
+    private final Semaphore slots;
+    private final int maxWaiting;
+    private final long maxWaitNanos;
+    private final String retryAfter;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final Timer waitTimer;
+    private final Counter queueFull;
+    private final Counter timedOut;
+
+    public AdmissionControlInterceptor(
+            MeterRegistry registry,
+            @Value(
+                            "${jsonpatch.admission.max-concurrent:"
+                                    + "${spring.datasource.hikari.maximum-pool-size:10}}")
+                    int maxConcurrent,
+            @Value("${jsonpatch.admission.max-waiting:100}") int maxWaiting,
+            @Value("${jsonpatch.admission.max-wait:2s}") Duration maxWait) {
+        this.slots = new Semaphore(maxConcurrent, true);
+        this.maxWaiting = maxWaiting;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.retryAfter = String.valueOf(Math.max(1, maxWait.toSeconds()));
+        Gauge.builder(
+                        "jsonpatch.admission.active",
+                        slots,
+                        s -> maxConcurrent - s.availablePermits())
+                .description("Patch requests running")
+                .strongReference(true)
+                .register(registry);
+        Gauge.builder("jsonpatch.admission.waiting", waiting, AtomicInteger::get)
+                .description("Patch requests waiting for a slot")
+                .strongReference(true)
+                .register(registry);
+        this.waitTimer =
+                Timer.builder("jsonpatch.admission.wait")
+                        .description("Time spent waiting for a slot by the patch requests")
+                        .publishPercentileHistogram()
+                        .register(registry);
+        this.queueFull = rejected(registry, "queue_full");
+        this.timedOut = rejected(registry, "timeout");
+    }
+
+    private static Counter rejected(MeterRegistry registry, String reason) {
+        return Counter.builder("jsonpatch.admission.rejected")
+                .description("Patch requests rejected by the admission control")
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    /**
+     * Takes a slot for a patch request, waiting for one if needed.
+     *
+     * @throws TooManyPatchesException if the wait queue is full
+     * @throws AdmissionTimeoutException if no slot was freed in time
+     */
+    @Override
+    public boolean preHandle(
+            HttpServletRequest request, HttpServletResponse response, Object handler)
+            throws InterruptedException {
+        if (!(handler instanceof HandlerMethod method)
+                || !method.hasMethodAnnotation(JsonPatchUpdate.class)) {
+            return true;
+        }
+        if (!slots.tryAcquire()) {
+            await(response);
+        }
+        request.setAttribute(ADMITTED, Boolean.TRUE);
+        return true;
+    }
+
+    private void await(HttpServletResponse response) throws InterruptedException {
+        if (waiting.incrementAndGet() > maxWaiting) {
+            waiting.decrementAndGet();
+            queueFull.increment();
+            response.setHeader(HttpHeaders.RETRY_AFTER, retryAfter);
+            throw new TooManyPatchesException();
+        }
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = slots.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS);
+        } finally {
+            waiting.decrementAndGet();
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        if (!acquired) {
+            timedOut.increment();
+            response.setHeader(HttpHeaders.RETRY_AFTER, retryAfter);
+            throw new AdmissionTimeoutException();
+        }
+    }
+
+    @Override
+    public void afterCompletion(
+            HttpServletRequest request,
+            HttpServletResponse response,
+            Object handler,
+            Exception ex) {
+        if (request.getAttribute(ADMITTED) != null) {
+            request.removeAttribute(ADMITTED);
+            slots.release();
+        }
+    }
+}
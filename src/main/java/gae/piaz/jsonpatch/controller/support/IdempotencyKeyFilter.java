@@ -0,0 +1,336 @@
+package gae.piaz.jsonpatch.controller.support;
+
+import gae.piaz.jsonpatch.service.core.LruCache;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+/**
+ * Makes the PATCH requests that carry an {@code Idempotency-Key} header safe to retry. The first
+ * request with a key runs, and its response is kept in memory; a retry with the same key and the
+ * same request is answered with that response, marked with {@code Idempotent-Replayed: true},
+ * without reaching the controllers. A duplicate that arrives while the first request is still
+ * running waits for its response, or gets a 409 after {@code jsonpatch.idempotency.wait-timeout}.
+ *
+ * <p>Requests are told apart by a SHA-256 fingerprint of their method, URI, body and of the headers
+ * that change the response; a key reused for another request gets a 422. The body is read up front
+ * for the fingerprint, a body over {@code max-body-size} gets a 413. Only successful responses are
+ * kept, for {@code ttl} and at most {@code max-entries} of them, the least recently used evicted
+ * first: a failed request changed nothing, so its retry runs again. The requests still running are
+ * tracked apart and never evicted, so a duplicate always finds them.
+ */
+@Component
+public class IdempotencyKeyFilter extends OncePerRequestFilter {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED = "Idempotent-Replayed";
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private static final List<String> FINGERPRINT_HEADERS =
+            List.of(
+                    HttpHeaders.CONTENT_TYPE,
+                    HttpHeaders.ACCEPT,
+                    HttpHeaders.IF_MATCH,
+                    PreferHeader.NAME);
+
+    /** The requests running, at most one per key. */
+    private final ConcurrentMap<String, Execution> running = new ConcurrentHashMap<>();
+
+    /** The requests that completed successfully, whose responses are replayed. */
+    private final LruCache<String, Execution> executions;
+
+    private final long ttlNanos;
+    private final long waitTimeoutNanos;
+    private final int maxBodySize;
+
+    public IdempotencyKeyFilter(
+            @Value("${jsonpatch.idempotency.max-entries:10000}") int maxEntries,
+            @Value("${jsonpatch.idempotency.ttl:1h}") Duration ttl,
+            @Value("${jsonpatch.idempotency.wait-timeout:30s}") Duration waitTimeout,
+            @Value("${jsonpatch.idempotency.max-body-size:1MB}") DataSize maxBodySize) {
+        this.executions = new LruCache<>(maxEntries);
+        this.ttlNanos = ttl.toNanos();
+        this.waitTimeoutNanos = waitTimeout.toNanos();
+        this.maxBodySize = Math.toIntExact(maxBodySize.toBytes());
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !HttpMethod.PATCH.matches(request.getMethod()) || request.getHeader(HEADER) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(
+            HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String key = request.getHeader(HEADER);
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            response.sendError(
+                    HttpStatus.BAD_REQUEST.value(),
+                    HEADER + " must have 1 to " + MAX_KEY_LENGTH + " characters");
+            return;
+        }
+        byte[] body = readBody(request);
+        if (body == null) {
+            response.sendError(
+                    HttpStatus.PAYLOAD_TOO_LARGE.value(),
+                    "The body of a request with an "
+                            + HEADER
+                            + " must not exceed "
+                            + maxBodySize
+                            + " bytes");
+            return;
+        }
+        CachedBodyRequest cachedRequest = new CachedBodyRequest(request, body);
+        String fingerprint = fingerprint(cachedRequest);
+        while (true) {
+            Execution candidate = new Execution(fingerprint);
+            long now = System.nanoTime();
+            Execution[] found = {candidate};
+            running.compute(
+                    key,
+                    (k, current) -> {
+                        if (current != null) {
+                            found[0] = current;
+                            return current;
+                        }
+                        Execution completed = executions.get(key);
+                        if (completed == null || completed.expired(now)) {
+                            executions.remove(key);
+                            return candidate;
+                        }
+                        found[0] = completed;
+                        return null;
+                    });
+            Execution execution = found[0];
+            if (!execution.fingerprint.equals(fingerprint)) {
+                response.sendError(
+                        HttpStatus.UNPROCESSABLE_ENTITY.value(),
+                        HEADER + " was already used for another request");
+                return;
+            }
+            if (execution == candidate) {
+                execute(key, execution, cachedRequest, response, chain);
+                return;
+            }
+            try {
+                CachedResponse cached =
+                        execution.response.get(waitTimeoutNanos, TimeUnit.NANOSECONDS);
+                if (cached != null) {
+                    cached.writeTo(response);
+                    return;
+                }
+                // the request in flight failed, this one runs instead
+            } catch (TimeoutException e) {
+                response.sendError(
+                        HttpStatus.CONFLICT.value(),
+                        "A request with the same " + HEADER + " is still in progress");
+                return;
+            } catch (ExecutionException e) {
+                // the request in flight failed, this one runs instead
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ServletException("Interrupted while waiting for " + HEADER + " " + key);
+            }
+        }
+    }
+
+    private void execute(
+            String key,
+            Execution execution,
+            HttpServletRequest request,
+            HttpServletResponse response,
+            FilterChain chain)
+            throws ServletException, IOException {
+        ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+        CachedResponse cached = null;
+        try {
+            chain.doFilter(request, wrapper);
+            if (HttpStatusCode.valueOf(wrapper.getStatus()).is2xxSuccessful()) {
+                cached = CachedResponse.of(wrapper);
+            }
+        } finally {
+            if (cached != null) {
+                execution.expiresAt = System.nanoTime() + ttlNanos;
+                executions.put(key, execution);
+            }
+            // a duplicate arriving from now on finds the kept response, or runs again
+            running.remove(key, execution);
+            execution.response.complete(cached);
+        }
+        wrapper.copyBodyToResponse();
+    }
+
+    /**
+     * Reads the body of the request, refusing it as soon as it is known to exceed the maximum size:
+     * from its Content-Length if it has one, otherwise once more bytes than allowed were read.
+     *
+     * @return null if the body is too large
+     */
+    private byte[] readBody(HttpServletRequest request) throws IOException {
+        if (request.getContentLengthLong() > maxBodySize) {
+            return null;
+        }
+        byte[] body = request.getInputStream().readNBytes(maxBodySize + 1);
+        return body.length > maxBodySize ? null : body;
+    }
+
+    private static String fingerprint(CachedBodyRequest request) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        update(digest, request.getMethod());
+        update(digest, request.getRequestURI());
+        update(digest, request.getQueryString());
+        for (String header : FINGERPRINT_HEADERS) {
+            update(digest, request.getHeader(header));
+        }
+        digest.update(request.body);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value != null) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) '\n');
+    }
+
+    /** The first request with a key, whose response is completed once it ran. */
+    private static final class Execution {
+
+        private final String fingerprint;
+
+        /** The response to replay, null if the request failed and nothing is kept. */
+        private final CompletableFuture<CachedResponse> response = new CompletableFuture<>();
+
+        /** The System.nanoTime at which the kept response expires, once completed. */
+        private volatile long expiresAt;
+
+        private Execution(String fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        private boolean expired(long now) {
+            return response.isDone() && now - expiresAt >= 0;
+        }
+    }
+
+    private record CachedResponse(
+            int status, String contentType, Map<String, List<String>> headers, byte[] body) {
+
+        static CachedResponse of(ContentCachingResponseWrapper response) {
+            Map<String, List<String>> headers = new LinkedHashMap<>();
+            for (String name : response.getHeaderNames()) {
+                if (!name.equalsIgnoreCase(HttpHeaders.CONTENT_TYPE)
+                        && !name.equalsIgnoreCase(HttpHeaders.CONTENT_LENGTH)) {
+                    headers.put(name, List.copyOf(response.getHeaders(name)));
+                }
+            }
+            return new CachedResponse(
+                    response.getStatus(),
+                    response.getContentType(),
+                    headers,
+                    response.getContentAsByteArray());
+        }
+
+        void writeTo(HttpServletResponse response) throws IOException {
+            response.setStatus(status);
+            headers.forEach((name, values) -> values.forEach(v -> response.addHeader(name, v)));
+            response.setHeader(REPLAYED, "true");
+            if (contentType != null) {
+                response.setContentType(contentType);
+            }
+            response.setContentLength(body.length);
+            response.getOutputStream().write(body);
+        }
+    }
+
+    /** A request whose body was read up front, to be fingerprinted and then read again. */
+    private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        private CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream input = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public boolean isFinished() {
+                    return input.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    throw new IllegalStateException(
+                            "The body of a request with an "
+                                    + HEADER
+                                    + " was read up front, it cannot be read asynchronously");
+                }
+
+                @Override
+                public int read() {
+                    return input.read();
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) {
+                    return input.read(buffer, offset, length);
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding();
+            Charset charset = encoding == null ? StandardCharsets.UTF_8 : Charset.forName(encoding);
+            return new BufferedReader(new InputStreamReader(getInputStream(), charset));
+        }
+    }
+}
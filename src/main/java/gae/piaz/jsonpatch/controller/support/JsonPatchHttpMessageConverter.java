@@ -0,0 +1,66 @@
+package gae.piaz.jsonpatch.controller.support;
+
+import static gae.piaz.jsonpatch.config.Constants.APPLICATION_JSON_PATCH_VALUE;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gae.piaz.jsonpatch.service.core.JsonPatchClientError;
+import gae.piaz.jsonpatch.service.core.JsonPatchDocument;
+import gae.piaz.jsonpatch.service.core.JsonPatchLimits;
+import gae.piaz.jsonpatch.service.core.JsonPatchReader;
+import gae.piaz.jsonpatch.service.core.PatchDocument;
+import java.io.IOException;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reads {@code application/json-patch+json} request bodies into a {@link JsonPatchDocument}, with
+ * the Jackson streaming parser. The body is never built as a full JsonNode tree, and the {@link
+ * JsonPatchLimits} are enforced while it is parsed.
+ */
+@Component
+public class JsonPatchHttpMessageConverter extends AbstractHttpMessageConverter<JsonPatchDocument> {
+
+    private final JsonFactory jsonFactory;
+
+    private final JsonPatchReader jsonPatchReader;
+
+    public JsonPatchHttpMessageConverter(ObjectMapper objectMapper, JsonPatchLimits limits) {
+        super(MediaType.valueOf(APPLICATION_JSON_PATCH_VALUE));
+        this.jsonFactory = objectMapper.getFactory();
+        this.jsonPatchReader = new JsonPatchReader(limits);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return JsonPatchDocument.class == clazz || PatchDocument.class == clazz;
+    }
+
+    @Override
+    protected boolean canWrite(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected JsonPatchDocument readInternal(
+            Class<? extends JsonPatchDocument> clazz, HttpInputMessage inputMessage)
+            throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(inputMessage.getBody())) {
+            return jsonPatchReader.read(parser);
+        } catch (JsonPatchClientError | IOException e) {
+            throw new HttpMessageNotReadableException(e.getMessage(), e, inputMessage);
+        }
+    }
+
+    @Override
+    protected void writeInternal(JsonPatchDocument patch, HttpOutputMessage outputMessage) {
+        throw new HttpMessageNotWritableException(
+                "JSON Patch documents are only read, never written");
+    }
+}
@@ -0,0 +1,105 @@
+package gae.piaz.jsonpatch.controller.support;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import gae.piaz.jsonpatch.service.core.BulkPatchRequest;
+import gae.piaz.jsonpatch.service.core.JsonPatchClientError;
+import gae.piaz.jsonpatch.service.core.JsonPatchDocument;
+import gae.piaz.jsonpatch.service.core.JsonPatchLimits;
+import gae.piaz.jsonpatch.service.core.JsonPatchReader;
+import gae.piaz.jsonpatch.service.core.TooManyBulkPatchesException;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Lets Jackson read a {@link JsonPatchDocument} nested in a JSON body, e.g. the values of a {@link
+ * gae.piaz.jsonpatch.service.core.BulkPatchRequest}, with the same streaming {@link
+ * JsonPatchReader} and limits as {@link JsonPatchHttpMessageConverter}. A bulk request is read
+ * patch by patch, and rejected once it holds more than jsonpatch.bulk.max-items.
+ */
+@Component
+public class JsonPatchJacksonModule extends SimpleModule {
+
+    public JsonPatchJacksonModule(
+            JsonPatchLimits limits, @Value("${jsonpatch.bulk.max-items:1000}") int maxBulkItems) {
+        super("JsonPatchModule");
+        JsonPatchReader jsonPatchReader = new JsonPatchReader(limits);
+        addDeserializer(JsonPatchDocument.class, new Deserializer(jsonPatchReader));
+        addDeserializer(
+                BulkPatchRequest.class, new BulkDeserializer(jsonPatchReader, maxBulkItems));
+    }
+
+    private static final class Deserializer extends StdDeserializer<JsonPatchDocument> {
+
+        private final JsonPatchReader jsonPatchReader;
+
+        private Deserializer(JsonPatchReader jsonPatchReader) {
+            super(JsonPatchDocument.class);
+            this.jsonPatchReader = jsonPatchReader;
+        }
+
+        @Override
+        public JsonPatchDocument deserialize(JsonParser parser, DeserializationContext context)
+                throws IOException {
+            try {
+                return jsonPatchReader.readEmbedded(parser);
+            } catch (JsonPatchClientError e) {
+                throw JsonMappingException.from(parser, e.getMessage(), e);
+            }
+        }
+    }
+
+    private static final class BulkDeserializer extends StdDeserializer<BulkPatchRequest> {
+
+        private final JsonPatchReader jsonPatchReader;
+        private final int maxItems;
+
+        private BulkDeserializer(JsonPatchReader jsonPatchReader, int maxItems) {
+            super(BulkPatchRequest.class);
+            this.jsonPatchReader = jsonPatchReader;
+            this.maxItems = maxItems;
+        }
+
+        /**
+         * @throws TooManyBulkPatchesException as soon as the patch past the limit is reached,
+         *     before it is read
+         */
+        @Override
+        public BulkPatchRequest deserialize(JsonParser parser, DeserializationContext context)
+                throws IOException {
+            if (!parser.isExpectedStartObjectToken()) {
+                return (BulkPatchRequest)
+                        context.handleUnexpectedToken(BulkPatchRequest.class, parser);
+            }
+            Map<Integer, JsonPatchDocument> patches = new LinkedHashMap<>();
+            // counted as read, a repeated id replaces the earlier patch but is read all the same
+            int items = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                if (++items > maxItems) {
+                    throw new TooManyBulkPatchesException();
+                }
+                String name = parser.currentName();
+                Integer id;
+                try {
+                    id = Integer.valueOf(name);
+                } catch (NumberFormatException e) {
+                    throw context.weirdKeyException(Integer.class, name, "not an entity id");
+                }
+                parser.nextToken();
+                try {
+                    patches.put(id, jsonPatchReader.readEmbedded(parser));
+                } catch (JsonPatchClientError e) {
+                    throw JsonMappingException.from(parser, e.getMessage(), e);
+                }
+            }
+            return new BulkPatchRequest(patches);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package gae.piaz.jsonpatch.controller.support;
+
+import gae.piaz.jsonpatch.service.core.AllowedPathMatcher;
+import gae.piaz.jsonpatch.service.core.JsonPatchUpdate;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+/**
+ * Compiles the {@link JsonPatchUpdate#allowedPaths()} of every handler method into an {@link
+ * AllowedPathMatcher} once, at startup.
+ */
+@Component
+@Slf4j
+public class JsonPatchPathRegistry {
+
+    private final Map<Method, AllowedPathMatcher> matchers = new ConcurrentHashMap<>();
+
+    public JsonPatchPathRegistry(RequestMappingHandlerMapping handlerMapping) {
+        for (HandlerMethod handlerMethod : handlerMapping.getHandlerMethods().values()) {
+            JsonPatchUpdate annotation = handlerMethod.getMethodAnnotation(JsonPatchUpdate.class);
+            if (annotation != null) {
+                matchers.put(
+                        handlerMethod.getMethod(),
+                        AllowedPathMatcher.compile(annotation.allowedPaths()));
+                log.debug("Compiled allowed JSON Patch paths of {}", handlerMethod);
+            }
+        }
+    }
+
+    /** Returns the matcher of a handler method annotated with {@link JsonPatchUpdate}. */
+    public AllowedPathMatcher matcherFor(Method method) {
+        return matchers.computeIfAbsent(
+                method,
+                m ->
+                        AllowedPathMatcher.compile(
+                                AnnotatedElementUtils.findMergedAnnotation(m, JsonPatchUpdate.class)
+                                        .allowedPaths()));
+    }
+}
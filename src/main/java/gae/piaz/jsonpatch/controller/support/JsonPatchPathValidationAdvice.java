@@ -0,0 +1,104 @@
+package gae.piaz.jsonpatch.controller.support;
+
+import gae.piaz.jsonpatch.service.core.AllowedPathMatcher;
+import gae.piaz.jsonpatch.service.core.BulkPatchRequest;
+import gae.piaz.jsonpatch.service.core.JsonPatchClientError;
+import gae.piaz.jsonpatch.service.core.JsonPatchDocument;
+import gae.piaz.jsonpatch.service.core.JsonPatchUpdate;
+import gae.piaz.jsonpatch.service.core.MergePatchDocument;
+import gae.piaz.jsonpatch.service.core.PatchDocument;
+import gae.piaz.jsonpatch.service.core.PatchOperation;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.RequestBodyAdviceAdapter;
+
+/**
+ * Rejects the JSON Patch and JSON Merge Patch bodies of {@link JsonPatchUpdate} endpoints that
+ * touch a path which is not allowed. The check runs right after the body is read, before the
+ * endpoint is invoked, so a disallowed patch never reaches the database.
+ */
+@ControllerAdvice
+@RequiredArgsConstructor
+@Slf4j
+public class JsonPatchPathValidationAdvice extends RequestBodyAdviceAdapter {
+
+    private final JsonPatchPathRegistry jsonPatchPathRegistry;
+
+    @Override
+    public boolean supports(
+            MethodParameter methodParameter,
+            Type targetType,
+            Class<? extends HttpMessageConverter<?>> converterType) {
+        return methodParameter.hasMethodAnnotation(JsonPatchUpdate.class);
+    }
+
+    @Override
+    public Object afterBodyRead(
+            Object body,
+            HttpInputMessage inputMessage,
+            MethodParameter parameter,
+            Type targetType,
+            Class<? extends HttpMessageConverter<?>> converterType) {
+        AllowedPathMatcher matcher = jsonPatchPathRegistry.matcherFor(parameter.getMethod());
+        if (body instanceof PatchDocument patch) {
+            String errorMessage =
+                    switch (patch) {
+                        case JsonPatchDocument jsonPatch -> findDisallowedPath(matcher, jsonPatch);
+                        case MergePatchDocument mergePatch ->
+                                findDisallowedPath(matcher, mergePatch);
+                    };
+            if (errorMessage != null) {
+                log.error(errorMessage);
+                throw new JsonPatchClientError(errorMessage);
+            }
+        }
+        if (body instanceof BulkPatchRequest request) {
+            // a disallowed patch only fails its own item of the bulk request
+            Map<Integer, String> rejected = new HashMap<>();
+            request.patches()
+                    .forEach(
+                            (id, patch) -> {
+                                String errorMessage = findDisallowedPath(matcher, patch);
+                                if (errorMessage != null) {
+                                    rejected.put(id, errorMessage);
+                                }
+                            });
+            return request.withRejected(rejected);
+        }
+        return body;
+    }
+
+    /** Returns the error message for the first path of the patch that is not allowed, if any. */
+    private static String findDisallowedPath(AllowedPathMatcher matcher, JsonPatchDocument patch) {
+        for (PatchOperation operation : patch.operations()) {
+            if (!matcher.matches(operation.path())) {
+                return String.format("JSON Patch path %s is not allowed", operation.path());
+            }
+            if (operation.from() != null && !matcher.matches(operation.from())) {
+                return String.format("JSON Patch path %s is not allowed", operation.from());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Same as {@link #findDisallowedPath(AllowedPathMatcher, JsonPatchDocument)} for the paths that
+     * a merge patch writes. A merge patch replaces arrays as a whole, so it cannot write inside a
+     * collection.
+     */
+    private static String findDisallowedPath(AllowedPathMatcher matcher, MergePatchDocument patch) {
+        for (String path : patch.paths()) {
+            if (!matcher.matches(path)) {
+                return String.format("JSON Merge Patch path %s is not allowed", path);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,67 @@
+package gae.piaz.jsonpatch.controller.support;
+
+import static gae.piaz.jsonpatch.config.Constants.APPLICATION_MERGE_PATCH_VALUE;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gae.piaz.jsonpatch.service.core.JsonPatchClientError;
+import gae.piaz.jsonpatch.service.core.JsonPatchLimits;
+import gae.piaz.jsonpatch.service.core.JsonPatchReader;
+import gae.piaz.jsonpatch.service.core.MergePatchDocument;
+import gae.piaz.jsonpatch.service.core.PatchDocument;
+import java.io.IOException;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reads {@code application/merge-patch+json} request bodies into a {@link MergePatchDocument}, with
+ * the same {@link JsonPatchLimits} as the JSON Patch bodies, see {@link
+ * JsonPatchHttpMessageConverter}.
+ */
+@Component
+public class MergePatchHttpMessageConverter
+        extends AbstractHttpMessageConverter<MergePatchDocument> {
+
+    private final JsonFactory jsonFactory;
+
+    private final JsonPatchReader jsonPatchReader;
+
+    public MergePatchHttpMessageConverter(ObjectMapper objectMapper, JsonPatchLimits limits) {
+        super(MediaType.valueOf(APPLICATION_MERGE_PATCH_VALUE));
+        this.jsonFactory = objectMapper.getFactory();
+        this.jsonPatchReader = new JsonPatchReader(limits);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return MergePatchDocument.class == clazz || PatchDocument.class == clazz;
+    }
+
+    @Override
+    protected boolean canWrite(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected MergePatchDocument readInternal(
+            Class<? extends MergePatchDocument> clazz, HttpInputMessage inputMessage)
+            throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(inputMessage.getBody())) {
+            return jsonPatchReader.readMergePatch(parser);
+        } catch (JsonPatchClientError | IOException e) {
+            throw new HttpMessageNotReadableException(e.getMessage(), e, inputMessage);
+        }
+    }
+
+    @Override
+    protected void writeInternal(MergePatchDocument patch, HttpOutputMessage outputMessage) {
+        throw new HttpMessageNotWritableException(
+                "JSON Merge Patch documents are only read, never written");
+    }
+}
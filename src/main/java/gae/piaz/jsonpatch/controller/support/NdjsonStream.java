@@ -0,0 +1,44 @@
+package gae.piaz.jsonpatch.controller.support;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import gae.piaz.jsonpatch.service.PageConsumer;
+import java.io.IOException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * Writes an export as newline delimited JSON, one object per line. Values are serialized straight
+ * to the response stream, which is flushed after each page, so neither the export nor its JSON is
+ * held in memory.
+ */
+public final class NdjsonStream {
+
+    private NdjsonStream() {}
+
+    public static <T> StreamingResponseBody of(
+            ObjectMapper objectMapper, Class<T> type, Export<T> export) {
+        ObjectWriter writer = objectMapper.writerFor(type);
+        return out -> {
+            try (JsonGenerator generator = writer.createGenerator(out)) {
+                // lines are separated by hand, and the servlet closes its own stream
+                generator.setRootValueSeparator(null);
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                export.forEachPage(
+                        page -> {
+                            for (T value : page) {
+                                writer.writeValue(generator, value);
+                                generator.writeRaw('\n');
+                            }
+                            generator.flush();
+                        });
+            }
+        };
+    }
+
+    /** Hands all the values of an export to the consumer, page by page. */
+    @FunctionalInterface
+    public interface Export<T> {
+        void forEachPage(PageConsumer<T> consumer) throws IOException;
+    }
+}
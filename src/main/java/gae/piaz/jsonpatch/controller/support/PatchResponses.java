@@ -0,0 +1,58 @@
+package gae.piaz.jsonpatch.controller.support;
+
+import static gae.piaz.jsonpatch.config.Constants.APPLICATION_JSON_PATCH_VALUE;
+
+import gae.piaz.jsonpatch.service.PatchOutcome;
+import gae.piaz.jsonpatch.service.ReturnPreference;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Builds the response of a single entity PATCH. {@code Prefer: return=minimal} gets a 204 with only
+ * the ETag, an {@code Accept} that prefers {@code application/json-patch+json} gets the RFC 6902
+ * diff of what the patch changed, anything else gets the DTO.
+ */
+public final class PatchResponses {
+
+    private static final MediaType JSON_PATCH = MediaType.valueOf(APPLICATION_JSON_PATCH_VALUE);
+
+    private PatchResponses() {}
+
+    public static ReturnPreference preference(String prefer, String accept) {
+        if (PreferHeader.has(prefer, PreferHeader.RETURN_MINIMAL)) {
+            return ReturnPreference.MINIMAL;
+        }
+        return acceptsDiff(accept) ? ReturnPreference.DIFF : ReturnPreference.REPRESENTATION;
+    }
+
+    public static ResponseEntity<Object> of(PatchOutcome<?> outcome, ReturnPreference preference) {
+        String eTag = VersionETag.of(outcome.version());
+        return switch (preference) {
+            case MINIMAL ->
+                    ResponseEntity.noContent()
+                            .eTag(eTag)
+                            .header(PreferHeader.PREFERENCE_APPLIED, PreferHeader.RETURN_MINIMAL)
+                            .build();
+            case DIFF ->
+                    ResponseEntity.ok().eTag(eTag).contentType(JSON_PATCH).body(outcome.diff());
+            case REPRESENTATION -> ResponseEntity.ok().eTag(eTag).body(outcome.body());
+        };
+    }
+
+    /** Whether the diff is accepted with at least the quality of plain JSON. */
+    private static boolean acceptsDiff(String accept) {
+        if (accept == null) {
+            return false;
+        }
+        double diff = 0;
+        double json = 0;
+        for (MediaType mediaType : MediaType.parseMediaTypes(accept)) {
+            if (JSON_PATCH.equalsTypeAndSubtype(mediaType)) {
+                diff = Math.max(diff, mediaType.getQualityValue());
+            } else if (mediaType.includes(MediaType.APPLICATION_JSON)) {
+                json = Math.max(json, mediaType.getQualityValue());
+            }
+        }
+        return diff > 0 && diff >= json;
+    }
+}
@@ -0,0 +1,27 @@
+package gae.piaz.jsonpatch.controller.support;
+
+import java.util.Arrays;
+
+/** Reads the preferences of a {@code Prefer} request header, see RFC 7240. */
+public final class PreferHeader {
+
+    public static final String NAME = "Prefer";
+    public static final String PREFERENCE_APPLIED = "Preference-Applied";
+    public static final String RESPOND_ASYNC = "respond-async";
+    public static final String RETURN_MINIMAL = "return=minimal";
+
+    private PreferHeader() {}
+
+    /**
+     * Whether the header holds the preference, e.g. "respond-async" or "return=minimal". The
+     * preference names are case-insensitive, parameters after a ";" are ignored.
+     */
+    public static boolean has(String prefer, String preference) {
+        if (prefer == null) {
+            return false;
+        }
+        return Arrays.stream(prefer.split(","))
+                .map(token -> token.split(";", 2)[0].trim())
+                .anyMatch(token -> token.equalsIgnoreCase(preference));
+    }
+}
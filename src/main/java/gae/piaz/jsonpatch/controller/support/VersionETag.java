@@ -0,0 +1,34 @@
+package gae.piaz.jsonpatch.controller.support;
+
+import gae.piaz.jsonpatch.service.core.PreconditionFailedException;
+
+/** Maps entity versions to ETags and back. The ETag of a version is its quoted value, e.g. "3". */
+public final class VersionETag {
+
+    private VersionETag() {}
+
+    public static String of(Integer version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * Returns the version an If-Match header requires, or null if the header is absent or "*".
+     *
+     * @throws PreconditionFailedException if the header is not the ETag of a version, since it can
+     *     then never match
+     */
+    public static Integer parseIfMatch(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        if (tag.length() < 2 || tag.charAt(0) != '"' || tag.charAt(tag.length() - 1) != '"') {
+            throw new PreconditionFailedException();
+        }
+        try {
+            return Integer.valueOf(tag.substring(1, tag.length() - 1));
+        } catch (NumberFormatException e) {
+            throw new PreconditionFailedException();
+        }
+    }
+}
@@ -1,13 +1,22 @@
 package gae.piaz.jsonpatch.domain;
 
+import gae.piaz.jsonpatch.processor.PatchBean;
+import gae.piaz.jsonpatch.processor.PatchProperty;
 import jakarta.persistence.*;
 import java.util.HashSet;
 import java.util.Set;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@DynamicUpdate
 @Table(name = "authors")
+@PatchBean(packageName = "gae.piaz.jsonpatch.service.patch")
 @Getter
 @Setter
 public class AuthorEntity {
@@ -17,13 +26,17 @@ public class AuthorEntity {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Integer id;
 
-    private String name;
+    /** Incremented on every update, exposed as the ETag of the PATCH endpoints. */
+    @Version private Integer version;
+
+    @PatchProperty private String name;
 
     private String email;
 
+    @PatchProperty
     @OneToMany(
             mappedBy = "author",
-            fetch = FetchType.EAGER,
+            fetch = FetchType.LAZY,
             cascade = CascadeType.ALL,
             orphanRemoval = true)
     private Set<BookEntity> books = new HashSet<>();
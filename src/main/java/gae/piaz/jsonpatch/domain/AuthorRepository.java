@@ -1,7 +1,48 @@
 package gae.piaz.jsonpatch.domain;
 
+import static gae.piaz.jsonpatch.config.Constants.EXPORT_FETCH_SIZE;
+
+import gae.piaz.jsonpatch.controller.dto.AuthorDTO;
+import jakarta.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
-public interface AuthorRepository extends JpaRepository<AuthorEntity, Integer> {}
+public interface AuthorRepository extends JpaRepository<AuthorEntity, Integer> {
+
+    /** Loads the author together with its books, for patches that touch them. */
+    @EntityGraph(attributePaths = "books")
+    Optional<AuthorEntity> findWithBooksById(Integer id);
+
+    /** Loads the authors together with their books, for patches that touch them. */
+    @EntityGraph(attributePaths = "books")
+    List<AuthorEntity> findAllWithBooksByIdIn(Collection<Integer> ids);
+
+    /**
+     * Reads the author as a DTO, without loading the entity. Used after a patch updated the author
+     * in place, see {@code ScalarPatchPushdown}.
+     */
+    @Query(
+            "select new gae.piaz.jsonpatch.controller.dto.AuthorDTO(a.id, a.name, a.version)"
+                    + " from AuthorEntity a where a.id = :id")
+    Optional<AuthorDTO> findDTOById(@Param("id") Integer id);
+
+    /**
+     * Reads the authors that follow the given id, in id order, as DTOs. Keyset pagination for the
+     * export: no entity is loaded and no row is skipped with an offset.
+     */
+    @Query(
+            "select new gae.piaz.jsonpatch.controller.dto.AuthorDTO(a.id, a.name, a.version)"
+                    + " from AuthorEntity a where a.id > :afterId order by a.id")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = EXPORT_FETCH_SIZE))
+    List<AuthorDTO> findPageAfter(@Param("afterId") Integer afterId, Limit limit);
+}
@@ -1,11 +1,20 @@
 package gae.piaz.jsonpatch.domain;
 
+import gae.piaz.jsonpatch.processor.PatchBean;
+import gae.piaz.jsonpatch.processor.PatchProperty;
 import jakarta.persistence.*;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
+@DynamicUpdate
 @Table(name = "books")
+@PatchBean(packageName = "gae.piaz.jsonpatch.service.patch")
 @Getter
 @Setter
 public class BookEntity {
@@ -15,11 +24,15 @@ public class BookEntity {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Integer id;
 
-    private String isbn;
+    /** Incremented on every update, exposed as the ETag of the PATCH endpoints. */
+    @Version private Integer version;
 
-    private String title;
+    @PatchProperty private String isbn;
 
-    @ManyToOne(fetch = FetchType.EAGER)
+    @PatchProperty private String title;
+
+    @PatchProperty
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "author_id", referencedColumnName = "id", nullable = false)
     private AuthorEntity author;
 }
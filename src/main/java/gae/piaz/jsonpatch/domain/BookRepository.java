@@ -1,7 +1,48 @@
 package gae.piaz.jsonpatch.domain;
 
+import static gae.piaz.jsonpatch.config.Constants.EXPORT_FETCH_SIZE;
+
+import gae.piaz.jsonpatch.controller.dto.BookDTO;
+import jakarta.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
-public interface BookRepository extends JpaRepository<BookEntity, Integer> {}
+public interface BookRepository extends JpaRepository<BookEntity, Integer> {
+
+    /** Loads the book together with its author, whose name is part of the book DTO. */
+    @EntityGraph(attributePaths = "author")
+    Optional<BookEntity> findWithAuthorById(Integer id);
+
+    /** Loads the books together with their authors, whose names are part of the book DTO. */
+    @EntityGraph(attributePaths = "author")
+    List<BookEntity> findAllWithAuthorByIdIn(Collection<Integer> ids);
+
+    /**
+     * Reads the book as a DTO, with the name of its author, without loading the entities. Used
+     * after a patch updated the book in place, see {@code ScalarPatchPushdown}.
+     */
+    @Query(
+            "select new gae.piaz.jsonpatch.controller.dto.BookDTO(b.id, b.title, a.name, b.version)"
+                    + " from BookEntity b join b.author a where b.id = :id")
+    Optional<BookDTO> findDTOById(@Param("id") Integer id);
+
+    /**
+     * Reads the books that follow the given id, in id order, as DTOs with the name of their author.
+     * Keyset pagination for the export, see {@link AuthorRepository#findPageAfter}.
+     */
+    @Query(
+            "select new gae.piaz.jsonpatch.controller.dto.BookDTO(b.id, b.title, a.name, b.version)"
+                    + " from BookEntity b join b.author a where b.id > :afterId order by b.id")
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = EXPORT_FETCH_SIZE))
+    List<BookDTO> findPageAfter(@Param("afterId") Integer afterId, Limit limit);
+}
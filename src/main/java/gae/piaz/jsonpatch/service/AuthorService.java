@@ -1,34 +1,134 @@
 package gae.piaz.jsonpatch.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import gae.piaz.jsonpatch.controller.dto.AuthorDTO;
+import gae.piaz.jsonpatch.controller.dto.BulkPatchResultDTO;
 import gae.piaz.jsonpatch.domain.AuthorEntity;
 import gae.piaz.jsonpatch.domain.AuthorRepository;
-import gae.piaz.jsonpatch.service.core.EntityNotFoundException;
+import gae.piaz.jsonpatch.service.core.BulkPatchRequest;
+import gae.piaz.jsonpatch.service.core.ConcurrentUpdateException;
 import gae.piaz.jsonpatch.service.core.JsonPatchServerError;
+import gae.piaz.jsonpatch.service.core.PatchDocument;
+import gae.piaz.jsonpatch.service.core.PatchMetrics;
+import gae.piaz.jsonpatch.service.core.PreconditionFailedException;
+import gae.piaz.jsonpatch.service.core.ScalarPatchPushdown;
 import gae.piaz.jsonpatch.service.patch.AuthorPatchService;
-import lombok.RequiredArgsConstructor;
+import jakarta.persistence.EntityManager;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @Service
-@RequiredArgsConstructor
 public class AuthorService {
 
-    private final AuthorRepository authorRepository;
-    private final AuthorPatchService authorPatchService;
+    private final PatchCoalescer<AuthorEntity, AuthorDTO> patchCoalescer;
+    private final BulkPatcher<AuthorEntity, AuthorDTO> bulkPatcher;
+    private final KeysetScroller<AuthorDTO> exportScroller;
 
-    public AuthorDTO updateAuthor(Integer id, JsonNode patch) throws JsonPatchServerError {
-        AuthorEntity author =
-                authorRepository.findById(id).orElseThrow(EntityNotFoundException::new);
+    public AuthorService(
+            AuthorRepository authorRepository,
+            AuthorPatchService authorPatchService,
+            PatchMetrics patchMetrics,
+            TransactionTemplate transactionTemplate,
+            EntityManager entityManager,
+            @Value("${jsonpatch.export.page-size:500}") int exportPageSize,
+            @Value("${jsonpatch.pushdown.enabled:true}") boolean pushdownEnabled,
+            @Value("${jsonpatch.plan-cache-size:256}") int planCacheSize) {
+        // patches that only replace the name update the row without loading it; not while
+        // journaled, the journal records the patched update bean
+        ScalarPatchPushdown<AuthorEntity> pushdown =
+                new ScalarPatchPushdown<>(
+                        entityManager,
+                        AuthorEntity.class,
+                        Set.of("name"),
+                        planCacheSize,
+                        patchMetrics);
+        // the books are lazy, fetch them in the same query only when a patch touches them
+        this.patchCoalescer =
+                new PatchCoalescer<>(
+                        transactionTemplate,
+                        authorRepository,
+                        (id, patches) ->
+                                patches.stream().anyMatch(patch -> patch.touches("books"))
+                                        ? authorRepository.findWithBooksById(id)
+                                        : authorRepository.findById(id),
+                        authorPatchService,
+                        AuthorEntity::getVersion,
+                        this::mapEntityToDTO,
+                        patchMetrics,
+                        AuthorEntity.class,
+                        pushdownEnabled && !authorPatchService.isJournaled()
+                                ? PatchCoalescer.Pushdown.of(
+                                        pushdown, authorRepository::findDTOById, AuthorDTO::version)
+                                : PatchCoalescer.Pushdown.none());
+        this.bulkPatcher =
+                new BulkPatcher<>(
+                        authorRepository,
+                        (ids, patches) ->
+                                patches.stream().anyMatch(patch -> patch.touches("books"))
+                                        ? authorRepository.findAllWithBooksByIdIn(ids)
+                                        : authorRepository.findAllById(ids),
+                        authorPatchService,
+                        AuthorEntity::getId,
+                        this::mapEntityToDTO,
+                        AuthorEntity.class);
+        this.exportScroller =
+                new KeysetScroller<>(
+                        authorRepository::findPageAfter, AuthorDTO::id, exportPageSize);
+    }
 
-        author = authorPatchService.updateEntity(author, patch);
+    /**
+     * Applies the patch to the author with the given id. Concurrent patches of the same author are
+     * saved together, see {@link PatchCoalescer}.
+     *
+     * @param expectedVersion the version required by the If-Match header, null for none
+     * @throws PreconditionFailedException if the author does not have the expected version, or was
+     *     updated concurrently while an expected version was given
+     * @throws ConcurrentUpdateException if the author was updated concurrently and no version was
+     *     expected
+     */
+    public AuthorDTO updateAuthor(Integer id, PatchDocument patch, Integer expectedVersion)
+            throws JsonPatchServerError {
+        return updateAuthor(id, patch, expectedVersion, ReturnPreference.REPRESENTATION).body();
+    }
 
-        author = authorRepository.save(author);
+    /**
+     * Same as {@link #updateAuthor(Integer, PatchDocument, Integer)}, returning what the preference
+     * asks for: the DTO is only mapped for {@link ReturnPreference#REPRESENTATION}.
+     */
+    public PatchOutcome<AuthorDTO> updateAuthor(
+            Integer id, PatchDocument patch, Integer expectedVersion, ReturnPreference preference)
+            throws JsonPatchServerError {
+        return patchCoalescer.patch(id, patch, expectedVersion, preference);
+    }
+
+    /**
+     * Patches many authors in one transaction, see {@link BulkPatcher}.
+     *
+     * @param atomic whether a single failed patch rolls back all the others
+     */
+    @Transactional
+    public List<BulkPatchResultDTO<AuthorDTO>> updateAuthors(
+            BulkPatchRequest patches, boolean atomic) {
+        return bulkPatcher.patch(patches, atomic);
+    }
 
-        return mapEntityToDTO(author);
+    /**
+     * Reads all the authors in id order and hands them to the consumer one page at a time, see
+     * {@link KeysetScroller}.
+     */
+    public void exportAuthors(PageConsumer<AuthorDTO> consumer) throws IOException {
+        exportScroller.forEachPage(consumer);
     }
 
     private AuthorDTO mapEntityToDTO(AuthorEntity entity) {
-        return AuthorDTO.builder().name(entity.getName()).id(entity.getId()).build();
+        return AuthorDTO.builder()
+                .name(entity.getName())
+                .id(entity.getId())
+                .version(entity.getVersion())
+                .build();
     }
 }
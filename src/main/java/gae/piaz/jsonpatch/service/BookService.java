@@ -1,30 +1,122 @@
 package gae.piaz.jsonpatch.service;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import gae.piaz.jsonpatch.controller.dto.BookDTO;
+import gae.piaz.jsonpatch.controller.dto.BulkPatchResultDTO;
 import gae.piaz.jsonpatch.domain.BookEntity;
 import gae.piaz.jsonpatch.domain.BookRepository;
-import gae.piaz.jsonpatch.service.core.EntityNotFoundException;
+import gae.piaz.jsonpatch.service.core.BulkPatchRequest;
+import gae.piaz.jsonpatch.service.core.ConcurrentUpdateException;
 import gae.piaz.jsonpatch.service.core.JsonPatchServerError;
+import gae.piaz.jsonpatch.service.core.PatchDocument;
+import gae.piaz.jsonpatch.service.core.PatchMetrics;
+import gae.piaz.jsonpatch.service.core.PreconditionFailedException;
+import gae.piaz.jsonpatch.service.core.ScalarPatchPushdown;
 import gae.piaz.jsonpatch.service.patch.BookPatchService;
-import lombok.AllArgsConstructor;
+import jakarta.persistence.EntityManager;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @Service
-@AllArgsConstructor
 public class BookService {
 
-    private final BookRepository bookRepository;
-    private final BookPatchService bookPatchService;
+    private final PatchCoalescer<BookEntity, BookDTO> patchCoalescer;
+    private final BulkPatcher<BookEntity, BookDTO> bulkPatcher;
+    private final KeysetScroller<BookDTO> exportScroller;
 
-    public BookDTO updateBook(Integer id, JsonNode patch) throws JsonPatchServerError {
-        BookEntity book = bookRepository.findById(id).orElseThrow(EntityNotFoundException::new);
+    public BookService(
+            BookRepository bookRepository,
+            BookPatchService bookPatchService,
+            PatchMetrics patchMetrics,
+            TransactionTemplate transactionTemplate,
+            EntityManager entityManager,
+            @Value("${jsonpatch.export.page-size:500}") int exportPageSize,
+            @Value("${jsonpatch.pushdown.enabled:true}") boolean pushdownEnabled,
+            @Value("${jsonpatch.plan-cache-size:256}") int planCacheSize) {
+        // patches that only replace the title or the isbn update the row without loading it; not
+        // while journaled, the journal records the patched update bean
+        ScalarPatchPushdown<BookEntity> pushdown =
+                new ScalarPatchPushdown<>(
+                        entityManager,
+                        BookEntity.class,
+                        Set.of("title", "isbn"),
+                        planCacheSize,
+                        patchMetrics);
+        // the book and then its author, for the DTO, are both read through the entity cache
+        this.patchCoalescer =
+                new PatchCoalescer<>(
+                        transactionTemplate,
+                        bookRepository,
+                        (id, patches) -> bookRepository.findById(id),
+                        bookPatchService,
+                        BookEntity::getVersion,
+                        this::mapEntityToDTO,
+                        patchMetrics,
+                        BookEntity.class,
+                        pushdownEnabled && !bookPatchService.isJournaled()
+                                ? PatchCoalescer.Pushdown.of(
+                                        pushdown, bookRepository::findDTOById, BookDTO::version)
+                                : PatchCoalescer.Pushdown.none());
+        this.bulkPatcher =
+                new BulkPatcher<>(
+                        bookRepository,
+                        (ids, patches) -> {
+                            bookPatchService.prefetchAuthors(patches);
+                            return bookRepository.findAllWithAuthorByIdIn(ids);
+                        },
+                        bookPatchService,
+                        BookEntity::getId,
+                        this::mapEntityToDTO,
+                        BookEntity.class);
+        this.exportScroller =
+                new KeysetScroller<>(bookRepository::findPageAfter, BookDTO::id, exportPageSize);
+    }
 
-        book = bookPatchService.updateEntity(book, patch);
+    /**
+     * Applies the patch to the book with the given id. Concurrent patches of the same book are
+     * saved together, see {@link PatchCoalescer}.
+     *
+     * @param expectedVersion the version required by the If-Match header, null for none
+     * @throws PreconditionFailedException if the book does not have the expected version, or was
+     *     updated concurrently while an expected version was given
+     * @throws ConcurrentUpdateException if the book was updated concurrently and no version was
+     *     expected
+     */
+    public BookDTO updateBook(Integer id, PatchDocument patch, Integer expectedVersion)
+            throws JsonPatchServerError {
+        return updateBook(id, patch, expectedVersion, ReturnPreference.REPRESENTATION).body();
+    }
 
-        book = bookRepository.save(book);
+    /**
+     * Same as {@link #updateBook(Integer, PatchDocument, Integer)}, returning what the preference
+     * asks for: the DTO is only mapped for {@link ReturnPreference#REPRESENTATION}.
+     */
+    public PatchOutcome<BookDTO> updateBook(
+            Integer id, PatchDocument patch, Integer expectedVersion, ReturnPreference preference)
+            throws JsonPatchServerError {
+        return patchCoalescer.patch(id, patch, expectedVersion, preference);
+    }
+
+    /**
+     * Patches many books in one transaction, see {@link BulkPatcher}.
+     *
+     * @param atomic whether a single failed patch rolls back all the others
+     */
+    @Transactional
+    public List<BulkPatchResultDTO<BookDTO>> updateBooks(BulkPatchRequest patches, boolean atomic) {
+        return bulkPatcher.patch(patches, atomic);
+    }
 
-        return mapEntityToDTO(book);
+    /**
+     * Reads all the books in id order and hands them to the consumer one page at a time, see {@link
+     * KeysetScroller}.
+     */
+    public void exportBooks(PageConsumer<BookDTO> consumer) throws IOException {
+        exportScroller.forEachPage(consumer);
     }
 
     private BookDTO mapEntityToDTO(BookEntity entity) {
@@ -32,6 +124,7 @@ public class BookService {
                 .id(entity.getId())
                 .title(entity.getTitle())
                 .authorName(entity.getAuthor().getName())
+                .version(entity.getVersion())
                 .build();
     }
 }
@@ -0,0 +1,184 @@
+package gae.piaz.jsonpatch.service;
+
+import gae.piaz.jsonpatch.controller.dto.BulkPatchResultDTO;
+import gae.piaz.jsonpatch.service.core.AbstractPatchService;
+import gae.piaz.jsonpatch.service.core.BulkPatchRequest;
+import gae.piaz.jsonpatch.service.core.ConcurrentUpdateException;
+import gae.piaz.jsonpatch.service.core.EntityNotFoundException;
+import gae.piaz.jsonpatch.service.core.JsonPatchDocument;
+import gae.piaz.jsonpatch.service.core.JsonPatchServerError;
+import gae.piaz.jsonpatch.service.core.PatchResult;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.http.HttpStatus;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+/**
+ * Applies the patches of a {@link BulkPatchRequest}. The targets are loaded with a single IN query,
+ * see {@link Loader}, and saved together, so with {@code hibernate.jdbc.batch_size} set the updates
+ * are flushed in JDBC batches.
+ *
+ * <p>Each item gets the status it would have had as a single PATCH request. In atomic mode, any
+ * failed item rolls back the whole transaction and the items that succeeded are reported as {@code
+ * 424 Failed Dependency}. The patched entities are flushed before their DTOs are mapped, so that
+ * these hold the new versions. A flush that fails cannot be undone for a single item, so it rolls
+ * back the whole transaction even when not atomic: the item updated concurrently gets a {@code 409
+ * Conflict} and the other patched items a {@code 424}, while a failure that no item can be blamed
+ * for, e.g. a constraint violation, fails all the patched items with a {@code 409}.
+ *
+ * @param <EN> Entity type
+ * @param <D> DTO type returned for the patched entities
+ */
+@RequiredArgsConstructor
+@Slf4j
+class BulkPatcher<EN, D> {
+
+    private final JpaRepository<EN, Integer> repository;
+    private final Loader<EN> loader;
+    private final AbstractPatchService<EN, ?> patchService;
+    private final Function<EN, Integer> idMapper;
+    private final Function<EN, D> dtoMapper;
+    private final Class<EN> entityClass;
+
+    /** Must be called within a transaction. */
+    List<BulkPatchResultDTO<D>> patch(BulkPatchRequest request, boolean atomic) {
+        Set<Integer> ids = new HashSet<>(request.patches().keySet());
+        ids.removeAll(request.rejected().keySet());
+        Map<Integer, EN> entities = new HashMap<>();
+        for (EN entity : loader.load(ids, request.patches().values())) {
+            entities.put(idMapper.apply(entity), entity);
+        }
+
+        // the failures, and null for the items that succeeded, in the order of the request
+        Map<Integer, BulkPatchResultDTO<D>> failures = new LinkedHashMap<>();
+        List<EN> patched = new ArrayList<>(entities.size());
+        for (Map.Entry<Integer, JsonPatchDocument> entry : request.patches().entrySet()) {
+            Integer id = entry.getKey();
+            BulkPatchResultDTO<D> failure = null;
+            if (request.rejected().containsKey(id)) {
+                failure = failure(id, HttpStatus.BAD_REQUEST, request.rejected().get(id));
+            } else if (!entities.containsKey(id)) {
+                failure = failure(id, new EntityNotFoundException());
+            } else {
+                try {
+                    PatchResult<EN> patchResult =
+                            patchService.updateEntity(entities.get(id), entry.getValue());
+                    if (patchResult.updated()) {
+                        patched.add(patchResult.entity());
+                    }
+                } catch (RuntimeException | JsonPatchServerError e) {
+                    log.debug("Bulk patch of entity {} failed", id, e);
+                    failure = failure(id, e);
+                }
+            }
+            failures.put(id, failure);
+        }
+
+        if (atomic && failures.values().stream().anyMatch(Objects::nonNull)) {
+            return rollback(failures, "another item of the atomic request failed");
+        }
+
+        try {
+            repository.saveAllAndFlush(patched);
+        } catch (ObjectOptimisticLockingFailureException e) {
+            Integer staleId = staleId(e);
+            if (staleId == null || !failures.containsKey(staleId)) {
+                log.debug("Bulk patch lost a concurrent update", e);
+                return conflict(failures, "an entity they change was updated concurrently");
+            }
+            log.debug("Bulk patch of entity {} lost a concurrent update", staleId, e);
+            failures.put(staleId, failure(staleId, new ConcurrentUpdateException()));
+            return rollback(failures, "item " + staleId + " was updated concurrently");
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Bulk patch violates a constraint", e);
+            return conflict(failures, "they violate a constraint");
+        }
+
+        // mapped after the flush, which incremented the versions
+        List<BulkPatchResultDTO<D>> results = new ArrayList<>(failures.size());
+        failures.forEach(
+                (id, failure) ->
+                        results.add(
+                                failure != null
+                                        ? failure
+                                        : BulkPatchResultDTO.<D>builder()
+                                                .id(id)
+                                                .status(HttpStatus.OK.value())
+                                                .result(dtoMapper.apply(entities.get(id)))
+                                                .build()));
+        return results;
+    }
+
+    /**
+     * Rolls the transaction back, reporting the items that succeeded as {@code 424 Failed
+     * Dependency}.
+     */
+    private List<BulkPatchResultDTO<D>> rollback(
+            Map<Integer, BulkPatchResultDTO<D>> failures, String reason) {
+        TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+        return failures.entrySet().stream()
+                .map(
+                        entry ->
+                                entry.getValue() != null
+                                        ? entry.getValue()
+                                        : failure(
+                                                entry.getKey(),
+                                                HttpStatus.FAILED_DEPENDENCY,
+                                                "Rolled back, " + reason))
+                .toList();
+    }
+
+    /**
+     * Rolls the transaction back after a flush failure that no item can be blamed for, reporting
+     * the items that succeeded as {@code 409 Conflict}.
+     */
+    private List<BulkPatchResultDTO<D>> conflict(
+            Map<Integer, BulkPatchResultDTO<D>> failures, String reason) {
+        failures.replaceAll(
+                (id, failure) ->
+                        failure != null
+                                ? failure
+                                : failure(
+                                        id,
+                                        HttpStatus.CONFLICT,
+                                        "Rolled back, the patched items could not be saved: "
+                                                + reason));
+        TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+        return List.copyOf(failures.values());
+    }
+
+    /** Returns the id of the patched entity that was updated concurrently, null if another was. */
+    private Integer staleId(ObjectOptimisticLockingFailureException e) {
+        return entityClass.getName().equals(e.getPersistentClassName())
+                        && e.getIdentifier() instanceof Integer id
+                ? id
+                : null;
+    }
+
+    /** Loads the entities to patch in one query, fetching the associations the patches touch. */
+    @FunctionalInterface
+    interface Loader<EN> {
+        List<EN> load(Collection<Integer> ids, Collection<JsonPatchDocument> patches);
+    }
+
+    private BulkPatchResultDTO<D> failure(Integer id, Throwable error) {
+        return failure(id, FailureStatus.of(error), FailureStatus.message(error));
+    }
+
+    private BulkPatchResultDTO<D> failure(Integer id, HttpStatus status, String error) {
+        return BulkPatchResultDTO.<D>builder().id(id).status(status.value()).error(error).build();
+    }
+}
@@ -0,0 +1,33 @@
+package gae.piaz.jsonpatch.service;
+
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * The HTTP status and message of a failed patch, taken from the {@link ResponseStatus} of its
+ * error, as the error would have been reported by a single PATCH request.
+ */
+final class FailureStatus {
+
+    private FailureStatus() {}
+
+    /** Returns the status of the error, 500 if it has none. */
+    static HttpStatus of(Throwable error) {
+        ResponseStatus responseStatus = responseStatus(error);
+        return responseStatus != null ? responseStatus.code() : HttpStatus.INTERNAL_SERVER_ERROR;
+    }
+
+    /** Returns the message of the error, or the reason of its status if it has no message. */
+    static String message(Throwable error) {
+        ResponseStatus responseStatus = responseStatus(error);
+        if (error.getMessage() != null || responseStatus == null) {
+            return error.getMessage();
+        }
+        return responseStatus.reason();
+    }
+
+    private static ResponseStatus responseStatus(Throwable error) {
+        return AnnotatedElementUtils.findMergedAnnotation(error.getClass(), ResponseStatus.class);
+    }
+}
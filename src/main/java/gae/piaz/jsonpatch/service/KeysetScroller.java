@@ -0,0 +1,44 @@
+package gae.piaz.jsonpatch.service;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Function;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Limit;
+
+/**
+ * Reads a whole table in id order, one keyset page at a time. Each page is read by its own query
+ * and handed to the consumer before the next one is read, so memory is bounded by the page size
+ * whatever the size of the table, and no connection is held while the consumer writes to a slow
+ * client.
+ *
+ * @param <T> type of the rows, which carry their id
+ */
+@RequiredArgsConstructor
+class KeysetScroller<T> {
+
+    private final PageReader<T> reader;
+    private final Function<T, Integer> idMapper;
+    private final int pageSize;
+
+    void forEachPage(PageConsumer<T> consumer) throws IOException {
+        Integer afterId = Integer.MIN_VALUE;
+        while (true) {
+            List<T> page = reader.read(afterId, Limit.of(pageSize));
+            if (page.isEmpty()) {
+                return;
+            }
+            consumer.accept(page);
+            if (page.size() < pageSize) {
+                return;
+            }
+            afterId = idMapper.apply(page.get(page.size() - 1));
+        }
+    }
+
+    /** Reads the rows that follow the given id, in id order. */
+    @FunctionalInterface
+    interface PageReader<T> {
+        List<T> read(Integer afterId, Limit limit);
+    }
+}
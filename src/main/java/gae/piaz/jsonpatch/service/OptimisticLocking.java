@@ -0,0 +1,54 @@
+package gae.piaz.jsonpatch.service;
+
+import gae.piaz.jsonpatch.service.core.ConcurrentUpdateException;
+import gae.piaz.jsonpatch.service.core.PreconditionFailedException;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+/**
+ * Version checks of the PATCH endpoints. The If-Match version is compared with the loaded one
+ * before the patch is applied, then the {@code @Version} column turns the write into a single
+ * {@code UPDATE ... WHERE id = ? AND version = ?}, which fails if another request updated the
+ * entity in the meantime. Both cases end up in a {@link PreconditionFailedException} when the
+ * client sent If-Match; a patch sent without it that loses the race gets a {@link
+ * ConcurrentUpdateException}.
+ */
+final class OptimisticLocking {
+
+    private OptimisticLocking() {}
+
+    /**
+     * @param expectedVersion the version sent by the client, null if it sent no If-Match
+     * @throws PreconditionFailedException if the versions differ
+     */
+    static void checkVersion(Integer expectedVersion, Integer currentVersion) {
+        if (expectedVersion != null && !expectedVersion.equals(currentVersion)) {
+            throw new PreconditionFailedException();
+        }
+    }
+
+    /**
+     * Saves and flushes the entity right away, so a concurrent update is reported as a {@link
+     * ConcurrentUpdateException} rather than as a failure of the commit.
+     */
+    static <EN> EN saveAndFlush(JpaRepository<EN, Integer> repository, EN entity) {
+        try {
+            return repository.saveAndFlush(entity);
+        } catch (ObjectOptimisticLockingFailureException e) {
+            throw new ConcurrentUpdateException();
+        }
+    }
+
+    /**
+     * Returns the error of a patch whose save failed, as reported to its client: a concurrent
+     * update fails the If-Match precondition if the client sent one.
+     *
+     * @param expectedVersion the version sent by the client, null if it sent no If-Match
+     */
+    static Throwable failure(Throwable error, Integer expectedVersion) {
+        if (error instanceof ConcurrentUpdateException && expectedVersion != null) {
+            return new PreconditionFailedException();
+        }
+        return error;
+    }
+}
@@ -0,0 +1,10 @@
+package gae.piaz.jsonpatch.service;
+
+import java.io.IOException;
+import java.util.List;
+
+/** Receives the pages of an export, e.g. to write them to the response. */
+@FunctionalInterface
+public interface PageConsumer<T> {
+    void accept(List<T> page) throws IOException;
+}
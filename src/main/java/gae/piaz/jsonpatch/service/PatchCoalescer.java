@@ -0,0 +1,347 @@
+package gae.piaz.jsonpatch.service;
+
+import gae.piaz.jsonpatch.service.core.AbstractPatchService;
+import gae.piaz.jsonpatch.service.core.ConcurrentUpdateException;
+import gae.piaz.jsonpatch.service.core.EntityNotFoundException;
+import gae.piaz.jsonpatch.service.core.JsonPatchDocument;
+import gae.piaz.jsonpatch.service.core.JsonPatchServerError;
+import gae.piaz.jsonpatch.service.core.PatchDocument;
+import gae.piaz.jsonpatch.service.core.PatchMetrics;
+import gae.piaz.jsonpatch.service.core.PatchResult;
+import gae.piaz.jsonpatch.service.core.PreconditionFailedException;
+import gae.piaz.jsonpatch.service.core.ScalarPatchPushdown;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Coalesces the concurrent patches of the same entity into a single write. Patches are queued per
+ * entity id; the first caller that finds the queue idle drains it, loading the entity once,
+ * applying the queued patches in arrival order and saving once per drain, while the other callers
+ * wait for their own result. A caller drains a single batch, the one holding its own patch: the
+ * patches queued in the meantime are drained by the first of their callers, so that a steady stream
+ * of patches of the same entity does not keep a caller draining.
+ *
+ * <p>A patch that fails does not affect the others of the drain: its caller gets the error and the
+ * entity is left as the previous patches made it. A patch with an If-Match version succeeds only if
+ * no earlier patch of the same drain changed the entity, as if each patch had been saved on its
+ * own. The callers whose patch succeeded and who want the representation all get the DTO of the
+ * saved entity, which also reflects the later patches of the drain; the diff of a caller only holds
+ * the changes of its own patch.
+ *
+ * <p>A drain of a single JSON Patch first tries the {@link Pushdown}, which updates the entity
+ * without loading it; the patches it does not apply are applied to the loaded entity.
+ *
+ * @param <EN> Entity type
+ * @param <D> DTO type returned for the patched entity
+ */
+@RequiredArgsConstructor
+@Slf4j
+class PatchCoalescer<EN, D> {
+
+    private final TransactionTemplate transactionTemplate;
+    private final JpaRepository<EN, Integer> repository;
+    private final Loader<EN> loader;
+    private final AbstractPatchService<EN, ?> patchService;
+    private final Function<EN, Integer> versionMapper;
+    private final Function<EN, D> dtoMapper;
+    private final PatchMetrics patchMetrics;
+    private final Class<EN> entityClass;
+    private final Pushdown<D> pushdown;
+
+    private final ConcurrentMap<Integer, Queue<Pending<D>>> queues = new ConcurrentHashMap<>();
+
+    /**
+     * Applies the patch to the entity with the given id, together with the patches queued for the
+     * same id by concurrent callers. Must not be called within a transaction, each drain runs in
+     * its own.
+     *
+     * @param expectedVersion the version required by the If-Match header, null for none
+     * @param preference what the outcome holds besides the version of the saved entity
+     * @throws PreconditionFailedException if the entity does not have the expected version, or was
+     *     updated concurrently while an expected version was given
+     * @throws ConcurrentUpdateException if the entity was updated concurrently and no version was
+     *     expected
+     */
+    PatchOutcome<D> patch(
+            Integer id, PatchDocument patch, Integer expectedVersion, ReturnPreference preference)
+            throws JsonPatchServerError {
+        Pending<D> pending =
+                new Pending<>(
+                        patch,
+                        expectedVersion,
+                        preference,
+                        new CompletableFuture<>(),
+                        new CompletableFuture<>());
+        boolean[] drainer = {false};
+        queues.compute(
+                id,
+                (key, queue) -> {
+                    // a missing queue means that no one is draining this id
+                    if (queue == null) {
+                        queue = new ArrayDeque<>();
+                        drainer[0] = true;
+                    }
+                    queue.add(pending);
+                    return queue;
+                });
+
+        if (drainer[0] || awaitTurn(id, pending)) {
+            drain(id);
+        }
+        return await(pending.result());
+    }
+
+    /**
+     * Waits until the patch is applied by another caller's drain, or the draining is handed over to
+     * this caller.
+     *
+     * @return true if this caller has to drain the queue
+     */
+    private boolean awaitTurn(Integer id, Pending<D> pending) {
+        try {
+            CompletableFuture.anyOf(pending.result(), pending.turn()).get();
+        } catch (InterruptedException e) {
+            // the turn is not lost: the caller that hands it over drains once more
+            pending.turn().thenRun(() -> drain(id));
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            // the patch failed, await reports it
+        }
+        return !pending.result().isDone();
+    }
+
+    /** Loads the entity to patch, fetching the associations that the patches touch. */
+    @FunctionalInterface
+    interface Loader<EN> {
+        Optional<EN> load(Integer id, List<PatchDocument> patches);
+    }
+
+    /** Applies a lone JSON Patch with a single statement, e.g. a {@link ScalarPatchPushdown}. */
+    @FunctionalInterface
+    interface Pushdown<D> {
+
+        /** Pushes nothing down, every patch is applied to the loaded entity. */
+        static <D> Pushdown<D> none() {
+            return (id, patch, expectedVersion) -> null;
+        }
+
+        /**
+         * Pushes the patches down with the {@link ScalarPatchPushdown}, then reads the DTO of the
+         * updated entity, e.g. with a projection query that loads no entity.
+         */
+        static <D> Pushdown<D> of(
+                ScalarPatchPushdown<?> pushdown,
+                Function<Integer, Optional<D>> reader,
+                Function<D, Integer> versionMapper) {
+            return (id, patch, expectedVersion) -> {
+                if (!pushdown.update(id, patch, expectedVersion)) {
+                    return null;
+                }
+                D dto = reader.apply(id).orElseThrow(EntityNotFoundException::new);
+                return new PatchOutcome<>(versionMapper.apply(dto), dto, null);
+            };
+        }
+
+        /**
+         * Updates the entity, within the transaction of the drain, and reads back its version and
+         * DTO.
+         *
+         * @param expectedVersion the version required by the If-Match header, null for none
+         * @return null if the patch was not applied and the entity has to be loaded instead
+         */
+        PatchOutcome<D> patch(Integer id, JsonPatchDocument patch, Integer expectedVersion);
+    }
+
+    /**
+     * @param turn completed when the draining is handed over to the caller of this patch
+     */
+    private record Pending<D>(
+            PatchDocument patch,
+            Integer expectedVersion,
+            ReturnPreference preference,
+            CompletableFuture<PatchOutcome<D>> result,
+            CompletableFuture<Void> turn) {}
+
+    private record Applied<EN, D>(Pending<D> pending, PatchResult<EN> result) {}
+
+    /** The saved entity, as read within the transaction of the drain. */
+    private record Saved<D>(Integer version, D body) {}
+
+    /**
+     * Applies the patches queued for the id, among which the caller's own, then hands the draining
+     * over to the first of the patches queued in the meantime, if any.
+     */
+    private void drain(Integer id) {
+        List<Pending<D>> batch = new ArrayList<>();
+        queues.compute(
+                id,
+                (key, queue) -> {
+                    batch.addAll(queue);
+                    return new ArrayDeque<>();
+                });
+        try {
+            apply(id, batch);
+        } catch (RuntimeException | Error e) {
+            batch.forEach(
+                    pending ->
+                            pending.result()
+                                    .completeExceptionally(
+                                            OptimisticLocking.failure(
+                                                    e, pending.expectedVersion())));
+        } finally {
+            List<Pending<D>> next = new ArrayList<>(1);
+            queues.compute(
+                    id,
+                    (key, queue) -> {
+                        if (queue.isEmpty()) {
+                            // removing the empty queue leaves the draining to the next caller
+                            return null;
+                        }
+                        next.add(queue.peek());
+                        return queue;
+                    });
+            // outside of compute, the turn may run a drain of the same id
+            next.forEach(pending -> pending.turn().complete(null));
+        }
+    }
+
+    private void apply(Integer id, List<Pending<D>> batch) {
+        List<Applied<EN, D>> applied = new ArrayList<>(batch.size());
+        // the DTO is mapped once per drain, and only if a caller wants it
+        boolean representation =
+                batch.stream()
+                        .map(Pending::preference)
+                        .anyMatch(ReturnPreference.REPRESENTATION::equals);
+        Saved<D> saved =
+                transactionTemplate.execute(
+                        status -> {
+                            Saved<D> pushed = pushDown(id, batch);
+                            if (pushed != null) {
+                                applied.add(new Applied<>(batch.get(0), null));
+                                return pushed;
+                            }
+
+                            EN entity =
+                                    patchMetrics.time(
+                                            "load",
+                                            entityClass,
+                                            () ->
+                                                    loader.load(
+                                                                    id,
+                                                                    batch.stream()
+                                                                            .map(Pending::patch)
+                                                                            .toList())
+                                                            .orElseThrow(
+                                                                    EntityNotFoundException::new));
+
+                            Integer version = versionMapper.apply(entity);
+                            boolean updated = false;
+                            for (Pending<D> pending : batch) {
+                                try {
+                                    // once the entity changed, no If-Match version can match
+                                    OptimisticLocking.checkVersion(
+                                            pending.expectedVersion(), updated ? null : version);
+                                    PatchResult<EN> result =
+                                            patchService.updateEntity(entity, pending.patch());
+                                    updated |= result.updated();
+                                    applied.add(new Applied<>(pending, result));
+                                } catch (RuntimeException | JsonPatchServerError e) {
+                                    log.debug("Coalesced patch of entity {} failed", id, e);
+                                    pending.result().completeExceptionally(e);
+                                }
+                            }
+                            if (applied.isEmpty()) {
+                                return null;
+                            }
+
+                            // a drain whose patches change nothing does not need to be saved
+                            EN savedEntity =
+                                    updated
+                                            ? patchMetrics.time(
+                                                    "save",
+                                                    entityClass,
+                                                    () ->
+                                                            OptimisticLocking.saveAndFlush(
+                                                                    repository, entity))
+                                            : entity;
+                            return new Saved<>(
+                                    versionMapper.apply(savedEntity),
+                                    representation
+                                            ? patchMetrics.time(
+                                                    "map_to_dto",
+                                                    entityClass,
+                                                    () -> dtoMapper.apply(savedEntity))
+                                            : null);
+                        });
+
+        // completed after the commit, so that no caller sees a result that could still roll back
+        for (Applied<EN, D> patched : applied) {
+            try {
+                patched.pending().result().complete(outcome(patched, saved));
+            } catch (JsonPatchServerError e) {
+                patched.pending().result().completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Applies a drain of a single JSON Patch with the {@link Pushdown}, unless its caller wants the
+     * diff, which needs the entity before the patch.
+     *
+     * @return null if the patch was not pushed down
+     */
+    private Saved<D> pushDown(Integer id, List<Pending<D>> batch) {
+        if (batch.size() != 1
+                || !(batch.get(0).patch() instanceof JsonPatchDocument patch)
+                || batch.get(0).preference() == ReturnPreference.DIFF) {
+            return null;
+        }
+        Pending<D> pending = batch.get(0);
+        PatchOutcome<D> pushed = pushdown.patch(id, patch, pending.expectedVersion());
+        if (pushed == null) {
+            return null;
+        }
+        return new Saved<>(
+                pushed.version(),
+                pending.preference() == ReturnPreference.REPRESENTATION ? pushed.body() : null);
+    }
+
+    private PatchOutcome<D> outcome(Applied<EN, D> applied, Saved<D> saved)
+            throws JsonPatchServerError {
+        return switch (applied.pending().preference()) {
+            case REPRESENTATION -> new PatchOutcome<>(saved.version(), saved.body(), null);
+            case MINIMAL -> new PatchOutcome<>(saved.version(), null, null);
+            case DIFF ->
+                    new PatchOutcome<>(saved.version(), null, patchService.diff(applied.result()));
+        };
+    }
+
+    private static <D> D await(CompletableFuture<D> result) throws JsonPatchServerError {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the patch", e);
+        } catch (ExecutionException e) {
+            switch (e.getCause()) {
+                case JsonPatchServerError error -> throw error;
+                case RuntimeException error -> throw error;
+                case Error error -> throw error;
+                default -> throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+}
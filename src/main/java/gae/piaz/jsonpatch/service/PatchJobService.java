@@ -0,0 +1,112 @@
+package gae.piaz.jsonpatch.service;
+
+import gae.piaz.jsonpatch.controller.dto.PatchJobDTO;
+import gae.piaz.jsonpatch.controller.dto.PatchJobDTO.State;
+import gae.piaz.jsonpatch.service.core.JsonPatchServerError;
+import gae.piaz.jsonpatch.service.core.LruCache;
+import gae.piaz.jsonpatch.service.core.PatchJobRejectedException;
+import jakarta.annotation.PreDestroy;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+/**
+ * Runs the patches requested with {@code Prefer: respond-async} on a bounded pool of workers. The
+ * task of a job is the same service call as the synchronous request, so both behave the same. The
+ * states of the jobs are kept for polling in a store that evicts the least recently used ones.
+ */
+@Service
+@Slf4j
+public class PatchJobService {
+
+    private final ThreadPoolExecutor executor;
+    private final LruCache<UUID, PatchJobDTO> jobs;
+
+    public PatchJobService(
+            @Value("${jsonpatch.async.workers:4}") int workers,
+            @Value("${jsonpatch.async.queue-capacity:100}") int queueCapacity,
+            @Value("${jsonpatch.async.max-jobs:1000}") int maxJobs) {
+        this.executor =
+                new ThreadPoolExecutor(
+                        workers,
+                        workers,
+                        0,
+                        TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(queueCapacity),
+                        Thread.ofVirtual().name("patch-job-", 0).factory());
+        this.jobs = new LruCache<>(maxJobs);
+    }
+
+    /**
+     * Queues the task and returns the id of its job.
+     *
+     * @throws PatchJobRejectedException if the queue is full
+     */
+    public UUID submit(Task<?> task) {
+        UUID id = UUID.randomUUID();
+        PatchJobDTO pending = PatchJobDTO.builder().id(id).state(State.PENDING).build();
+        jobs.put(id, pending);
+        try {
+            executor.execute(() -> run(pending, task));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(id);
+            throw new PatchJobRejectedException();
+        }
+        return id;
+    }
+
+    /** Returns the state of the job, empty if it is unknown or was evicted. */
+    public Optional<PatchJobDTO> find(UUID id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /** A patch to run asynchronously, returning the DTO of the updated entity. */
+    @FunctionalInterface
+    public interface Task<T> {
+        T run() throws JsonPatchServerError;
+    }
+
+    /**
+     * Runs the task and records its outcome. Any failure, an {@link Error} included, marks the job
+     * failed, so that it never stays running; errors are rethrown once recorded.
+     */
+    private void run(PatchJobDTO job, Task<?> task) {
+        jobs.put(job.id(), job.toBuilder().state(State.RUNNING).build());
+        PatchJobDTO done;
+        try {
+            Object result = task.run();
+            done =
+                    job.toBuilder()
+                            .state(State.SUCCEEDED)
+                            .status(HttpStatus.OK.value())
+                            .result(result)
+                            .build();
+        } catch (Throwable e) {
+            log.debug("Async patch {} failed", job.id(), e);
+            jobs.put(
+                    job.id(),
+                    job.toBuilder()
+                            .state(State.FAILED)
+                            .status(FailureStatus.of(e).value())
+                            .error(FailureStatus.message(e))
+                            .build());
+            if (e instanceof Error error) {
+                throw error;
+            }
+            return;
+        }
+        jobs.put(job.id(), done);
+    }
+}
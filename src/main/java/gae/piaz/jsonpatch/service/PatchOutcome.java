@@ -0,0 +1,13 @@
+package gae.piaz.jsonpatch.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * What a single entity PATCH returns, depending on its {@link ReturnPreference}.
+ *
+ * @param version the version of the saved entity, always set
+ * @param body the DTO of the saved entity, only for {@link ReturnPreference#REPRESENTATION}
+ * @param diff the diff of the update bean made by the patch, only for {@link ReturnPreference#DIFF}
+ * @param <D> DTO type of the patched entity
+ */
+public record PatchOutcome<D>(Integer version, D body, JsonNode diff) {}
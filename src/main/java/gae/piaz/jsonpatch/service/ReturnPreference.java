@@ -0,0 +1,11 @@
+package gae.piaz.jsonpatch.service;
+
+/** What a single entity PATCH returns, see {@link PatchOutcome}. */
+public enum ReturnPreference {
+    /** The DTO of the saved entity, the default. */
+    REPRESENTATION,
+    /** Only the version of the saved entity, with {@code Prefer: return=minimal}. */
+    MINIMAL,
+    /** What the patch changed, as an RFC 6902 diff of the update bean. */
+    DIFF
+}
@@ -1,10 +1,16 @@
 package gae.piaz.jsonpatch.service.core;
 
 import com.fasterxml.jackson.databind.JsonNode;
+import java.util.Objects;
+import java.util.function.Consumer;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.GenericTypeResolver;
 
 /**
- * Generic service to update an entity using a JsonPatch
+ * Generic service to update an entity using a JSON Patch or a JSON Merge Patch
  *
  * @param <EN> Entity type
  * @param <UB> Update bean type
@@ -14,36 +20,136 @@ public abstract class AbstractPatchService<EN, UB> {
 
     protected final JsonPatchService jsonPatchService;
 
+    /** The EN class, which tags the metrics of the stages. */
+    private final Class<?> entityClass =
+            GenericTypeResolver.resolveTypeArguments(getClass(), AbstractPatchService.class)[0];
+
+    /** How patches are applied to the update bean, configured with {@code jsonpatch.patch-mode}. */
+    @Getter private PatchMode patchMode = PatchMode.DIRECT;
+
+    private PatchMetrics patchMetrics = PatchMetrics.NOOP;
+
+    private PatchJournal patchJournal = PatchJournal.NOOP;
+
+    @Value("${jsonpatch.patch-mode:DIRECT}")
+    public void setPatchMode(PatchMode patchMode) {
+        this.patchMode = patchMode;
+    }
+
+    @Autowired
+    public void setPatchMetrics(PatchMetrics patchMetrics) {
+        this.patchMetrics = patchMetrics;
+    }
+
+    /** Records every patch of {@link #updateEntity}, unless {@code jsonpatch.journal} is off. */
+    @Autowired(required = false)
+    public void setPatchJournal(PatchJournal patchJournal) {
+        this.patchJournal = patchJournal;
+    }
+
+    /** Whether the patches of {@link #updateEntity} are recorded in a {@link PatchJournal}. */
+    public boolean isJournaled() {
+        return patchJournal != PatchJournal.NOOP;
+    }
+
     /**
      * The flow of the updateEntity method is as follows:
      *
      * <ul>
-     *   <li>Map the entity to an update bean.
+     *   <li>Map the entity to an update bean, with only the parts that the patch touches.
      *   <li>Apply the patch to the update bean.
-     *   <li>Update the entity fields with the update bean.
+     *   <li>Compare the patched bean with the original one, if nothing changed the entity is left
+     *       untouched and the result has updated set to false.
+     *   <li>Otherwise, update the changed entity fields with the update bean.
      *   <li>Returns a result with updated entity and updated set to true.
      * </ul>
      *
+     * Both the applied and the failed patches are recorded in the {@link PatchJournal}.
+     *
      * @param entity The entity to update
-     * @param patch JSON patch to apply to the entity
+     * @param patch JSON Patch or JSON Merge Patch to apply to the entity
      * @throws JsonPatchServerError if the patch cannot be applied to the update bean, internal
      *     error
      */
-    public EN updateEntity(EN entity, JsonNode patch) throws JsonPatchServerError {
-        UB updateBean = mapEntityToBean(entity);
+    public PatchResult<EN> updateEntity(EN entity, PatchDocument patch)
+            throws JsonPatchServerError {
+        PatchResult<EN> result;
+        try {
+            result = patch(entity, patch);
+        } catch (RuntimeException | JsonPatchServerError e) {
+            patchJournal.record(entity, patch, null, e);
+            throw e;
+        }
+        patchJournal.record(entity, patch, result, null);
+        return result;
+    }
 
-        UB updateBeanResult = applyPatchToBean(patch, updateBean);
+    private PatchResult<EN> patch(EN entity, PatchDocument patch) throws JsonPatchServerError {
+        UB updateBean =
+                patchMetrics.time("map_to_bean", entityClass, () -> mapEntityToBean(entity, patch));
 
-        updateEntityFields(entity, updateBeanResult);
+        UB updateBeanResult =
+                patchMetrics.time("apply", entityClass, () -> applyPatchToBean(patch, updateBean));
 
-        return entity;
+        if (updateBeanResult.equals(updateBean)) {
+            return new PatchResult<>(entity, false, updateBean, updateBeanResult);
+        }
+
+        patchMetrics.time(
+                "update_fields",
+                entityClass,
+                () -> {
+                    updateEntityFields(entity, updateBean, updateBeanResult);
+                    return null;
+                });
+
+        return new PatchResult<>(entity, true, updateBean, updateBeanResult);
+    }
+
+    /**
+     * Computes what the patch of the result changed, as an RFC 6902 patch from the update bean
+     * before the patch to the one after it. The diff also shows the changes that the patch did not
+     * spell out, e.g. values normalized while converted to the update bean types.
+     *
+     * @throws JsonPatchServerError if an update bean cannot be converted to a JsonNode
+     */
+    public JsonNode diff(PatchResult<EN> result) throws JsonPatchServerError {
+        return patchMetrics.time(
+                "diff",
+                entityClass,
+                () -> jsonPatchService.diff(result.original(), result.patched()));
     }
 
-    protected UB applyPatchToBean(JsonNode patch, UB updateBean) throws JsonPatchServerError {
-        return jsonPatchService.applyPatch(patch, updateBean, (Class<UB>) updateBean.getClass());
+    protected UB applyPatchToBean(PatchDocument patch, UB updateBean) throws JsonPatchServerError {
+        Class<UB> beanClass = (Class<UB>) updateBean.getClass();
+        return switch (patch) {
+            case JsonPatchDocument jsonPatch ->
+                    jsonPatchService.applyPatch(jsonPatch, updateBean, beanClass, patchMode);
+            case MergePatchDocument mergePatch ->
+                    jsonPatchService.applyMergePatch(mergePatch, updateBean, beanClass, patchMode);
+        };
     }
 
-    protected abstract void updateEntityFields(EN entity, UB updateBean);
+    /**
+     * Writes back to the entity the fields of the patched update bean. Only the fields that differ
+     * from the original bean should be set, see {@link #setIfChanged}.
+     *
+     * @param original the update bean mapped from the entity, before the patch
+     * @param updateBean the patched update bean
+     */
+    protected abstract void updateEntityFields(EN entity, UB original, UB updateBean);
 
-    protected abstract UB mapEntityToBean(EN entity);
+    /** Calls the setter with the patched value, only if it differs from the original one. */
+    protected static <V> void setIfChanged(V original, V patched, Consumer<V> setter) {
+        if (!Objects.equals(original, patched)) {
+            setter.accept(patched);
+        }
+    }
+
+    /**
+     * Maps the entity to its update bean. Collections that the patch does not touch, see {@link
+     * PatchDocument#touches}, can be left null so that lazy associations are not loaded; a null
+     * collection in the patched bean is then not written back.
+     */
+    protected abstract UB mapEntityToBean(EN entity, PatchDocument patch);
 }
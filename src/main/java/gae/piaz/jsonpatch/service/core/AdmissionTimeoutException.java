@@ -0,0 +1,10 @@
+package gae.piaz.jsonpatch.service.core;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/** The patch waited longer than the admission deadline for a slot. */
+@ResponseStatus(
+        reason = "Timed out waiting to patch, retry later",
+        code = HttpStatus.SERVICE_UNAVAILABLE)
+public class AdmissionTimeoutException extends RuntimeException {}
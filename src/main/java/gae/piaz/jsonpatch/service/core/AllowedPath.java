@@ -0,0 +1,23 @@
+package gae.piaz.jsonpatch.service.core;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * A path that a {@link JsonPatchUpdate} endpoint accepts in the "path" and "from" members of a JSON
+ * Patch operation.
+ */
+@Target({})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface AllowedPath {
+
+    /**
+     * The JSON pointer of the allowed path, without the leading slash. A "-" token matches any
+     * array index as well as the "-" end of array token, e.g. "books/-/title".
+     */
+    String pattern();
+
+    /** Human readable description of the path, rendered in the OpenAPI documentation. */
+    String description() default "";
+}
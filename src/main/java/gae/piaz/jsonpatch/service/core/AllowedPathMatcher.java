@@ -0,0 +1,94 @@
+package gae.piaz.jsonpatch.service.core;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A trie of the {@link AllowedPath} patterns of an endpoint. Checking a JSON pointer walks the trie
+ * one reference token at a time, so it costs O(length of the pointer) whatever the number of
+ * allowed paths.
+ */
+public final class AllowedPathMatcher {
+
+    private static final String ANY_INDEX = "-";
+
+    private final Node root = new Node();
+
+    private AllowedPathMatcher() {}
+
+    public static AllowedPathMatcher compile(AllowedPath... allowedPaths) {
+        AllowedPathMatcher matcher = new AllowedPathMatcher();
+        for (AllowedPath allowedPath : allowedPaths) {
+            matcher.add(allowedPath.pattern());
+        }
+        return matcher;
+    }
+
+    private void add(String pattern) {
+        String normalized = pattern.startsWith("/") ? pattern.substring(1) : pattern;
+        Node node = root;
+        for (String token : normalized.split("/", -1)) {
+            if (ANY_INDEX.equals(token)) {
+                if (node.anyIndex == null) {
+                    node.anyIndex = new Node();
+                }
+                node = node.anyIndex;
+            } else {
+                node = node.children.computeIfAbsent(token, t -> new Node());
+            }
+        }
+        node.terminal = true;
+    }
+
+    /** Whether the JSON pointer is one of the allowed paths. */
+    public boolean matches(String pointer) {
+        if (pointer == null || pointer.isEmpty() || pointer.charAt(0) != '/') {
+            return false;
+        }
+        Node node = root;
+        int start = 1;
+        while (true) {
+            int end = pointer.indexOf('/', start);
+            if (end < 0) {
+                end = pointer.length();
+            }
+            node = node.next(unescape(pointer.substring(start, end)));
+            if (node == null) {
+                return false;
+            }
+            if (end == pointer.length()) {
+                return node.terminal;
+            }
+            start = end + 1;
+        }
+    }
+
+    private static String unescape(String token) {
+        if (token.indexOf('~') < 0) {
+            return token;
+        }
+        return token.replace("~1", "/").replace("~0", "~");
+    }
+
+    private static boolean isIndex(String token) {
+        return ANY_INDEX.equals(token)
+                || (!token.isEmpty() && token.chars().allMatch(Character::isDigit));
+    }
+
+    private static final class Node {
+
+        private final Map<String, Node> children = new HashMap<>();
+
+        private Node anyIndex;
+
+        private boolean terminal;
+
+        private Node next(String token) {
+            Node child = children.get(token);
+            if (child == null && anyIndex != null && isIndex(token)) {
+                return anyIndex;
+            }
+            return child;
+        }
+    }
+}
@@ -0,0 +1,462 @@
+package gae.piaz.jsonpatch.service.core;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.RecordComponent;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Applies a JSON Patch directly to a record update bean, without converting the whole bean to a
+ * JsonNode and back. Record components are read and written through method handles resolved once
+ * per record type, and only the values carried by the patch are converted by Jackson.
+ *
+ * <p>Records are immutable: every operation rebuilds the records and collections on the path from
+ * the root to the changed value, everything else is shared with the original bean. Collections are
+ * addressed by index in iteration order, which is the order Jackson uses to serialize them.
+ */
+class BeanPatchEngine {
+
+    private final ObjectMapper objectMapper;
+
+    private final boolean failOnUnknownProperties;
+
+    private final ClassValue<RecordAccessor> accessors =
+            new ClassValue<>() {
+                @Override
+                protected RecordAccessor computeValue(Class<?> type) {
+                    return RecordAccessor.of(type, objectMapper);
+                }
+            };
+
+    BeanPatchEngine(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.failOnUnknownProperties =
+                objectMapper.isEnabled(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    /**
+     * Applies all the operations of the compiled patch to the target record, in order.
+     *
+     * @throws BeanPatchException if an operation path does not exist or a "test" operation fails
+     * @throws IllegalArgumentException if a patch value cannot be converted to the type of the
+     *     record component it is written to
+     */
+    <T> T apply(BoundPatch patch, T target, Class<T> targetClass) {
+        JavaType rootType = patch.plan().targetType();
+        List<CompiledPatch.Operation> operations = patch.plan().operations();
+        Object root = target;
+        for (int i = 0; i < operations.size(); i++) {
+            root = applyOperation(root, rootType, operations.get(i), patch.values()[i]);
+        }
+        return targetClass.cast(root);
+    }
+
+    /**
+     * Applies a JSON Merge Patch to the target record, member by member: a null member resets the
+     * record component, an object member is merged into the component, any other member replaces
+     * it. Only the values carried by the patch are converted by Jackson.
+     *
+     * @throws BeanPatchException if a member is not a record component and unknown properties are
+     *     not ignored
+     * @throws IllegalArgumentException if a member cannot be converted to the type of its component
+     */
+    <T> T merge(ObjectNode patch, T target, Class<T> targetClass) {
+        return targetClass.cast(
+                merge(target, objectMapper.constructType(targetClass), patch, new ArrayList<>()));
+    }
+
+    private Object merge(Object current, JavaType type, JsonNode patch, List<String> path) {
+        if (!patch.isObject()) {
+            return convert(patch, type);
+        }
+        if (current == null || !isRecord(current)) {
+            // maps and missing values are merged as JSON, like in the JsonNode flow
+            return convert(MergePatchDocument.merge(toNode(current), patch), type);
+        }
+        RecordAccessor accessor = accessors.get(current.getClass());
+        Object[] values = accessor.values(current);
+        for (Iterator<Map.Entry<String, JsonNode>> it = patch.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> member = it.next();
+            path.add(member.getKey());
+            int index = accessor.indexOf(member.getKey());
+            if (index < 0) {
+                if (failOnUnknownProperties) {
+                    throw notFound(path.toArray(String[]::new));
+                }
+            } else if (member.getValue().isNull()) {
+                values[index] = accessor.defaultValue(index);
+            } else {
+                values[index] =
+                        merge(values[index], accessor.types[index], member.getValue(), path);
+            }
+            path.remove(path.size() - 1);
+        }
+        return accessor.construct(values);
+    }
+
+    private Object applyOperation(
+            Object root, JavaType rootType, CompiledPatch.Operation operation, JsonNode value) {
+        String[] path = operation.path();
+        return switch (operation.type()) {
+            case ADD -> add(root, rootType, path, value);
+            case REMOVE -> remove(root, rootType, path);
+            case REPLACE -> replace(root, rootType, path, value);
+            case MOVE -> move(root, rootType, operation.from(), path);
+            case COPY -> copy(root, rootType, operation.from(), path);
+            case TEST -> test(root, rootType, path, value);
+        };
+    }
+
+    private Object add(Object root, JavaType rootType, String[] path, JsonNode value) {
+        if (path.length == 0) {
+            return convert(value, rootType);
+        }
+        return write(
+                root,
+                rootType,
+                path,
+                0,
+                (container, type, token) -> {
+                    if (isRecord(container)) {
+                        RecordAccessor accessor = accessors.get(container.getClass());
+                        int index = accessor.indexOf(token);
+                        if (index < 0) {
+                            if (failOnUnknownProperties) {
+                                throw notFound(path);
+                            }
+                            return container;
+                        }
+                        return accessor.with(
+                                container, index, convert(value, accessor.types[index]));
+                    }
+                    List<Object> list = toList(container, path);
+                    int index =
+                            "-".equals(token)
+                                    ? list.size()
+                                    : parseIndex(token, list.size() + 1, path);
+                    list.add(index, convert(value, type.getContentType()));
+                    return fromList(list, type);
+                });
+    }
+
+    private Object remove(Object root, JavaType rootType, String[] path) {
+        if (path.length == 0) {
+            throw new BeanPatchException("The root of the document cannot be removed");
+        }
+        return write(
+                root,
+                rootType,
+                path,
+                0,
+                (container, type, token) -> {
+                    if (isRecord(container)) {
+                        RecordAccessor accessor = accessors.get(container.getClass());
+                        int index = requiredComponent(accessor, token, path);
+                        return accessor.with(container, index, accessor.defaultValue(index));
+                    }
+                    List<Object> list = toList(container, path);
+                    list.remove(parseIndex(token, list.size(), path));
+                    return fromList(list, type);
+                });
+    }
+
+    private Object replace(Object root, JavaType rootType, String[] path, JsonNode value) {
+        if (path.length == 0) {
+            return convert(value, rootType);
+        }
+        return write(
+                root,
+                rootType,
+                path,
+                0,
+                (container, type, token) -> {
+                    if (isRecord(container)) {
+                        RecordAccessor accessor = accessors.get(container.getClass());
+                        int index = requiredComponent(accessor, token, path);
+                        return accessor.with(
+                                container, index, convert(value, accessor.types[index]));
+                    }
+                    List<Object> list = toList(container, path);
+                    list.set(
+                            parseIndex(token, list.size(), path),
+                            convert(value, type.getContentType()));
+                    return fromList(list, type);
+                });
+    }
+
+    private Object move(Object root, JavaType rootType, String[] from, String[] path) {
+        if (isProperPrefix(from, path)) {
+            throw new BeanPatchException(
+                    "Cannot move from " + pointer(from) + " to its child " + pointer(path));
+        }
+        Object value = read(root, rootType, from);
+        Object removed = remove(root, rootType, from);
+        return addValue(removed, rootType, path, value);
+    }
+
+    private Object copy(Object root, JavaType rootType, String[] from, String[] path) {
+        Object value = read(root, rootType, from);
+        return addValue(root, rootType, path, value);
+    }
+
+    private Object test(Object root, JavaType rootType, String[] path, JsonNode value) {
+        Object current = read(root, rootType, path);
+        JsonNode currentNode = toNode(current);
+        if (!value.equals(currentNode)) {
+            throw new BeanPatchException(
+                    "Test operation failed at " + pointer(path) + ", found " + currentNode);
+        }
+        return root;
+    }
+
+    /** Same as "add", but for a value that has already been read from the bean itself. */
+    private Object addValue(Object root, JavaType rootType, String[] path, Object value) {
+        return add(root, rootType, path, toNode(value));
+    }
+
+    private JsonNode toNode(Object value) {
+        return value == null ? NullNode.getInstance() : objectMapper.valueToTree(value);
+    }
+
+    /**
+     * Rebuilds the containers from {@code node} down to the parent of the last path token, and lets
+     * the mutation produce the new version of that parent.
+     */
+    private Object write(Object node, JavaType type, String[] path, int depth, Mutation mutation) {
+        if (node == null) {
+            throw notFound(path);
+        }
+        String token = path[depth];
+        if (depth == path.length - 1) {
+            return mutation.apply(node, type, token);
+        }
+        if (isRecord(node)) {
+            RecordAccessor accessor = accessors.get(node.getClass());
+            int index = requiredComponent(accessor, token, path);
+            Object child =
+                    write(
+                            accessor.get(node, index),
+                            accessor.types[index],
+                            path,
+                            depth + 1,
+                            mutation);
+            return accessor.with(node, index, child);
+        }
+        List<Object> list = toList(node, path);
+        int index = parseIndex(token, list.size(), path);
+        list.set(index, write(list.get(index), type.getContentType(), path, depth + 1, mutation));
+        return fromList(list, type);
+    }
+
+    private Object read(Object root, JavaType rootType, String[] path) {
+        Object node = root;
+        JavaType type = rootType;
+        for (String token : path) {
+            if (node == null) {
+                throw notFound(path);
+            }
+            if (isRecord(node)) {
+                RecordAccessor accessor = accessors.get(node.getClass());
+                int index = requiredComponent(accessor, token, path);
+                node = accessor.get(node, index);
+                type = accessor.types[index];
+            } else {
+                List<Object> list = toList(node, path);
+                node = list.get(parseIndex(token, list.size(), path));
+                type = type.getContentType();
+            }
+        }
+        return node;
+    }
+
+    private Object convert(JsonNode value, JavaType type) {
+        return objectMapper.convertValue(value, type);
+    }
+
+    private static boolean isRecord(Object node) {
+        return node.getClass().isRecord();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> toList(Object node, String[] path) {
+        if (node instanceof Collection<?> collection) {
+            return new ArrayList<>((Collection<Object>) collection);
+        }
+        throw notFound(path);
+    }
+
+    private static Object fromList(List<Object> list, JavaType type) {
+        if (type.isTypeOrSubTypeOf(Set.class)) {
+            return new LinkedHashSet<>(list);
+        }
+        return list;
+    }
+
+    private static int requiredComponent(RecordAccessor accessor, String token, String[] path) {
+        int index = accessor.indexOf(token);
+        if (index < 0) {
+            throw notFound(path);
+        }
+        return index;
+    }
+
+    private static int parseIndex(String token, int bound, String[] path) {
+        if (token.isEmpty() || !token.chars().allMatch(Character::isDigit)) {
+            throw notFound(path);
+        }
+        try {
+            int index = Integer.parseInt(token);
+            if (index < bound) {
+                return index;
+            }
+        } catch (NumberFormatException e) {
+            // falls through to the not found error
+        }
+        throw notFound(path);
+    }
+
+    private static boolean isProperPrefix(String[] prefix, String[] path) {
+        if (prefix.length >= path.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (!prefix[i].equals(path[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String pointer(String[] path) {
+        return path.length == 0 ? "\"\"" : "/" + String.join("/", path);
+    }
+
+    private static BeanPatchException notFound(String[] path) {
+        return new BeanPatchException("No value found at path " + pointer(path));
+    }
+
+    @FunctionalInterface
+    private interface Mutation {
+        Object apply(Object container, JavaType type, String token);
+    }
+
+    /** Method handles and Jackson types of the components of a record, resolved once per type. */
+    private static final class RecordAccessor {
+
+        private final Map<String, Integer> indexes;
+        private final MethodHandle[] getters;
+        private final JavaType[] types;
+        private final Object[] defaults;
+        private final MethodHandle constructor;
+
+        private RecordAccessor(
+                Map<String, Integer> indexes,
+                MethodHandle[] getters,
+                JavaType[] types,
+                Object[] defaults,
+                MethodHandle constructor) {
+            this.indexes = indexes;
+            this.getters = getters;
+            this.types = types;
+            this.defaults = defaults;
+            this.constructor = constructor;
+        }
+
+        static RecordAccessor of(Class<?> type, ObjectMapper objectMapper) {
+            RecordComponent[] components = type.getRecordComponents();
+            int size = components.length;
+            Map<String, Integer> indexes = new HashMap<>();
+            MethodHandle[] getters = new MethodHandle[size];
+            JavaType[] types = new JavaType[size];
+            Object[] defaults = new Object[size];
+            Class<?>[] parameterTypes = new Class<?>[size];
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            try {
+                for (int i = 0; i < size; i++) {
+                    RecordComponent component = components[i];
+                    Method accessor = component.getAccessor();
+                    accessor.setAccessible(true);
+                    indexes.put(component.getName(), i);
+                    getters[i] =
+                            lookup.unreflect(accessor)
+                                    .asType(MethodType.methodType(Object.class, Object.class));
+                    types[i] = objectMapper.constructType(component.getGenericType());
+                    parameterTypes[i] = component.getType();
+                    if (component.getType().isPrimitive()) {
+                        defaults[i] = Array.get(Array.newInstance(component.getType(), 1), 0);
+                    }
+                }
+                Constructor<?> canonical = type.getDeclaredConstructor(parameterTypes);
+                canonical.setAccessible(true);
+                MethodHandle constructor =
+                        lookup.unreflectConstructor(canonical)
+                                .asSpreader(Object[].class, size)
+                                .asType(MethodType.methodType(Object.class, Object[].class));
+                return new RecordAccessor(indexes, getters, types, defaults, constructor);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(
+                        "Cannot access the components of record " + type.getName(), e);
+            }
+        }
+
+        int indexOf(String name) {
+            Integer index = indexes.get(name);
+            return index == null ? -1 : index;
+        }
+
+        Object defaultValue(int index) {
+            return defaults[index];
+        }
+
+        Object get(Object record, int index) {
+            try {
+                return (Object) getters[index].invokeExact(record);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        Object[] values(Object record) {
+            Object[] values = new Object[getters.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = get(record, i);
+            }
+            return values;
+        }
+
+        Object with(Object record, int index, Object value) {
+            Object[] values = values(record);
+            values[index] = value;
+            return construct(values);
+        }
+
+        Object construct(Object[] values) {
+            try {
+                return (Object) constructor.invokeExact(values);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
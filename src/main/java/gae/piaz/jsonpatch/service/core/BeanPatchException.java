@@ -0,0 +1,12 @@
+package gae.piaz.jsonpatch.service.core;
+
+/**
+ * Thrown by {@link BeanPatchEngine} when an operation cannot be applied to the update bean. It is
+ * the counterpart of zjsonpatch JsonPatchApplicationException for the {@link PatchMode#DIRECT}
+ * mode, and is translated by {@link JsonPatchService} into a {@link JsonPatchClientError}.
+ */
+class BeanPatchException extends RuntimeException {
+    BeanPatchException(String message) {
+        super(message);
+    }
+}
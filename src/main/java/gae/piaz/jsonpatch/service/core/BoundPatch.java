@@ -0,0 +1,12 @@
+package gae.piaz.jsonpatch.service.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * A compiled patch bound to the values of one request.
+ *
+ * @param plan the cached shape of the patch
+ * @param values the "value" of each operation, at the same index as the operation in the plan, null
+ *     for operations without a value
+ */
+public record BoundPatch(CompiledPatch plan, JsonNode[] values) {}
@@ -0,0 +1,31 @@
+package gae.piaz.jsonpatch.service.core;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The body of a bulk JSON Patch request: the patch to apply to each entity, by entity id.
+ *
+ * @param patches the patches by entity id, in request order
+ * @param rejected the ids whose patch was rejected before reaching the service, e.g. because it
+ *     touches a path that is not allowed, with the reason
+ */
+public record BulkPatchRequest(
+        Map<Integer, JsonPatchDocument> patches, Map<Integer, String> rejected) {
+
+    @JsonCreator(mode = JsonCreator.Mode.DELEGATING)
+    public BulkPatchRequest(Map<Integer, JsonPatchDocument> patches) {
+        this(patches, Map.of());
+    }
+
+    /** Returns a copy of this request where the given patches are also rejected. */
+    public BulkPatchRequest withRejected(Map<Integer, String> reasons) {
+        if (reasons.isEmpty()) {
+            return this;
+        }
+        Map<Integer, String> allRejected = new HashMap<>(rejected);
+        allRejected.putAll(reasons);
+        return new BulkPatchRequest(patches, allRejected);
+    }
+}
@@ -0,0 +1,26 @@
+package gae.piaz.jsonpatch.service.core;
+
+import com.fasterxml.jackson.databind.JavaType;
+import java.util.List;
+
+/**
+ * The shape of a JSON Patch: its operations with pre-split JSON pointers, and the update bean type
+ * it applies to. It does not hold the values of the operations, so it can be shared by all the
+ * patches with the same op/path skeleton, see {@link JsonPatchCompiler}.
+ *
+ * @param targetType the update bean type the patch applies to
+ * @param operations the operations of the patch, in order
+ * @param testOnly true if the patch only contains "test" operations
+ */
+public record CompiledPatch(JavaType targetType, List<Operation> operations, boolean testOnly) {
+
+    /**
+     * A single operation of a compiled patch.
+     *
+     * @param type the operation type
+     * @param path the unescaped reference tokens of the "path" pointer
+     * @param from the unescaped reference tokens of the "from" pointer, null unless the operation
+     *     is a move or a copy
+     */
+    public record Operation(PatchOperationType type, String[] path, String[] from) {}
+}
@@ -0,0 +1,8 @@
+package gae.piaz.jsonpatch.service.core;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/** The entity was updated by another request while a patch sent without If-Match was applied. */
+@ResponseStatus(reason = "Entity was updated concurrently", code = HttpStatus.CONFLICT)
+public class ConcurrentUpdateException extends RuntimeException {}
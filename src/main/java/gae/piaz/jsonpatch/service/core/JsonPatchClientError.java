@@ -9,6 +9,10 @@ import org.springframework.web.bind.annotation.ResponseStatus;
  */
 @ResponseStatus(reason = "Client error while patching entity", code = HttpStatus.BAD_REQUEST)
 public class JsonPatchClientError extends RuntimeException {
+    public JsonPatchClientError(String message) {
+        super(message);
+    }
+
     public JsonPatchClientError(String message, Throwable cause) {
         super(message, cause);
     }
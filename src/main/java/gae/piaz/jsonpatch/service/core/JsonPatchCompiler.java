@@ -0,0 +1,83 @@
+package gae.piaz.jsonpatch.service.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Compiles JSON Patch documents into {@link CompiledPatch} plans. Plans are cached in a bounded LRU
+ * keyed by the target type and the op/path skeleton of the patch, so the pointers of the patches
+ * that clients send over and over are parsed only once; only their values are bound per request.
+ * Documents are already validated by {@link JsonPatchReader}. The plans are run by the {@link
+ * PatchMode#DIRECT} flow, the JsonNode flow hands the whole patch to zjsonpatch.
+ */
+@Component
+@Slf4j
+public class JsonPatchCompiler {
+
+    private final ObjectMapper objectMapper;
+
+    private final LruCache<PlanKey, CompiledPatch> plans;
+
+    public JsonPatchCompiler(
+            ObjectMapper objectMapper, @Value("${jsonpatch.plan-cache-size:256}") int cacheSize) {
+        this.objectMapper = objectMapper;
+        this.plans = new LruCache<>(cacheSize);
+    }
+
+    /**
+     * Compiles the patch for the given update bean type, reusing the cached plan of a patch with
+     * the same skeleton when there is one.
+     */
+    public BoundPatch compile(JsonPatchDocument patch, Class<?> targetClass) {
+        List<PatchOperation> operations = patch.operations();
+        JsonNode[] values = new JsonNode[operations.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = operations.get(i).value();
+        }
+
+        PlanKey key = new PlanKey(targetClass, patch.skeleton());
+        CompiledPatch plan = plans.get(key);
+        if (plan == null) {
+            plan = compilePlan(patch, targetClass);
+            plans.put(key, plan);
+            log.debug("Compiled JSON Patch plan for {}: {}", targetClass.getSimpleName(), key);
+        }
+        return new BoundPatch(plan, values);
+    }
+
+    private CompiledPatch compilePlan(JsonPatchDocument patch, Class<?> targetClass) {
+        List<CompiledPatch.Operation> operations = new ArrayList<>(patch.operations().size());
+        boolean testOnly = true;
+        for (PatchOperation operation : patch.operations()) {
+            operations.add(
+                    new CompiledPatch.Operation(
+                            operation.type(),
+                            parsePointer(operation.path()),
+                            operation.from() != null ? parsePointer(operation.from()) : null));
+            testOnly &= operation.type() == PatchOperationType.TEST;
+        }
+        return new CompiledPatch(
+                objectMapper.constructType(targetClass), List.copyOf(operations), testOnly);
+    }
+
+    /** Splits a JSON pointer (RFC 6901) into its unescaped reference tokens. */
+    static String[] parsePointer(String pointer) {
+        if (pointer.isEmpty()) {
+            return new String[0];
+        }
+        String[] tokens = pointer.substring(1).split("/", -1);
+        for (int i = 0; i < tokens.length; i++) {
+            if (tokens[i].indexOf('~') >= 0) {
+                tokens[i] = tokens[i].replace("~1", "/").replace("~0", "~");
+            }
+        }
+        return tokens;
+    }
+
+    private record PlanKey(Class<?> targetType, List<JsonPatchDocument.Step> skeleton) {}
+}
@@ -0,0 +1,92 @@
+package gae.piaz.jsonpatch.service.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.List;
+
+/**
+ * A validated JSON Patch (RFC 6902) request body, as a compact list of typed operations. Documents
+ * are built by {@link JsonPatchReader}, which guarantees that every operation carries the members
+ * its type requires.
+ */
+public record JsonPatchDocument(List<PatchOperation> operations) implements PatchDocument {
+
+    public JsonPatchDocument {
+        operations = List.copyOf(operations);
+    }
+
+    /**
+     * The op/path/from skeleton of the patch, which identifies its shape regardless of the values.
+     * Compared member by member, so no two patches of different shapes share a skeleton, whatever
+     * characters their pointers hold.
+     */
+    public List<Step> skeleton() {
+        Step[] skeleton = new Step[operations.size()];
+        for (int i = 0; i < skeleton.length; i++) {
+            PatchOperation operation = operations.get(i);
+            skeleton[i] = new Step(operation.type(), operation.path(), operation.from());
+        }
+        return List.of(skeleton);
+    }
+
+    /**
+     * An operation of the {@link #skeleton()}.
+     *
+     * @param from null unless the operation is a move or a copy
+     */
+    public record Step(PatchOperationType type, String path, String from) {}
+
+    /** Whether the patch only holds "test" operations, which cannot change anything. */
+    public boolean testOnly() {
+        for (PatchOperation operation : operations) {
+            if (operation.type() != PatchOperationType.TEST) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean touches(String property) {
+        for (PatchOperation operation : operations) {
+            if (touches(operation.path(), property)
+                    || (operation.from() != null && touches(operation.from(), property))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean touches(String pointer, String property) {
+        if (pointer.isEmpty()) {
+            return true;
+        }
+        int end = pointer.indexOf('/', 1);
+        String token = end < 0 ? pointer.substring(1) : pointer.substring(1, end);
+        return token.equals(property);
+    }
+
+    /** Builds the JsonNode representation of the patch, as expected by zjsonpatch. */
+    public JsonNode toJsonNode() {
+        ArrayNode patch = JsonNodeFactory.instance.arrayNode(operations.size());
+        for (PatchOperation operation : operations) {
+            ObjectNode node = patch.addObject();
+            node.put("op", operation.type().jsonName());
+            node.put("path", operation.path());
+            if (operation.from() != null) {
+                node.put("from", operation.from());
+            }
+            if (operation.value() != null) {
+                node.set("value", operation.value());
+            }
+        }
+        return patch;
+    }
+
+    @Override
+    public String toString() {
+        return toJsonNode().toString();
+    }
+}
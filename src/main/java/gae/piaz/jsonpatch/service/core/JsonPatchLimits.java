@@ -0,0 +1,22 @@
+package gae.piaz.jsonpatch.service.core;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Limits enforced by {@link JsonPatchReader} while a JSON Patch is parsed, so that the memory used
+ * by a request body is bounded.
+ *
+ * @param maxOperations max number of operations in a patch
+ * @param maxValueSize max size of the "value" of an operation, counted in characters of its
+ *     strings, numbers and field names plus one per token
+ * @param maxDepth max nesting depth of the "value" of an operation
+ */
+@ConfigurationProperties(prefix = "jsonpatch.limits")
+public record JsonPatchLimits(
+        @DefaultValue("1000") int maxOperations,
+        @DefaultValue("65536") int maxValueSize,
+        @DefaultValue("16") int maxDepth) {
+
+    public static final JsonPatchLimits DEFAULT = new JsonPatchLimits(1000, 65536, 16);
+}
@@ -0,0 +1,208 @@
+package gae.piaz.jsonpatch.service.core;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Reads a JSON Patch document with the Jackson streaming parser. Operations are validated as soon
+ * as they are read, and the {@link JsonPatchLimits} are enforced while parsing, so an invalid or
+ * abusive patch fails before the rest of the body is consumed. Only the "value" members are
+ * materialized as JsonNode trees.
+ */
+@RequiredArgsConstructor
+public class JsonPatchReader {
+
+    private final JsonPatchLimits limits;
+
+    /**
+     * Reads a JSON Patch document from the parser, which must not hold any other content.
+     *
+     * @throws JsonPatchClientError if the document is not a valid JSON Patch or exceeds the limits
+     * @throws IOException if the document is not valid JSON
+     */
+    public JsonPatchDocument read(JsonParser parser) throws IOException {
+        parser.nextToken();
+        JsonPatchDocument patch = readEmbedded(parser);
+        if (parser.nextToken() != null) {
+            throw invalid("Unexpected content after the JSON Patch array", parser);
+        }
+        return patch;
+    }
+
+    /**
+     * Reads a JSON Patch document nested in a larger JSON document, starting from the current token
+     * of the parser, which must be the start of the patch array.
+     *
+     * @throws JsonPatchClientError if the document is not a valid JSON Patch or exceeds the limits
+     * @throws IOException if the document is not valid JSON
+     */
+    public JsonPatchDocument readEmbedded(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            throw invalid("Invalid JSON Patch payload, an array is expected", parser);
+        }
+        List<PatchOperation> operations = new ArrayList<>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (operations.size() >= limits.maxOperations()) {
+                throw invalid(
+                        "JSON Patch has more than " + limits.maxOperations() + " operations",
+                        parser);
+            }
+            operations.add(readOperation(parser));
+        }
+        return new JsonPatchDocument(operations);
+    }
+
+    /**
+     * Reads a JSON Merge Patch document from the parser, which must not hold any other content. The
+     * document is read as a single value, so the size and depth limits apply to the whole object,
+     * and the operations limit to the number of paths it writes.
+     *
+     * @throws JsonPatchClientError if the document is not an object or exceeds the limits
+     * @throws IOException if the document is not valid JSON
+     */
+    public MergePatchDocument readMergePatch(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw invalid("Invalid JSON Merge Patch payload, an object is expected", parser);
+        }
+        MergePatchDocument patch =
+                new MergePatchDocument((ObjectNode) readValue(parser, 1, new int[] {0}));
+        if (parser.nextToken() != null) {
+            throw invalid("Unexpected content after the JSON Merge Patch object", parser);
+        }
+        if (patch.paths().size() > limits.maxOperations()) {
+            throw invalid(
+                    "JSON Merge Patch writes more than " + limits.maxOperations() + " paths",
+                    parser);
+        }
+        return patch;
+    }
+
+    private PatchOperation readOperation(JsonParser parser) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            throw invalid("Invalid JSON Patch operation, an object is expected", parser);
+        }
+        String op = null;
+        String path = null;
+        String from = null;
+        JsonNode value = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            switch (field) {
+                case "op" -> op = readText(parser, token, field);
+                case "path" -> path = readPointer(parser, token, field);
+                case "from" -> from = readPointer(parser, token, field);
+                case "value" -> value = readValue(parser, 1, new int[] {0});
+                default -> parser.skipChildren();
+            }
+        }
+
+        PatchOperationType type = PatchOperationType.fromJsonName(op);
+        if (type == null) {
+            throw invalid("Invalid operation " + op, parser);
+        }
+        if (path == null) {
+            throw invalid("Missing field 'path' in " + op + " operation", parser);
+        }
+        if (type.hasFrom() && from == null) {
+            throw invalid("Missing field 'from' in " + op + " operation", parser);
+        }
+        if (type.hasValue() && value == null) {
+            throw invalid("Missing field 'value' in " + op + " operation", parser);
+        }
+        return new PatchOperation(
+                type, path, type.hasFrom() ? from : null, type.hasValue() ? value : null);
+    }
+
+    private static String readText(JsonParser parser, JsonToken token, String field)
+            throws IOException {
+        if (token != JsonToken.VALUE_STRING) {
+            throw invalid("Field '" + field + "' must be a string", parser);
+        }
+        return parser.getText();
+    }
+
+    private static String readPointer(JsonParser parser, JsonToken token, String field)
+            throws IOException {
+        String pointer = readText(parser, token, field);
+        if (!pointer.isEmpty() && pointer.charAt(0) != '/') {
+            throw invalid("Invalid JSON pointer " + pointer, parser);
+        }
+        return pointer;
+    }
+
+    /**
+     * Builds the tree of a "value" member, or of a merge patch, token by token, checking its depth
+     * and size on the way. {@code size} is a single element array holding the size read so far.
+     */
+    private JsonNode readValue(JsonParser parser, int depth, int[] size) throws IOException {
+        JsonToken token = parser.currentToken();
+        size[0] += 1 + (token.isScalarValue() ? parser.getTextLength() : 0);
+        if (size[0] > limits.maxValueSize()) {
+            throw invalid("JSON Patch value exceeds " + limits.maxValueSize() + " chars", parser);
+        }
+        JsonNodeFactory factory = JsonNodeFactory.instance;
+        switch (token) {
+            case START_OBJECT -> {
+                checkDepth(parser, depth);
+                ObjectNode object = factory.objectNode();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String name = parser.currentName();
+                    size[0] += name.length();
+                    parser.nextToken();
+                    object.set(name, readValue(parser, depth + 1, size));
+                }
+                return object;
+            }
+            case START_ARRAY -> {
+                checkDepth(parser, depth);
+                ArrayNode array = factory.arrayNode();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    array.add(readValue(parser, depth + 1, size));
+                }
+                return array;
+            }
+            case VALUE_STRING -> {
+                return factory.textNode(parser.getText());
+            }
+            case VALUE_NUMBER_INT -> {
+                return switch (parser.getNumberType()) {
+                    case INT -> factory.numberNode(parser.getIntValue());
+                    case LONG -> factory.numberNode(parser.getLongValue());
+                    default -> factory.numberNode(parser.getBigIntegerValue());
+                };
+            }
+            case VALUE_NUMBER_FLOAT -> {
+                return factory.numberNode(parser.getDoubleValue());
+            }
+            case VALUE_TRUE, VALUE_FALSE -> {
+                return factory.booleanNode(token == JsonToken.VALUE_TRUE);
+            }
+            case VALUE_NULL -> {
+                return factory.nullNode();
+            }
+            default -> throw invalid("Unexpected token " + token, parser);
+        }
+    }
+
+    private void checkDepth(JsonParser parser, int depth) {
+        if (depth > limits.maxDepth()) {
+            throw invalid("JSON Patch value is nested deeper than " + limits.maxDepth(), parser);
+        }
+    }
+
+    private static JsonPatchClientError invalid(String message, JsonParser parser) {
+        return new JsonPatchClientError(
+                String.format(
+                        "Invalid JSON Patch: %s at %s",
+                        message, parser.currentLocation().offsetDescription()));
+    }
+}
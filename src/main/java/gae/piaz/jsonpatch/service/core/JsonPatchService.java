@@ -2,20 +2,52 @@ package gae.piaz.jsonpatch.service.core;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.flipkart.zjsonpatch.CompatibilityFlags;
+import com.flipkart.zjsonpatch.JsonDiff;
 import com.flipkart.zjsonpatch.JsonPatch;
 import com.flipkart.zjsonpatch.JsonPatchApplicationException;
-import java.util.List;
-import lombok.AllArgsConstructor;
+import java.util.EnumSet;
+import java.util.function.Supplier;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 @Service
-@AllArgsConstructor
 @Slf4j
 public class JsonPatchService {
 
+    /**
+     * A remove of a member that does not exist fails with a client error, as RFC 6902 and the
+     * DIRECT mode require. Without the flag zjsonpatch ignores it, as the JSON_NODE mode did
+     * before.
+     */
+    private static final EnumSet<CompatibilityFlags> PATCH_FLAGS =
+            EnumSet.of(CompatibilityFlags.FORBID_REMOVE_MISSING_OBJECT);
+
     private final ObjectMapper objectMapper;
 
+    private final JsonPatchCompiler jsonPatchCompiler;
+
+    private final BeanPatchEngine beanPatchEngine;
+
+    private final PatchMetrics patchMetrics;
+
+    @Autowired
+    public JsonPatchService(
+            ObjectMapper objectMapper,
+            JsonPatchCompiler jsonPatchCompiler,
+            PatchMetrics patchMetrics) {
+        this.objectMapper = objectMapper;
+        this.jsonPatchCompiler = jsonPatchCompiler;
+        this.beanPatchEngine = new BeanPatchEngine(objectMapper);
+        this.patchMetrics = patchMetrics;
+    }
+
+    /** Creates a service that records no metrics, e.g. for tests and benchmarks. */
+    public JsonPatchService(ObjectMapper objectMapper, JsonPatchCompiler jsonPatchCompiler) {
+        this(objectMapper, jsonPatchCompiler, PatchMetrics.NOOP);
+    }
+
     /**
      * Applies a JSON Patch to a body object. The body object is converted to a JsonNode, the patch
      * is applied, and the body is converted back to the body object. If the patch cannot be
@@ -27,14 +59,112 @@ public class JsonPatchService {
      * @throws JsonPatchServerError if the body object cannot be converted to a JsonNode or the
      *     JsonNode cannot be converted back to the body object
      */
-    public <T> T applyPatch(JsonNode patch, T target, Class<T> targetClass)
+    public <T> T applyPatch(JsonPatchDocument patch, T target, Class<T> targetClass)
             throws JsonPatchClientError, JsonPatchServerError {
+        return applyPatch(patch, target, targetClass, PatchMode.JSON_NODE);
+    }
+
+    /**
+     * Same as {@link #applyPatch(JsonPatchDocument, Object, Class)}, using the given {@link
+     * PatchMode}. Both modes produce the same update bean and throw the same errors for the same
+     * patch.
+     *
+     * <p>Only {@link PatchMode#DIRECT} runs the cached plan of the patch shape, see {@link
+     * JsonPatchCompiler}: zjsonpatch parses and validates the operations of every patch on its own,
+     * so the JsonNode flow does not look a plan up.
+     */
+    public <T> T applyPatch(JsonPatchDocument patch, T target, Class<T> targetClass, PatchMode mode)
+            throws JsonPatchClientError, JsonPatchServerError {
+
+        if (mode == PatchMode.DIRECT && targetClass.isRecord()) {
+            BoundPatch boundPatch =
+                    patchMetrics.time(
+                            "compile",
+                            targetClass,
+                            () -> jsonPatchCompiler.compile(patch, targetClass));
+            checkNotTestOnly(boundPatch.plan().testOnly());
+            patchMetrics.countOperations(patch, targetClass);
+
+            Supplier<T> engine = () -> beanPatchEngine.apply(boundPatch, target, targetClass);
+            return patchMetrics.time(
+                    "bean_patch", targetClass, () -> applyDirect(patch, targetClass, engine));
+        }
 
-        JsonNode targetNode = convertToJsonNode(target, targetClass);
+        checkNotTestOnly(patch.testOnly());
+        patchMetrics.countOperations(patch, targetClass);
 
-        JsonNode patchedNode = applyJsonPatch(patch, targetNode, targetClass);
+        JsonNode targetNode =
+                patchMetrics.time(
+                        "to_json_node", targetClass, () -> convertToJsonNode(target, targetClass));
 
-        return convertToBean(patchedNode, targetClass);
+        JsonNode patchedNode =
+                patchMetrics.time(
+                        "json_patch",
+                        targetClass,
+                        () -> applyJsonPatch(patch.toJsonNode(), targetNode, targetClass));
+
+        return patchMetrics.time(
+                "to_bean", targetClass, () -> convertToBean(patchedNode, targetClass));
+    }
+
+    /**
+     * Applies a JSON Merge Patch (RFC 7386) to a body object, using the given {@link PatchMode}. In
+     * {@link PatchMode#DIRECT} the members of the patch are written field by field to the record
+     * update bean, otherwise the patch is merged into the JsonNode of the body. Both modes produce
+     * the same update bean.
+     *
+     * @throws JsonPatchClientError if a member of the patch is not a property of the body object
+     *     and unknown properties are not ignored
+     * @throws JsonPatchServerError if the patched values cannot be converted to the body object
+     */
+    public <T> T applyMergePatch(
+            MergePatchDocument patch, T target, Class<T> targetClass, PatchMode mode)
+            throws JsonPatchClientError, JsonPatchServerError {
+
+        patchMetrics.countOperations(patch, targetClass);
+
+        if (mode == PatchMode.DIRECT && targetClass.isRecord()) {
+            Supplier<T> engine = () -> beanPatchEngine.merge(patch.patch(), target, targetClass);
+            return patchMetrics.time(
+                    "bean_patch", targetClass, () -> applyDirect(patch, targetClass, engine));
+        }
+
+        JsonNode targetNode =
+                patchMetrics.time(
+                        "to_json_node", targetClass, () -> convertToJsonNode(target, targetClass));
+
+        JsonNode patchedNode =
+                patchMetrics.time("merge_patch", targetClass, () -> patch.applyTo(targetNode));
+
+        return patchMetrics.time(
+                "to_bean", targetClass, () -> convertToBean(patchedNode, targetClass));
+    }
+
+    /**
+     * Computes the RFC 6902 patch that turns the original body object into the patched one, with
+     * zjsonpatch {@link JsonDiff}.
+     *
+     * @throws JsonPatchServerError if one of the objects cannot be converted to a JsonNode
+     */
+    public JsonNode diff(Object original, Object patched) throws JsonPatchServerError {
+        try {
+            return JsonDiff.asJson(
+                    objectMapper.valueToTree(original), objectMapper.valueToTree(patched));
+        } catch (IllegalArgumentException e) {
+            String errorMessage =
+                    String.format(
+                            "Failed to convert BEAN of type %s to JSON Node",
+                            original.getClass().getSimpleName());
+            log.error(errorMessage, e);
+            throw new JsonPatchServerError(errorMessage, e);
+        }
+    }
+
+    private static void checkNotTestOnly(boolean testOnly) {
+        if (testOnly) {
+            log.info("No operations to apply in the JSON Patch");
+            throw new JsonPatchNoOpError();
+        }
     }
 
     /**
@@ -61,14 +191,8 @@ public class JsonPatchService {
      */
     private JsonNode applyJsonPatch(JsonNode patch, JsonNode targetNode, Class<?> targetClass)
             throws JsonPatchClientError {
-
-        if (isTestOperationOnly(patch)) {
-            log.info("No operations to apply in the JSON Patch");
-            throw new JsonPatchNoOpError();
-        }
-
         try {
-            return JsonPatch.apply(patch, targetNode);
+            return JsonPatch.apply(patch, targetNode, PATCH_FLAGS);
         } catch (JsonPatchApplicationException e) {
             String errorMessage =
                     String.format(
@@ -79,10 +203,30 @@ public class JsonPatchService {
         }
     }
 
-    /** Checks if all operations in the patch are "test" operations. */
-    private boolean isTestOperationOnly(JsonNode patch) {
-        List<JsonNode> operations = patch.findValues("op");
-        return operations.stream().allMatch(jsonNode -> jsonNode.asText().equals("test"));
+    /**
+     * Applies the patch straight to the record update bean, see {@link PatchMode#DIRECT}. Errors
+     * are reported as in the JsonNode flow: invalid or failed operations are client errors, values
+     * that cannot be converted to the bean types are server errors.
+     */
+    private <T> T applyDirect(PatchDocument patch, Class<T> targetClass, Supplier<T> engine)
+            throws JsonPatchServerError {
+        try {
+            return engine.get();
+        } catch (BeanPatchException e) {
+            String errorMessage =
+                    String.format(
+                            "Failed to apply JSON Patch to BEAN of type %s. Patch: %s",
+                            targetClass.getSimpleName(), patch);
+            log.error(errorMessage, e);
+            throw new JsonPatchClientError(errorMessage, e);
+        } catch (IllegalArgumentException e) {
+            String errorMessage =
+                    String.format(
+                            "Failed to convert JSON Node to BEAN of type %s",
+                            targetClass.getSimpleName());
+            log.error(errorMessage, e);
+            throw new JsonPatchServerError(errorMessage, e);
+        }
     }
 
     /**
@@ -5,9 +5,13 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+/**
+ * Marks a JSON Patch endpoint. Only the {@link #allowedPaths()} are accepted in the operations of
+ * the request body, any other path is rejected before the endpoint is invoked.
+ */
 @Target(ElementType.METHOD)
 @Retention(RetentionPolicy.RUNTIME)
 public @interface JsonPatchUpdate {
 
-    String[] allowedPaths();
+    AllowedPath[] allowedPaths();
 }
@@ -0,0 +1,92 @@
+package gae.piaz.jsonpatch.service.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A small thread safe cache that evicts the least recently used entry once it holds more than
+ * {@code maxSize} entries. Guarded by a {@link ReentrantLock} rather than {@code synchronized}, so
+ * that a virtual thread waiting for it does not pin its carrier thread.
+ */
+public class LruCache<K, V> {
+
+    private final Map<K, V> entries;
+
+    /** Every access, gets included, reorders the entries. */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public LruCache(int maxSize) {
+        this.entries =
+                new LinkedHashMap<>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                        return size() > maxSize;
+                    }
+                };
+    }
+
+    public V get(K key) {
+        lock.lock();
+        try {
+            return entries.get(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void put(K key, V value) {
+        lock.lock();
+        try {
+            entries.put(key, value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void remove(K key) {
+        lock.lock();
+        try {
+            entries.remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Atomically replaces the value of the key with the one computed from the current value, null
+     * if absent, see {@link Map#compute}. The function runs under the lock and must be quick.
+     */
+    public V compute(K key, BiFunction<K, V, V> remapping) {
+        lock.lock();
+        try {
+            return entries.compute(key, remapping);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the cached value for the key, computing and caching it if absent. The value is
+     * computed outside the lock, so concurrent misses on the same key may compute it twice.
+     */
+    public V computeIfAbsent(K key, Function<K, V> loader) {
+        V value = get(key);
+        if (value == null) {
+            value = loader.apply(key);
+            put(key, value);
+        }
+        return value;
+    }
+}
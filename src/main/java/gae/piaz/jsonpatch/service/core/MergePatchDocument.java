@@ -0,0 +1,82 @@
+package gae.piaz.jsonpatch.service.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A JSON Merge Patch (RFC 7386) request body. Documents are built by {@link
+ * JsonPatchReader#readMergePatch}, which guarantees that the patch is a JSON object: a patch that
+ * is not an object would replace the whole update bean.
+ */
+public record MergePatchDocument(ObjectNode patch) implements PatchDocument {
+
+    @Override
+    public boolean touches(String property) {
+        return patch.has(property);
+    }
+
+    /**
+     * The JSON pointers that the patch writes: the members with a value that is not an object, and
+     * the objects without members, which are merged as a whole. Used to check the patch against the
+     * allowed paths.
+     */
+    public List<String> paths() {
+        List<String> paths = new ArrayList<>();
+        collectPaths("", patch, paths);
+        return paths;
+    }
+
+    private static void collectPaths(String prefix, JsonNode node, List<String> paths) {
+        for (Iterator<Map.Entry<String, JsonNode>> it = node.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> member = it.next();
+            String pointer = prefix + "/" + escape(member.getKey());
+            JsonNode value = member.getValue();
+            if (value.isObject() && !value.isEmpty()) {
+                collectPaths(pointer, value, paths);
+            } else {
+                paths.add(pointer);
+            }
+        }
+    }
+
+    private static String escape(String token) {
+        return token.replace("~", "~0").replace("/", "~1");
+    }
+
+    /**
+     * Applies the patch to a JsonNode as described by RFC 7386. Objects of the target are modified
+     * in place.
+     */
+    public JsonNode applyTo(JsonNode target) {
+        return merge(target, patch);
+    }
+
+    static JsonNode merge(JsonNode target, JsonNode patch) {
+        if (!patch.isObject()) {
+            return patch;
+        }
+        ObjectNode result =
+                target != null && target.isObject()
+                        ? (ObjectNode) target
+                        : JsonNodeFactory.instance.objectNode();
+        for (Iterator<Map.Entry<String, JsonNode>> it = patch.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> member = it.next();
+            if (member.getValue().isNull()) {
+                result.remove(member.getKey());
+            } else {
+                result.set(member.getKey(), merge(result.get(member.getKey()), member.getValue()));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return patch.toString();
+    }
+}
@@ -0,0 +1,14 @@
+package gae.piaz.jsonpatch.service.core;
+
+/**
+ * A PATCH request body: a JSON Patch (RFC 6902) or a JSON Merge Patch (RFC 7386) document. Both are
+ * applied to the update bean by {@link AbstractPatchService#updateEntity}.
+ */
+public sealed interface PatchDocument permits JsonPatchDocument, MergePatchDocument {
+
+    /**
+     * Whether the patch reads or writes the given top level property, or the whole document. Used
+     * to load only the associations that the patch needs.
+     */
+    boolean touches(String property);
+}
@@ -0,0 +1,10 @@
+package gae.piaz.jsonpatch.service.core;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/** The queue of the async patches is full. */
+@ResponseStatus(
+        reason = "Too many async patches queued, retry later",
+        code = HttpStatus.SERVICE_UNAVAILABLE)
+public class PatchJobRejectedException extends RuntimeException {}
@@ -0,0 +1,19 @@
+package gae.piaz.jsonpatch.service.core;
+
+/**
+ * Audit trail of the patches applied by {@link AbstractPatchService#updateEntity}. Recording is on
+ * the request path, so implementations hand the entry off and write it in the background.
+ */
+public interface PatchJournal {
+
+    /** A journal that records nothing, for services created outside of Spring. */
+    PatchJournal NOOP = (entity, patch, result, error) -> {};
+
+    /**
+     * Records a patch of the entity.
+     *
+     * @param result the result of the patch, null if it failed
+     * @param error why the patch failed, null if it was applied
+     */
+    void record(Object entity, PatchDocument patch, PatchResult<?> result, Throwable error);
+}
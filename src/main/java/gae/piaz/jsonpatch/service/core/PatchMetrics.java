@@ -0,0 +1,128 @@
+package gae.piaz.jsonpatch.service.core;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+/**
+ * Micrometer meters of the PATCH pipeline, scraped through the actuator {@code /metrics} endpoint:
+ *
+ * <ul>
+ *   <li>{@code jsonpatch.stage}: a timer with percentile histogram per stage of the pipeline, e.g.
+ *       load, map_to_bean, apply, update_fields, save, map_to_dto, tagged with the stage, the
+ *       entity and the outcome: success, no_op, client_error, server_error or error;
+ *   <li>{@code jsonpatch.operations}: a counter of the applied JSON Patch operations, tagged with
+ *       the op and the entity.
+ * </ul>
+ *
+ * The entity tag is the simple name of the entity or update bean class, without the Entity and
+ * UpdateBean suffixes, so that all the stages of a book patch are tagged "Book".
+ */
+@Component
+public class PatchMetrics {
+
+    /**
+     * Metrics that are not recorded anywhere, for services created outside of Spring. The stages
+     * run without building any meter, so that benchmarks measure the pipeline alone.
+     */
+    public static final PatchMetrics NOOP = new PatchMetrics(null);
+
+    private static final ClassValue<String> ENTITY_NAMES =
+            new ClassValue<>() {
+                @Override
+                protected String computeValue(Class<?> type) {
+                    String name = type.getSimpleName();
+                    name = strip(name, "UpdateBean");
+                    return strip(name, "Entity");
+                }
+            };
+
+    private final MeterRegistry registry;
+
+    public PatchMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Runs a stage of the pipeline and records its duration and outcome.
+     *
+     * @param type the entity or update bean class the stage works on
+     */
+    public <T, E extends Throwable> T time(String stage, Class<?> type, Stage<T, E> body) throws E {
+        if (registry == null) {
+            return body.run();
+        }
+        Timer.Sample sample = Timer.start(registry);
+        String outcome = "error";
+        try {
+            T result = body.run();
+            outcome = "success";
+            return result;
+        } catch (Throwable e) {
+            outcome = outcome(e);
+            throw e;
+        } finally {
+            sample.stop(
+                    Timer.builder("jsonpatch.stage")
+                            .description("Duration of a stage of the PATCH pipeline")
+                            .tag("stage", stage)
+                            .tag("entity", ENTITY_NAMES.get(type))
+                            .tag("outcome", outcome)
+                            .publishPercentileHistogram()
+                            .register(registry));
+        }
+    }
+
+    /**
+     * Counts the operations of a patch applied to the given update bean class. A JSON Merge Patch
+     * counts as a single "merge" operation.
+     */
+    public void countOperations(PatchDocument patch, Class<?> type) {
+        if (registry == null) {
+            return;
+        }
+        switch (patch) {
+            case JsonPatchDocument jsonPatch -> {
+                for (PatchOperation operation : jsonPatch.operations()) {
+                    countOperation(operation.type().jsonName(), type);
+                }
+            }
+            case MergePatchDocument mergePatch -> countOperation("merge", type);
+        }
+    }
+
+    private void countOperation(String op, Class<?> type) {
+        Counter.builder("jsonpatch.operations")
+                .description("JSON Patch operations applied")
+                .tag("op", op)
+                .tag("entity", ENTITY_NAMES.get(type))
+                .register(registry)
+                .increment();
+    }
+
+    private static String outcome(Throwable e) {
+        if (e instanceof JsonPatchNoOpError) {
+            return "no_op";
+        }
+        if (e instanceof JsonPatchClientError) {
+            return "client_error";
+        }
+        if (e instanceof JsonPatchServerError) {
+            return "server_error";
+        }
+        return "error";
+    }
+
+    private static String strip(String name, String suffix) {
+        return name.endsWith(suffix) && name.length() > suffix.length()
+                ? name.substring(0, name.length() - suffix.length())
+                : name;
+    }
+
+    /** A stage of the pipeline, which may throw a checked exception. */
+    @FunctionalInterface
+    public interface Stage<T, E extends Throwable> {
+        T run() throws E;
+    }
+}
@@ -0,0 +1,18 @@
+package gae.piaz.jsonpatch.service.core;
+
+/** Strategy used by {@link JsonPatchService} to apply a JSON Patch to an update bean. */
+public enum PatchMode {
+
+    /**
+     * The update bean is converted to a JsonNode, patched with zjsonpatch and converted back to a
+     * new update bean.
+     */
+    JSON_NODE,
+
+    /**
+     * The patch operations are applied directly to the record update bean through cached accessors,
+     * only the values carried by the patch are converted. Falls back to {@link #JSON_NODE} for
+     * update beans that are not records.
+     */
+    DIRECT
+}
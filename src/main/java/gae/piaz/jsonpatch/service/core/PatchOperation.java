@@ -0,0 +1,13 @@
+package gae.piaz.jsonpatch.service.core;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * A single operation of a {@link JsonPatchDocument}.
+ *
+ * @param type the operation type
+ * @param path the "path" JSON pointer
+ * @param from the "from" JSON pointer, null unless the operation is a move or a copy
+ * @param value the "value" member, null unless the operation is an add, a replace or a test
+ */
+public record PatchOperation(PatchOperationType type, String path, String from, JsonNode value) {}
@@ -0,0 +1,41 @@
+package gae.piaz.jsonpatch.service.core;
+
+/** The operations defined by RFC 6902, with the name used in the "op" member of a JSON Patch. */
+public enum PatchOperationType {
+    ADD("add"),
+    REMOVE("remove"),
+    REPLACE("replace"),
+    MOVE("move"),
+    COPY("copy"),
+    TEST("test");
+
+    private final String jsonName;
+
+    PatchOperationType(String jsonName) {
+        this.jsonName = jsonName;
+    }
+
+    public String jsonName() {
+        return jsonName;
+    }
+
+    /** Whether the operation carries a "value" member. */
+    public boolean hasValue() {
+        return this == ADD || this == REPLACE || this == TEST;
+    }
+
+    /** Whether the operation carries a "from" member. */
+    public boolean hasFrom() {
+        return this == MOVE || this == COPY;
+    }
+
+    /** Returns the operation with the given "op" name, or null if there is none. */
+    public static PatchOperationType fromJsonName(String name) {
+        for (PatchOperationType type : values()) {
+            if (type.jsonName.equals(name)) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
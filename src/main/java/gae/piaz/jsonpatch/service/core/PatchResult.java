@@ -0,0 +1,12 @@
+package gae.piaz.jsonpatch.service.core;
+
+/**
+ * The result of {@link AbstractPatchService#updateEntity}.
+ *
+ * @param entity the patched entity
+ * @param updated false when the patch left every field of the entity unchanged, in which case there
+ *     is nothing to save
+ * @param original the update bean mapped from the entity, before the patch
+ * @param patched the update bean after the patch, see {@link AbstractPatchService#diff}
+ */
+public record PatchResult<EN>(EN entity, boolean updated, Object original, Object patched) {}
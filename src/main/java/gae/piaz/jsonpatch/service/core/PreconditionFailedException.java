@@ -0,0 +1,8 @@
+package gae.piaz.jsonpatch.service.core;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/** The entity was modified since the version the client sent in If-Match. */
+@ResponseStatus(reason = "Entity version does not match", code = HttpStatus.PRECONDITION_FAILED)
+public class PreconditionFailedException extends RuntimeException {}
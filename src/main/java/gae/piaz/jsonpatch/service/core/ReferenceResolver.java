@@ -0,0 +1,91 @@
+package gae.piaz.jsonpatch.service.core;
+
+import jakarta.persistence.Cache;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.metamodel.EntityType;
+import java.util.Collection;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Resolves the foreign keys written by a patch, e.g. {@code replace /author/id}, into entity
+ * references.
+ *
+ * <p>An id is checked for existence the first time it is seen, by loading the entity, so that the
+ * DTO built after the patch reads its state from the persistence context. Ids known to exist are
+ * kept in a small LRU cache. They are loaded from the second level cache when it holds the entity,
+ * so that the DTO reads its state without initializing a proxy, and resolved with {@link
+ * EntityManager#getReference} otherwise, which returns the loaded entity when there is one and a
+ * proxy that is only loaded if the DTO is built. Cached ids are only evicted by size, so the
+ * referenced entities are assumed not to be deleted while the application runs.
+ *
+ * @param <EN> Entity type, with an Integer id
+ */
+@Slf4j
+public abstract class ReferenceResolver<EN> {
+
+    private final EntityManager entityManager;
+    private final Cache entityCache;
+    private final Class<EN> entityClass;
+    private final String batchQuery;
+    private final LruCache<Integer, Boolean> existingIds;
+
+    protected ReferenceResolver(EntityManager entityManager, Class<EN> entityClass, int cacheSize) {
+        this.entityManager = entityManager;
+        this.entityCache = entityManager.getEntityManagerFactory().getCache();
+        this.entityClass = entityClass;
+        EntityType<EN> entityType = entityManager.getMetamodel().entity(entityClass);
+        this.batchQuery =
+                String.format(
+                        "select e from %s e where e.%s in :ids",
+                        entityType.getName(), entityType.getId(Integer.class).getName());
+        this.existingIds = new LruCache<>(cacheSize);
+    }
+
+    /**
+     * Returns a reference to the entity with the given id.
+     *
+     * @throws JsonPatchClientError if there is no entity with this id
+     */
+    public EN resolve(Integer id) {
+        if (id == null) {
+            throw new JsonPatchClientError(entityClass.getSimpleName() + " id is required");
+        }
+        if (existingIds.get(id) != null && !entityCache.contains(entityClass, id)) {
+            return entityManager.getReference(entityClass, id);
+        }
+        EN entity = entityManager.find(entityClass, id);
+        if (entity == null) {
+            throw new JsonPatchClientError(
+                    String.format("%s %d does not exist", entityClass.getSimpleName(), id));
+        }
+        existingIds.put(id, Boolean.TRUE);
+        return entity;
+    }
+
+    /**
+     * Loads the entities with the given ids in a single query, so that the following {@link
+     * #resolve} calls for these ids need no round trip. Used when many patches point at the same
+     * entities, e.g. in bulk requests. Must be called within a transaction.
+     */
+    public void prefetch(Collection<Integer> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        List<EN> entities =
+                entityManager
+                        .createQuery(batchQuery, entityClass)
+                        .setParameter("ids", ids)
+                        .getResultList();
+        for (EN entity : entities) {
+            existingIds.put(idOf(entity), Boolean.TRUE);
+        }
+        log.debug(
+                "Prefetched {} of {} {} references",
+                entities.size(),
+                ids.size(),
+                entityClass.getSimpleName());
+    }
+
+    protected abstract Integer idOf(EN entity);
+}
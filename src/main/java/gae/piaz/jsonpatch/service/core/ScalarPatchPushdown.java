@@ -0,0 +1,249 @@
+package gae.piaz.jsonpatch.service.core;
+
+import jakarta.persistence.Cache;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.metamodel.Attribute;
+import jakarta.persistence.metamodel.EntityType;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.StringJoiner;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.metamodel.mapping.BasicValuedModelPart;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.query.NativeQuery;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Applies the simplest JSON Patches with a single UPDATE statement, without loading the entity: the
+ * patches that replace String columns of the entity, e.g. {@code /title}, optionally after {@code
+ * test} operations on the same columns. Such a patch is compiled into
+ *
+ * <pre>
+ * update books set title = :v1, version = version + 1
+ *  where id = :id and title = :v0 and (title &lt;&gt; :v1 or title is null)
+ * </pre>
+ *
+ * where the leading tests become predicates, and the last one skips the patches that change
+ * nothing, so that the version is only incremented by an actual change. With an If-Match version
+ * the statement also requires {@code version = :version}. Statements are cached by the op/path
+ * skeleton of the patch, like the plans of {@link JsonPatchCompiler}; table and column names come
+ * from the Hibernate mapping of the entity.
+ *
+ * <p>Any other patch, a value that is not a string, or a statement that updates no row is left to
+ * {@link AbstractPatchService}: loading the entity then tells a missing entity, a failed test, a
+ * version mismatch and a patch without effect apart, with the usual errors.
+ *
+ * <p>The statement is native SQL synchronized with no entity table: an HQL bulk update, or a native
+ * one on the table of the entity, would empty its whole second level cache region. The updated
+ * entity alone is evicted instead, before the statement and again once the transaction completes,
+ * as Hibernate does for the region.
+ *
+ * @param <EN> Entity type, with an Integer id and an Integer version
+ */
+@Slf4j
+public class ScalarPatchPushdown<EN> {
+
+    /** Declared by the statements, it matches no entity table so no cache region is emptied. */
+    private static final String QUERY_SPACE = "jsonpatch_pushdown";
+
+    private final EntityManager entityManager;
+    private final Cache cache;
+    private final Class<EN> entityClass;
+    private final String entityName;
+    private final String tableName;
+    private final String idColumn;
+    private final String versionColumn;
+
+    /** The column of each JSON pointer that can be pushed down, e.g. /title to title. */
+    private final Map<String, String> attributes = new LinkedHashMap<>();
+
+    private final PatchMetrics patchMetrics;
+
+    /** The statement of each patch skeleton, empty for the patches that are not pushed down. */
+    private final LruCache<List<JsonPatchDocument.Step>, Optional<Statement>> statements;
+
+    /**
+     * @param attributes the String attributes of the entity that patches can replace in place
+     * @throws IllegalArgumentException if an attribute is not a String column of the entity
+     */
+    public ScalarPatchPushdown(
+            EntityManager entityManager,
+            Class<EN> entityClass,
+            Set<String> attributes,
+            int cacheSize,
+            PatchMetrics patchMetrics) {
+        this.entityManager = entityManager;
+        this.cache = entityManager.getEntityManagerFactory().getCache();
+        this.entityClass = entityClass;
+        EntityType<EN> entityType = entityManager.getMetamodel().entity(entityClass);
+        this.entityName = entityType.getName();
+        // both checked to be Integer attributes
+        entityType.getId(Integer.class);
+        entityType.getVersion(Integer.class);
+        EntityPersister persister =
+                entityManager
+                        .getEntityManagerFactory()
+                        .unwrap(SessionFactoryImplementor.class)
+                        .getMappingMetamodel()
+                        .getEntityDescriptor(entityClass);
+        this.tableName = persister.getIdentifierTableDetails().getTableName();
+        this.idColumn = column(persister.getIdentifierMapping());
+        this.versionColumn = column(persister.getVersionMapping().getVersionAttribute());
+        for (String name : attributes) {
+            Attribute<? super EN, ?> attribute = entityType.getAttribute(name);
+            if (attribute.getPersistentAttributeType() != Attribute.PersistentAttributeType.BASIC
+                    || attribute.getJavaType() != String.class) {
+                throw new IllegalArgumentException(
+                        entityName + "." + name + " is not a String column");
+            }
+            this.attributes.put("/" + name, column(persister.findAttributeMapping(name)));
+        }
+        this.patchMetrics = patchMetrics;
+        this.statements = new LruCache<>(cacheSize);
+    }
+
+    private static String column(Object mapping) {
+        return ((BasicValuedModelPart) mapping).getSelectionExpression();
+    }
+
+    /**
+     * Applies the patch to the entity with the given id with a single UPDATE statement, if it can.
+     * Must be called within a transaction.
+     *
+     * @param expectedVersion the version required by the If-Match header, null for none
+     * @return true if the entity was updated, false if the patch has to be applied to the loaded
+     *     entity instead: it cannot be pushed down, or the statement updated no row
+     */
+    public boolean update(Integer id, JsonPatchDocument patch, Integer expectedVersion) {
+        for (PatchOperation operation : patch.operations()) {
+            if (operation.value() == null || !operation.value().isTextual()) {
+                return false;
+            }
+        }
+        List<JsonPatchDocument.Step> skeleton = patch.skeleton();
+        Optional<Statement> statement = statements.get(skeleton);
+        if (statement == null) {
+            statement = compile(patch);
+            statements.put(skeleton, statement);
+            log.debug("Compiled {} pushdown: {}", entityName, statement.map(Statement::sql));
+        }
+        if (statement.isEmpty()) {
+            return false;
+        }
+
+        NativeQuery<?> query =
+                entityManager
+                        .createNativeQuery(
+                                expectedVersion == null
+                                        ? statement.get().sql()
+                                        : statement.get().versionedSql())
+                        .unwrap(NativeQuery.class);
+        query.addSynchronizedQuerySpace(QUERY_SPACE);
+        query.setParameter("id", id);
+        for (int index : statement.get().parameters()) {
+            query.setParameter("v" + index, patch.operations().get(index).value().textValue());
+        }
+        if (expectedVersion != null) {
+            query.setParameter("version", expectedVersion);
+        }
+        evict(id);
+        int rows = patchMetrics.time("pushdown", entityClass, query::executeUpdate);
+        if (rows == 0) {
+            return false;
+        }
+        patchMetrics.countOperations(patch, entityClass);
+        return true;
+    }
+
+    /**
+     * Evicts the entity from the second level cache now and after the transaction: a concurrent
+     * transaction may cache the row it read before the update committed.
+     */
+    private void evict(Integer id) {
+        cache.evict(entityClass, id);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(
+                    new TransactionSynchronization() {
+                        @Override
+                        public void afterCompletion(int status) {
+                            cache.evict(entityClass, id);
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Compiles the statement of the patch: leading tests and then replaces, all on the pushed down
+     * attributes and with at least one replace. A later replace of an attribute wins.
+     */
+    private Optional<Statement> compile(JsonPatchDocument patch) {
+        List<String> predicates = new ArrayList<>();
+        Map<String, Integer> assignments = new LinkedHashMap<>();
+        List<Integer> parameters = new ArrayList<>();
+        for (int i = 0; i < patch.operations().size(); i++) {
+            PatchOperation operation = patch.operations().get(i);
+            String column = attributes.get(operation.path());
+            if (column == null) {
+                return Optional.empty();
+            }
+            switch (operation.type()) {
+                case TEST -> {
+                    // a test after a replace would read the patched value
+                    if (!assignments.isEmpty()) {
+                        return Optional.empty();
+                    }
+                    predicates.add(column + " = :v" + i);
+                    parameters.add(i);
+                }
+                case REPLACE -> assignments.put(column, i);
+                default -> {
+                    return Optional.empty();
+                }
+            }
+        }
+        if (assignments.isEmpty()) {
+            return Optional.empty();
+        }
+
+        StringJoiner set = new StringJoiner(", ");
+        StringJoiner changed = new StringJoiner(" or ", "(", ")");
+        assignments.forEach(
+                (column, index) -> {
+                    set.add(column + " = :v" + index);
+                    // the values are strings, never null
+                    changed.add(column + " <> :v" + index + " or " + column + " is null");
+                    parameters.add(index);
+                });
+        set.add(versionColumn + " = " + versionColumn + " + 1");
+        StringBuilder sql =
+                new StringBuilder("update ")
+                        .append(tableName)
+                        .append(" set ")
+                        .append(set)
+                        .append(" where ")
+                        .append(idColumn)
+                        .append(" = :id");
+        for (String predicate : predicates) {
+            sql.append(" and ").append(predicate);
+        }
+        sql.append(" and ").append(changed);
+        return Optional.of(
+                new Statement(
+                        sql.toString(),
+                        sql + " and " + versionColumn + " = :version",
+                        parameters.stream().mapToInt(Integer::intValue).toArray()));
+    }
+
+    /**
+     * @param sql the statement without version check
+     * @param versionedSql the statement that also requires the If-Match version
+     * @param parameters the indexes of the operations whose values are bound, as :v{index}
+     */
+    private record Statement(String sql, String versionedSql, int[] parameters) {}
+}
@@ -0,0 +1,10 @@
+package gae.piaz.jsonpatch.service.core;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/** A bulk request holds more patches than jsonpatch.bulk.max-items, found while it is read. */
+@ResponseStatus(
+        reason = "Too many patches in the bulk request",
+        code = HttpStatus.PAYLOAD_TOO_LARGE)
+public class TooManyBulkPatchesException extends RuntimeException {}
@@ -0,0 +1,10 @@
+package gae.piaz.jsonpatch.service.core;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/** Every admission slot is taken and the wait queue is full. */
+@ResponseStatus(
+        reason = "Too many patches in progress, retry later",
+        code = HttpStatus.TOO_MANY_REQUESTS)
+public class TooManyPatchesException extends RuntimeException {}
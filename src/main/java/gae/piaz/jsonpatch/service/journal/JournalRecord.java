@@ -0,0 +1,47 @@
+package gae.piaz.jsonpatch.service.journal;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.time.Instant;
+
+/**
+ * An entry of the patch journal, written by {@link MappedPatchJournal} as a JSON frame.
+ *
+ * @param sequence the position of the entry in the journal, incremented by one per entry
+ * @param entity the name of the patched entity class, e.g. BookEntity
+ * @param id the id of the patched entity
+ * @param type the media type of the patch, JSON Patch or JSON Merge Patch
+ * @param state the update bean after the patch, null if the patch failed
+ * @param error the message of the failure, null unless the outcome is FAILED
+ */
+public record JournalRecord(
+        long sequence,
+        Instant timestamp,
+        String entity,
+        JsonNode id,
+        String type,
+        JsonNode patch,
+        Outcome outcome,
+        JsonNode state,
+        String error) {
+
+    public JournalRecord {
+        // a JSON null is read as a NullNode
+        state = state == null || state.isNull() ? null : state;
+    }
+
+    public enum Outcome {
+        /** The patch changed the entity, and the transaction committed. */
+        UPDATED,
+        /** The patch left every field of the entity unchanged. */
+        UNCHANGED,
+        /** The patch could not be applied. */
+        FAILED,
+        /** The patch was applied, but the transaction rolled back. */
+        ROLLED_BACK;
+
+        /** Whether the state of the entry is the committed state of the entity. */
+        public boolean committed() {
+            return this == UPDATED || this == UNCHANGED;
+        }
+    }
+}
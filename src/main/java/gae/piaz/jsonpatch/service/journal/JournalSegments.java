@@ -0,0 +1,50 @@
+package gae.piaz.jsonpatch.service.journal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Layout of the journal files. A segment is named after the sequence of its first entry, zero
+ * padded so that the names sort in sequence order. It holds frames made of the length of the
+ * payload, its CRC32C and the JSON payload; the unwritten tail of a segment is zeroed, so a zero
+ * length ends the frames.
+ */
+final class JournalSegments {
+
+    static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+    private static final String SUFFIX = ".journal";
+
+    private JournalSegments() {}
+
+    static Path path(Path directory, long firstSequence) {
+        return directory.resolve(String.format("%020d%s", firstSequence, SUFFIX));
+    }
+
+    static long firstSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    /** The segments of the journal, in sequence order. */
+    static List<Path> list(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    static int checksum(byte[] payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,296 @@
+package gae.piaz.jsonpatch.service.journal;
+
+import static gae.piaz.jsonpatch.config.Constants.APPLICATION_JSON_PATCH_VALUE;
+import static gae.piaz.jsonpatch.config.Constants.APPLICATION_MERGE_PATCH_VALUE;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gae.piaz.jsonpatch.service.core.JsonPatchDocument;
+import gae.piaz.jsonpatch.service.core.JsonPatchNoOpError;
+import gae.piaz.jsonpatch.service.core.MergePatchDocument;
+import gae.piaz.jsonpatch.service.core.PatchDocument;
+import gae.piaz.jsonpatch.service.core.PatchJournal;
+import gae.piaz.jsonpatch.service.core.PatchResult;
+import gae.piaz.jsonpatch.service.journal.JournalRecord.Outcome;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.PersistenceUnitUtil;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Append-only {@link PatchJournal} in memory-mapped segment files, see {@link JournalSegments} for
+ * the layout and {@link PatchJournalReader} to read it back.
+ *
+ * <p>Request threads only resolve the id of the entity and hand the entry off through a lock-free
+ * queue; inside a transaction the handoff waits for its completion, so that a rolled back patch is
+ * journaled as such. A single writer thread serializes the entries, appends them to the mapped
+ * segment, rolls to a new segment when it is full and forces the segment to disk at most once per
+ * {@code force-interval} while idle. When {@code queue-capacity} entries are waiting, new entries
+ * are dropped and counted by the {@code jsonpatch.journal.dropped} counter rather than slowing the
+ * requests down. Once a roll leaves more than {@code max-segments} segments, the oldest ones are
+ * deleted.
+ *
+ * <p>The directory is locked, so that only one application writes a journal: instances running on
+ * the same host need a directory each. Disabled by default, {@code jsonpatch.journal.directory} has
+ * to be set when it is enabled.
+ */
+@Component
+@ConditionalOnProperty(name = "jsonpatch.journal.enabled", havingValue = "true")
+@Slf4j
+public class MappedPatchJournal implements PatchJournal {
+
+    private final ObjectMapper objectMapper;
+    private final PersistenceUnitUtil persistenceUnitUtil;
+    private final Path directory;
+    private final long segmentSize;
+    private final int maxSegments;
+    private final int queueCapacity;
+    private final long forceIntervalNanos;
+
+    private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Counter dropped;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    // owned by the writer thread
+    private long sequence;
+    private MappedByteBuffer segment;
+    private boolean dirty;
+
+    public MappedPatchJournal(
+            ObjectMapper objectMapper,
+            EntityManagerFactory entityManagerFactory,
+            MeterRegistry registry,
+            @Value("${jsonpatch.journal.directory}") Path directory,
+            @Value("${jsonpatch.journal.segment-size:64MB}") DataSize segmentSize,
+            @Value("${jsonpatch.journal.max-segments:16}") int maxSegments,
+            @Value("${jsonpatch.journal.queue-capacity:10000}") int queueCapacity,
+            @Value("${jsonpatch.journal.force-interval:1s}") Duration forceInterval)
+            throws IOException {
+        if (directory.toString().isEmpty()) {
+            throw new IllegalStateException(
+                    "jsonpatch.journal.directory must be set to enable the journal");
+        }
+        this.objectMapper = objectMapper;
+        this.persistenceUnitUtil = entityManagerFactory.getPersistenceUnitUtil();
+        this.directory = directory;
+        this.segmentSize = segmentSize.toBytes();
+        this.maxSegments = maxSegments;
+        this.queueCapacity = queueCapacity;
+        this.forceIntervalNanos = forceInterval.toNanos();
+        this.dropped =
+                Counter.builder("jsonpatch.journal.dropped")
+                        .description("Patches not journaled because the queue was full")
+                        .register(registry);
+        registry.gauge("jsonpatch.journal.queued", queued);
+
+        Files.createDirectories(directory);
+        this.lockChannel =
+                FileChannel.open(
+                        directory.resolve("journal.lock"),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE);
+        this.lock = lockChannel.tryLock();
+        if (lock == null) {
+            lockChannel.close();
+            throw new IllegalStateException("Patch journal " + directory + " is already in use");
+        }
+        this.sequence = reader().nextSequence();
+        log.info("Patch journal {} opened at sequence {}", directory, sequence);
+        this.writer = Thread.ofPlatform().name("patch-journal-writer").daemon().start(this::run);
+    }
+
+    /** A reader of this journal, which sees the entries written so far. */
+    public PatchJournalReader reader() {
+        return new PatchJournalReader(directory, objectMapper);
+    }
+
+    @Override
+    public void record(Object entity, PatchDocument patch, PatchResult<?> result, Throwable error) {
+        Entry entry =
+                new Entry(
+                        Instant.now(),
+                        Hibernate.getClass(entity).getSimpleName(),
+                        persistenceUnitUtil.getIdentifier(entity),
+                        patch,
+                        outcome(result, error),
+                        result == null ? null : result.patched(),
+                        error == null ? null : error.getMessage());
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            enqueue(entry);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        enqueue(status == STATUS_COMMITTED ? entry : entry.rolledBack());
+                    }
+                });
+    }
+
+    private static Outcome outcome(PatchResult<?> result, Throwable error) {
+        if (error != null) {
+            return error instanceof JsonPatchNoOpError ? Outcome.UNCHANGED : Outcome.FAILED;
+        }
+        return result.updated() ? Outcome.UPDATED : Outcome.UNCHANGED;
+    }
+
+    private void enqueue(Entry entry) {
+        if (!running || queued.incrementAndGet() > queueCapacity) {
+            queued.decrementAndGet();
+            dropped.increment();
+            return;
+        }
+        queue.offer(entry);
+        LockSupport.unpark(writer);
+    }
+
+    private void run() {
+        long lastForce = System.nanoTime();
+        while (running || !queue.isEmpty()) {
+            Entry entry = queue.poll();
+            if (entry == null) {
+                if (dirty && System.nanoTime() - lastForce >= forceIntervalNanos) {
+                    segment.force();
+                    dirty = false;
+                    lastForce = System.nanoTime();
+                }
+                LockSupport.parkNanos(this, forceIntervalNanos);
+                continue;
+            }
+            queued.decrementAndGet();
+            try {
+                write(entry);
+            } catch (IOException | RuntimeException e) {
+                log.error("Cannot journal the patch of {} {}", entry.entity(), entry.id(), e);
+            }
+        }
+        if (segment != null) {
+            segment.force();
+        }
+    }
+
+    private void write(Entry entry) throws IOException {
+        byte[] payload = objectMapper.writeValueAsBytes(entry.toRecord(sequence, objectMapper));
+        int frameSize = JournalSegments.HEADER_SIZE + payload.length;
+        if (segment == null || segment.remaining() < frameSize) {
+            roll(Math.max(segmentSize, frameSize));
+        }
+        // the length is written last, a reader never sees a frame without its payload
+        int position = segment.position();
+        segment.put(position + JournalSegments.HEADER_SIZE, payload);
+        segment.putInt(position + Integer.BYTES, JournalSegments.checksum(payload));
+        segment.putInt(position, payload.length);
+        segment.position(position + frameSize);
+        sequence++;
+        dirty = true;
+    }
+
+    /**
+     * Maps a new segment starting at the next entry, reusing an empty one left by a crash, then
+     * deletes the oldest segments over {@code max-segments}.
+     */
+    private void roll(long size) throws IOException {
+        if (segment != null) {
+            segment.force();
+        }
+        Path path = JournalSegments.path(directory, sequence);
+        try (FileChannel channel =
+                FileChannel.open(
+                        path,
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.READ,
+                        StandardOpenOption.WRITE)) {
+            segment = channel.map(MapMode.READ_WRITE, 0, size);
+        }
+        log.debug("Patch journal rolled to {}", path);
+
+        List<Path> segments = JournalSegments.list(directory);
+        for (Path old : segments.subList(0, Math.max(0, segments.size() - maxSegments))) {
+            Files.delete(old);
+            log.debug("Patch journal segment {} deleted", old);
+        }
+    }
+
+    /** Writes the queued entries, then releases the directory. */
+    @PreDestroy
+    public void close() throws IOException, InterruptedException {
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join();
+        lock.release();
+        lockChannel.close();
+    }
+
+    /** A patch handed off to the writer; the beans are immutable and serialized by the writer. */
+    private record Entry(
+            Instant timestamp,
+            String entity,
+            Object id,
+            PatchDocument patch,
+            Outcome outcome,
+            Object state,
+            String error) {
+
+        Entry rolledBack() {
+            if (outcome == Outcome.FAILED) {
+                return this;
+            }
+            return new Entry(timestamp, entity, id, patch, Outcome.ROLLED_BACK, state, error);
+        }
+
+        JournalRecord toRecord(long sequence, ObjectMapper objectMapper) {
+            JsonNode patchNode;
+            String type;
+            switch (patch) {
+                case JsonPatchDocument jsonPatch -> {
+                    patchNode = jsonPatch.toJsonNode();
+                    type = APPLICATION_JSON_PATCH_VALUE;
+                }
+                case MergePatchDocument mergePatch -> {
+                    patchNode = mergePatch.patch();
+                    type = APPLICATION_MERGE_PATCH_VALUE;
+                }
+            }
+            return new JournalRecord(
+                    sequence,
+                    timestamp,
+                    entity,
+                    objectMapper.valueToTree(id),
+                    type,
+                    patchNode,
+                    outcome,
+                    state == null ? null : objectMapper.valueToTree(state),
+                    error);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package gae.piaz.jsonpatch.service.journal;
+
+import static gae.piaz.jsonpatch.config.Constants.APPLICATION_MERGE_PATCH_VALUE;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gae.piaz.jsonpatch.service.core.JsonPatchDocument;
+import gae.piaz.jsonpatch.service.core.JsonPatchLimits;
+import gae.piaz.jsonpatch.service.core.JsonPatchReader;
+import gae.piaz.jsonpatch.service.core.JsonPatchServerError;
+import gae.piaz.jsonpatch.service.core.JsonPatchService;
+import gae.piaz.jsonpatch.service.core.MergePatchDocument;
+import gae.piaz.jsonpatch.service.core.PatchDocument;
+import gae.piaz.jsonpatch.service.core.PatchMode;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Reads the journal written by {@link MappedPatchJournal}, e.g. to rebuild the state of the
+ * entities or to re-run their patches while debugging. Segments are mapped read only and read up to
+ * the last complete frame, so the journal can be read while it is written; a frame torn by a crash
+ * fails its checksum and ends its segment. Only the segments kept by the {@code max-segments}
+ * retention are read.
+ */
+@RequiredArgsConstructor
+public class PatchJournalReader {
+
+    /** The patches were checked against the limits when they were received. */
+    private static final JsonPatchReader PATCH_READER =
+            new JsonPatchReader(
+                    new JsonPatchLimits(Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE));
+
+    private final Path directory;
+    private final ObjectMapper objectMapper;
+
+    /** Calls the consumer with the entries from the sequence on, in sequence order. */
+    public void replay(long fromSequence, Consumer<JournalRecord> consumer) throws IOException {
+        List<Path> segments = JournalSegments.list(directory);
+        for (int i = 0; i < segments.size(); i++) {
+            boolean before =
+                    i + 1 < segments.size()
+                            && JournalSegments.firstSequence(segments.get(i + 1)) <= fromSequence;
+            if (!before) {
+                read(
+                        segments.get(i),
+                        record -> {
+                            if (record.sequence() >= fromSequence) {
+                                consumer.accept(record);
+                            }
+                        });
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the committed state of the entities of the type from their last patch: the update
+     * bean after the patch, by entity id. Entities that were never patched are not in the map.
+     *
+     * @param entity the name of the entity class, e.g. BookEntity
+     */
+    public Map<JsonNode, JsonNode> rebuild(String entity) throws IOException {
+        Map<JsonNode, JsonNode> states = new LinkedHashMap<>();
+        replay(
+                0,
+                record -> {
+                    if (record.entity().equals(entity) && record.outcome().committed()) {
+                        states.put(record.id(), record.state());
+                    }
+                });
+        return states;
+    }
+
+    /** The committed patches of an entity, in the order they were applied. */
+    public List<PatchDocument> patches(String entity, Object id) throws IOException {
+        JsonNode idNode = objectMapper.valueToTree(id);
+        List<PatchDocument> patches = new ArrayList<>();
+        IOException[] error = {null};
+        replay(
+                0,
+                record -> {
+                    if (error[0] == null
+                            && record.entity().equals(entity)
+                            && record.id().equals(idNode)
+                            && record.outcome().committed()) {
+                        try {
+                            patches.add(patch(record));
+                        } catch (IOException e) {
+                            error[0] = e;
+                        }
+                    }
+                });
+        if (error[0] != null) {
+            throw error[0];
+        }
+        return patches;
+    }
+
+    /**
+     * Re-runs the committed patches of an entity on an update bean, e.g. the bean of the entity
+     * before its first patch, and returns the patched bean.
+     *
+     * @throws JsonPatchServerError if a patch cannot be applied to the update bean
+     */
+    public <T> T rerun(
+            String entity,
+            Object id,
+            T bean,
+            Class<T> beanClass,
+            JsonPatchService jsonPatchService,
+            PatchMode mode)
+            throws IOException, JsonPatchServerError {
+        T patched = bean;
+        for (PatchDocument patch : patches(entity, id)) {
+            patched =
+                    switch (patch) {
+                        case JsonPatchDocument jsonPatch ->
+                                jsonPatchService.applyPatch(jsonPatch, patched, beanClass, mode);
+                        case MergePatchDocument mergePatch ->
+                                jsonPatchService.applyMergePatch(
+                                        mergePatch, patched, beanClass, mode);
+                    };
+        }
+        return patched;
+    }
+
+    /** The patch document of the entry. */
+    public PatchDocument patch(JournalRecord record) throws IOException {
+        try (JsonParser parser = objectMapper.treeAsTokens(record.patch())) {
+            return APPLICATION_MERGE_PATCH_VALUE.equals(record.type())
+                    ? PATCH_READER.readMergePatch(parser)
+                    : PATCH_READER.read(parser);
+        }
+    }
+
+    /** The sequence of the next entry to write: the one after the last entry, 0 if none. */
+    long nextSequence() throws IOException {
+        List<Path> segments = JournalSegments.list(directory);
+        if (segments.isEmpty()) {
+            return 0;
+        }
+        Path last = segments.getLast();
+        long[] next = {JournalSegments.firstSequence(last)};
+        read(last, record -> next[0] = record.sequence() + 1);
+        return next[0];
+    }
+
+    private void read(Path segment, Consumer<JournalRecord> consumer) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            // deleted by the retention since it was listed
+            return;
+        }
+        int position = 0;
+        while (buffer.limit() - position >= JournalSegments.HEADER_SIZE) {
+            int length = buffer.getInt(position);
+            int payloadStart = position + JournalSegments.HEADER_SIZE;
+            if (length <= 0 || length > buffer.limit() - payloadStart) {
+                return;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payloadStart, payload);
+            if (JournalSegments.checksum(payload) != buffer.getInt(position + Integer.BYTES)) {
+                return;
+            }
+            consumer.accept(objectMapper.readValue(payload, JournalRecord.class));
+            position = payloadStart + length;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package gae.piaz.jsonpatch.service.patch;
+
+import gae.piaz.jsonpatch.domain.AuthorEntity;
+import gae.piaz.jsonpatch.service.core.ReferenceResolver;
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+@Component
+public class AuthorReferenceResolver extends ReferenceResolver<AuthorEntity> {
+
+    public AuthorReferenceResolver(
+            EntityManager entityManager,
+            @Value("${jsonpatch.reference-cache-size:1024}") int cacheSize) {
+        super(entityManager, AuthorEntity.class, cacheSize);
+    }
+
+    @Override
+    protected Integer idOf(AuthorEntity entity) {
+        return entity.getId();
+    }
+}
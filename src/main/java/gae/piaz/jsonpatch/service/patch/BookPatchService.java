@@ -1,40 +1,64 @@
 package gae.piaz.jsonpatch.service.patch;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import gae.piaz.jsonpatch.domain.AuthorEntity;
 import gae.piaz.jsonpatch.domain.BookEntity;
-import gae.piaz.jsonpatch.service.core.AbstractPatchService;
+import gae.piaz.jsonpatch.service.core.JsonPatchClientError;
+import gae.piaz.jsonpatch.service.core.JsonPatchDocument;
 import gae.piaz.jsonpatch.service.core.JsonPatchService;
-import lombok.Builder;
+import gae.piaz.jsonpatch.service.core.PatchOperation;
+import gae.piaz.jsonpatch.service.core.PatchOperationType;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 import org.springframework.stereotype.Service;
 
+/**
+ * Patches books through the generated {@link AbstractBookEntityPatchService}, which maps the
+ * {@code @PatchProperty} fields of {@link BookEntity} to {@link BookEntityUpdateBean} and back.
+ */
 @Service
-public class BookPatchService
-        extends AbstractPatchService<BookEntity, BookPatchService.BookEntityUpdateBean> {
+public class BookPatchService extends AbstractBookEntityPatchService {
 
-    public BookPatchService(JsonPatchService jsonPatchService) {
+    private final AuthorReferenceResolver authorReferenceResolver;
+
+    public BookPatchService(
+            JsonPatchService jsonPatchService, AuthorReferenceResolver authorReferenceResolver) {
         super(jsonPatchService);
+        this.authorReferenceResolver = authorReferenceResolver;
     }
 
+    /** An unknown author is a client error, as is a book without author. */
     @Override
-    protected void updateEntityFields(BookEntity entity, BookEntityUpdateBean updateBean) {
-        entity.setTitle(updateBean.title());
-        entity.setIsbn(updateBean.isbn());
-        entity.setAuthor(new AuthorEntity());
-        entity.getAuthor().setId(updateBean.author().id());
+    protected AuthorEntity resolveAuthor(Integer id) {
+        if (id == null) {
+            throw new JsonPatchClientError("A book must have an author");
+        }
+        return authorReferenceResolver.resolve(id);
     }
 
-    @Override
-    protected BookEntityUpdateBean mapEntityToBean(BookEntity entity) {
-        return BookEntityUpdateBean.builder()
-                .title(entity.getTitle())
-                .author(new AuthorUpdateBean(entity.getAuthor().getId()))
-                .isbn(entity.getIsbn())
-                .build();
+    /**
+     * Loads in one query the authors that the given patches assign to their books, see {@link
+     * AuthorReferenceResolver#prefetch}.
+     */
+    public void prefetchAuthors(Collection<JsonPatchDocument> patches) {
+        Set<Integer> authorIds = new HashSet<>();
+        for (JsonPatchDocument patch : patches) {
+            for (PatchOperation operation : patch.operations()) {
+                JsonNode value = operation.value();
+                if (value == null || operation.type() == PatchOperationType.TEST) {
+                    continue;
+                }
+                if (operation.path().equals("/author")) {
+                    value = value.get("id");
+                } else if (!operation.path().equals("/author/id")) {
+                    continue;
+                }
+                if (value != null && value.canConvertToInt()) {
+                    authorIds.add(value.asInt());
+                }
+            }
+        }
+        authorReferenceResolver.prefetch(authorIds);
     }
-
-    @Builder
-    public record BookEntityUpdateBean(String title, AuthorUpdateBean author, String isbn) {}
-
-    @Builder
-    public record AuthorUpdateBean(Integer id) {}
 }
@@ -0,0 +1,49 @@
+package gae.piaz.jsonpatch;
+
+import static gae.piaz.jsonpatch.config.Constants.APPLICATION_JSON_PATCH_VALUE;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gae.piaz.jsonpatch.domain.AuthorRepository;
+import gae.piaz.jsonpatch.domain.BookEntity;
+import gae.piaz.jsonpatch.domain.BookRepository;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+/**
+ * Base of the book integration tests. Each test patches books it creates itself, so that the tests
+ * pass in any order; the books of data.sql are only read.
+ */
+abstract class AbstractBookIntegrationTest {
+
+    /** An id that no book has. */
+    static final int MISSING_ID = 1_000_000;
+
+    private static final AtomicInteger ISBNS = new AtomicInteger(900_000);
+
+    @Autowired MockMvc mockMvc;
+
+    @Autowired ObjectMapper objectMapper;
+
+    @Autowired BookRepository bookRepository;
+
+    @Autowired AuthorRepository authorRepository;
+
+    /** Saves a new book of the given author, at version 0 and with a unique isbn. */
+    BookEntity newBook(String title, int authorId) {
+        BookEntity book = new BookEntity();
+        book.setTitle(title);
+        book.setIsbn(String.valueOf(ISBNS.incrementAndGet()));
+        book.setAuthor(authorRepository.findById(authorId).orElseThrow());
+        return bookRepository.save(book);
+    }
+
+    /** A JSON Patch request of the given book. */
+    static MockHttpServletRequestBuilder patchBook(int bookId, String patch) {
+        return patch("/api/v1/books/" + bookId)
+                .header("Content-Type", APPLICATION_JSON_PATCH_VALUE)
+                .content(patch);
+    }
+}
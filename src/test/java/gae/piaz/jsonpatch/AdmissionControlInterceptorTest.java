@@ -0,0 +1,91 @@
+package gae.piaz.jsonpatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import gae.piaz.jsonpatch.controller.support.AdmissionControlInterceptor;
+import gae.piaz.jsonpatch.service.core.AdmissionTimeoutException;
+import gae.piaz.jsonpatch.service.core.AllowedPath;
+import gae.piaz.jsonpatch.service.core.JsonPatchUpdate;
+import gae.piaz.jsonpatch.service.core.TooManyPatchesException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+
+/** Checks the admission of the patch requests once all the slots are taken. */
+public class AdmissionControlInterceptorTest {
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+
+    private final HandlerMethod patchHandler;
+
+    AdmissionControlInterceptorTest() throws NoSuchMethodException {
+        patchHandler = new HandlerMethod(this, getClass().getDeclaredMethod("patch"));
+    }
+
+    @Test
+    void preHandle_queueFull_429() throws Exception {
+        AdmissionControlInterceptor interceptor =
+                new AdmissionControlInterceptor(registry, 1, 0, Duration.ofSeconds(1));
+        MockHttpServletRequest running = new MockHttpServletRequest();
+        assertTrue(interceptor.preHandle(running, new MockHttpServletResponse(), patchHandler));
+
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        assertThrows(
+                TooManyPatchesException.class,
+                () -> interceptor.preHandle(new MockHttpServletRequest(), rejected, patchHandler));
+        assertEquals("1", rejected.getHeader("Retry-After"));
+        assertEquals(1, rejectedCount("queue_full"));
+
+        // the slot is freed once the running request completes
+        interceptor.afterCompletion(running, new MockHttpServletResponse(), patchHandler, null);
+        assertTrue(
+                interceptor.preHandle(
+                        new MockHttpServletRequest(), new MockHttpServletResponse(), patchHandler));
+    }
+
+    @Test
+    void preHandle_waitTimeout_503() throws Exception {
+        AdmissionControlInterceptor interceptor =
+                new AdmissionControlInterceptor(registry, 1, 1, Duration.ofMillis(50));
+        interceptor.preHandle(
+                new MockHttpServletRequest(), new MockHttpServletResponse(), patchHandler);
+
+        assertThrows(
+                AdmissionTimeoutException.class,
+                () ->
+                        interceptor.preHandle(
+                                new MockHttpServletRequest(),
+                                new MockHttpServletResponse(),
+                                patchHandler));
+        assertEquals(1, rejectedCount("timeout"));
+        assertEquals(1, registry.get("jsonpatch.admission.wait").timer().count());
+        assertEquals(0, registry.get("jsonpatch.admission.waiting").gauge().value());
+    }
+
+    @Test
+    void preHandle_notPatchHandler_notCounted() throws Exception {
+        AdmissionControlInterceptor interceptor =
+                new AdmissionControlInterceptor(registry, 1, 0, Duration.ofSeconds(1));
+        HandlerMethod other =
+                new HandlerMethod(this, getClass().getDeclaredMethod("preHandle_queueFull_429"));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(
+                    interceptor.preHandle(
+                            new MockHttpServletRequest(), new MockHttpServletResponse(), other));
+        }
+        assertEquals(0, registry.get("jsonpatch.admission.active").gauge().value());
+    }
+
+    private double rejectedCount(String reason) {
+        return registry.get("jsonpatch.admission.rejected").tag("reason", reason).counter().count();
+    }
+
+    @JsonPatchUpdate(allowedPaths = @AllowedPath(pattern = "title"))
+    void patch() {}
+}
@@ -0,0 +1,62 @@
+package gae.piaz.jsonpatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+/** The OpenAPI document generated at build time, served at /api-docs. */
+@SpringBootTest
+@AutoConfigureMockMvc
+@DirtiesContext
+public class ApiDocsIntegrationTest {
+
+    @Autowired private MockMvc mockMvc;
+
+    @Autowired private ObjectMapper objectMapper;
+
+    @Test
+    void apiDocs_ifNoneMatch_304() throws Exception {
+        MvcResult resp =
+                mockMvc.perform(get("/api-docs"))
+                        .andExpect(status().isOk())
+                        .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                        .andReturn();
+        JsonNode apiDocs = objectMapper.readTree(resp.getResponse().getContentAsString());
+        assertTrue(apiDocs.path("paths").has("/api/v1/books/{id}"));
+        assertTrue(apiDocs.path("paths").has("/api/v1/books"));
+        // the DTOs, the NDJSON exports and the job status are documented too
+        assertEquals(
+                "#/components/schemas/BookDTO",
+                apiDocs.at(
+                                "/paths/~1api~1v1~1books~1{id}/patch/responses/200/content"
+                                        + "/application~1json/schema/$ref")
+                        .asText());
+        assertEquals(
+                "#/components/schemas/AuthorDTO",
+                apiDocs.at(
+                                "/paths/~1api~1v1~1authors/get/responses/200/content"
+                                        + "/application~1x-ndjson/schema/$ref")
+                        .asText());
+        assertTrue(apiDocs.at("/paths/~1api~1v1~1books/get").isObject());
+        assertTrue(apiDocs.at("/paths/~1api~1v1~1patch-jobs~1{id}/get").isObject());
+        assertTrue(apiDocs.at("/components/schemas/PatchJobDTO").isObject());
+
+        mockMvc.perform(
+                        get("/api-docs")
+                                .header("If-None-Match", resp.getResponse().getHeader("ETag")))
+                .andExpect(status().isNotModified());
+    }
+}
@@ -4,14 +4,20 @@ import static gae.piaz.jsonpatch.config.Constants.APPLICATION_JSON_PATCH_VALUE;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import gae.piaz.jsonpatch.controller.dto.AuthorDTO;
+import gae.piaz.jsonpatch.controller.dto.PatchJobDTO;
 import gae.piaz.jsonpatch.domain.AuthorEntity;
 import gae.piaz.jsonpatch.domain.AuthorRepository;
+import jakarta.persistence.EntityManagerFactory;
 import java.util.Optional;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
@@ -20,7 +26,7 @@ import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 
-@SpringBootTest
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
 @AutoConfigureMockMvc
 @DirtiesContext
 public class AuthorControllerIntegrationTest {
@@ -31,6 +37,8 @@ public class AuthorControllerIntegrationTest {
 
     @Autowired private AuthorRepository authorRepository;
 
+    @Autowired private EntityManagerFactory entityManagerFactory;
+
     @Test
     void updateAuthor_correct_200() throws Exception {
         int authorId = 1;
@@ -96,6 +104,82 @@ public class AuthorControllerIntegrationTest {
                 .andExpect(status().isBadRequest());
     }
 
+    @Test
+    void updateAuthor_nameOnly_booksNotLoaded() throws Exception {
+        int authorId = 2;
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        String patch =
+                """
+                [
+                    { "op": "replace", "path": "/name", "value": "Jane Smith" }
+                ]
+                """;
+        mockMvc.perform(
+                        patch("/api/v1/authors/" + authorId)
+                                .header("Content-Type", APPLICATION_JSON_PATCH_VALUE)
+                                .content(patch))
+                .andExpect(status().isOk());
+
+        assertEquals(0, statistics.getCollectionLoadCount());
+        assertEquals("Jane Smith", authorRepository.findById(authorId).orElseThrow().getName());
+    }
+
+    @Test
+    void updateAuthor_respondAsync_202() throws Exception {
+        int authorId = 2;
+
+        String patch =
+                """
+                [
+                    { "op": "replace", "path": "/name", "value": "Jane Async" }
+                ]
+                """;
+        String location =
+                mockMvc.perform(
+                                patch("/api/v1/authors/" + authorId)
+                                        .header("Content-Type", APPLICATION_JSON_PATCH_VALUE)
+                                        .header("Prefer", "respond-async")
+                                        .content(patch))
+                        .andExpect(status().isAccepted())
+                        .andExpect(header().string("Preference-Applied", "respond-async"))
+                        .andReturn()
+                        .getResponse()
+                        .getHeader("Location");
+
+        PatchJobDTO job = awaitJob(location);
+        assertEquals(PatchJobDTO.State.SUCCEEDED, job.state());
+        assertEquals(200, job.status());
+        assertEquals("Jane Async", authorRepository.findById(authorId).orElseThrow().getName());
+    }
+
+    @Test
+    void updateAuthor_respondAsyncWrongId_jobFailed() throws Exception {
+        int authorId = 10;
+
+        String patch =
+                """
+                [
+                    { "op": "replace", "path": "/name", "value": "Jane Async" }
+                ]
+                """;
+        String location =
+                mockMvc.perform(
+                                patch("/api/v1/authors/" + authorId)
+                                        .header("Content-Type", APPLICATION_JSON_PATCH_VALUE)
+                                        .header("Prefer", "respond-async")
+                                        .content(patch))
+                        .andExpect(status().isAccepted())
+                        .andReturn()
+                        .getResponse()
+                        .getHeader("Location");
+
+        PatchJobDTO job = awaitJob(location);
+        assertEquals(PatchJobDTO.State.FAILED, job.state());
+        assertEquals(404, job.status());
+    }
+
     @Test
     void updateAuthor_wrongId_404() throws Exception {
         int authorId = 10;
@@ -103,7 +187,7 @@ public class AuthorControllerIntegrationTest {
         String patch =
                 """
                         [
-                            { "op": "replace", "path": "/id", "value": "2" }
+                            { "op": "replace", "path": "/name", "value": "Jane Doe" }
                         ]
                         """;
         mockMvc.perform(
@@ -113,10 +197,27 @@ public class AuthorControllerIntegrationTest {
                 .andExpect(status().isNotFound());
     }
 
+    @Test
+    void updateAuthor_disallowedPathWrongId_400() throws Exception {
+        int authorId = 10;
+
+        String patch =
+                """
+                        [
+                            { "op": "replace", "path": "/email", "value": "someone@stuff.com" }
+                        ]
+                        """;
+        mockMvc.perform(
+                        patch("/api/v1/authors/" + authorId)
+                                .header("Content-Type", APPLICATION_JSON_PATCH_VALUE)
+                                .content(patch))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     public void testPatch_removeBook_200() throws Exception {
         Integer authorId = 1;
-        AuthorEntity updatedAuthor = authorRepository.findById(authorId).orElseThrow();
+        AuthorEntity updatedAuthor = authorRepository.findWithBooksById(authorId).orElseThrow();
         assertThat(updatedAuthor.getBooks()).hasSize(3);
 
         String jsonPatch =
@@ -134,14 +235,14 @@ public class AuthorControllerIntegrationTest {
                                 .content(jsonPatch))
                 .andExpect(status().isOk());
 
-        updatedAuthor = authorRepository.findById(authorId).orElseThrow();
+        updatedAuthor = authorRepository.findWithBooksById(authorId).orElseThrow();
         assertThat(updatedAuthor.getBooks()).hasSize(2);
     }
 
     @Test
     public void testPatch_addBook_200() throws Exception {
         Integer authorId = 2;
-        AuthorEntity updatedAuthor = authorRepository.findById(authorId).orElseThrow();
+        AuthorEntity updatedAuthor = authorRepository.findWithBooksById(authorId).orElseThrow();
         assertThat(updatedAuthor.getBooks()).hasSize(4);
 
         String jsonPatch =
@@ -163,7 +264,22 @@ public class AuthorControllerIntegrationTest {
                                 .content(jsonPatch))
                 .andExpect(status().isOk());
 
-        updatedAuthor = authorRepository.findById(authorId).orElseThrow();
+        updatedAuthor = authorRepository.findWithBooksById(authorId).orElseThrow();
         assertThat(updatedAuthor.getBooks()).hasSize(5);
     }
+
+    private PatchJobDTO awaitJob(String location) throws Exception {
+        for (int attempt = 0; attempt < 100; attempt++) {
+            MvcResult resp = mockMvc.perform(get(location)).andExpect(status().isOk()).andReturn();
+            PatchJobDTO job =
+                    objectMapper.readValue(
+                            resp.getResponse().getContentAsString(), PatchJobDTO.class);
+            if (job.state() == PatchJobDTO.State.SUCCEEDED
+                    || job.state() == PatchJobDTO.State.FAILED) {
+                return job;
+            }
+            Thread.sleep(50);
+        }
+        throw new AssertionError("Job " + location + " did not complete");
+    }
 }
@@ -0,0 +1,97 @@
+package gae.piaz.jsonpatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gae.piaz.jsonpatch.domain.AuthorEntity;
+import gae.piaz.jsonpatch.domain.BookEntity;
+import gae.piaz.jsonpatch.service.core.JsonPatchCompiler;
+import gae.piaz.jsonpatch.service.core.JsonPatchDocument;
+import gae.piaz.jsonpatch.service.core.JsonPatchLimits;
+import gae.piaz.jsonpatch.service.core.JsonPatchReader;
+import gae.piaz.jsonpatch.service.core.JsonPatchService;
+import gae.piaz.jsonpatch.service.patch.AuthorPatchService;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/** Checks the reconciliation of the books of an author with the patched ones. */
+public class AuthorPatchServiceTest {
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private final AuthorPatchService authorPatchService =
+            new AuthorPatchService(
+                    new JsonPatchService(objectMapper, new JsonPatchCompiler(objectMapper, 256)));
+
+    @Test
+    void updateEntity_addUpdateRemoveBooks() throws Throwable {
+        AuthorEntity author = author(1, 2, 3);
+        BookEntity second = findBook(author, 2);
+
+        JsonPatchDocument patch =
+                read(
+                        """
+                        [{
+                            "op": "replace",
+                            "path": "/books",
+                            "value": [
+                                { "id": 2, "title": "Renamed" },
+                                { "id": 3, "title": "Java 3" },
+                                { "title": "New" }
+                            ]
+                        }]
+                        """);
+        authorPatchService.updateEntity(author, patch);
+
+        assertThat(author.getBooks()).hasSize(3);
+        assertThat(findBook(author, 2)).isSameAs(second);
+        assertThat(second.getTitle()).isEqualTo("Renamed");
+        assertThat(findBook(author, 3).getTitle()).isEqualTo("Java 3");
+        assertThat(author.getBooks())
+                .filteredOn(book -> book.getId() == null)
+                .extracting(BookEntity::getTitle)
+                .containsExactly("New");
+    }
+
+    @Test
+    void updateEntity_removeBook_keepsNewBooks() throws Throwable {
+        AuthorEntity author = author(1, 2);
+
+        JsonPatchDocument patch =
+                read(
+                        """
+                        [
+                            { "op": "remove", "path": "/books/0" },
+                            { "op": "add", "path": "/books/-", "value": { "title": "New" } }
+                        ]
+                        """);
+        authorPatchService.updateEntity(author, patch);
+
+        assertThat(author.getBooks()).hasSize(2);
+        assertThat(author.getBooks()).filteredOn(book -> book.getId() == null).hasSize(1);
+    }
+
+    private static AuthorEntity author(Integer... bookIds) {
+        AuthorEntity author = new AuthorEntity();
+        author.setName("John Doe");
+        for (Integer id : bookIds) {
+            BookEntity book = new BookEntity();
+            book.setId(id);
+            book.setTitle("Java " + id);
+            book.setAuthor(author);
+            author.getBooks().add(book);
+        }
+        return author;
+    }
+
+    private static BookEntity findBook(AuthorEntity author, Integer id) {
+        return author.getBooks().stream()
+                .filter(book -> id.equals(book.getId()))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private JsonPatchDocument read(String patch) throws Exception {
+        return new JsonPatchReader(JsonPatchLimits.DEFAULT).read(objectMapper.createParser(patch));
+    }
+}
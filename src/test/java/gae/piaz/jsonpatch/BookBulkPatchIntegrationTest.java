@@ -0,0 +1,219 @@
+package gae.piaz.jsonpatch;
+
+import static gae.piaz.jsonpatch.config.Constants.APPLICATION_JSON_PATCH_VALUE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import gae.piaz.jsonpatch.controller.dto.BookDTO;
+import gae.piaz.jsonpatch.controller.dto.BulkPatchResultDTO;
+import gae.piaz.jsonpatch.domain.BookEntity;
+import gae.piaz.jsonpatch.service.BookService;
+import gae.piaz.jsonpatch.service.core.BulkPatchRequest;
+import gae.piaz.jsonpatch.service.journal.JournalRecord;
+import gae.piaz.jsonpatch.service.journal.JournalRecord.Outcome;
+import gae.piaz.jsonpatch.service.journal.MappedPatchJournal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/** PATCH /api/v1/books, the patches of several books in a single request. */
+@SpringBootTest(properties = {"jsonpatch.journal.enabled=true", "jsonpatch.bulk.max-items=4"})
+@AutoConfigureMockMvc
+@DirtiesContext
+public class BookBulkPatchIntegrationTest extends AbstractBookIntegrationTest {
+
+    @TempDir static Path journalDirectory;
+
+    @DynamicPropertySource
+    static void journalDirectory(DynamicPropertyRegistry registry) {
+        registry.add("jsonpatch.journal.directory", () -> journalDirectory.toString());
+    }
+
+    @Autowired private MappedPatchJournal patchJournal;
+
+    @Autowired private BookService bookService;
+
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    @Autowired private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void updateBooks_mixedResults_200() throws Exception {
+        int updated = newBook("Java 104", 2).getId();
+        int disallowed = newBook("Java 105", 2).getId();
+        int failedTest = newBook("Java 106", 2).getId();
+        String patches =
+                String.format(
+                        """
+                        {
+                            "%d": [{ "op": "replace", "path": "/title", "value": "updated" }],
+                            "%d": [{ "op": "replace", "path": "/author/name", "value": "Jane Doe" }],
+                            "%d": [
+                                { "op": "test", "path": "/title", "value": "Java 101" },
+                                { "op": "replace", "path": "/title", "value": "updated" }
+                            ],
+                            "%d": [{ "op": "replace", "path": "/title", "value": "updated" }]
+                        }
+                        """,
+                        updated, disallowed, failedTest, MISSING_ID);
+        List<BulkPatchResultDTO<BookDTO>> results = updateBooks(patches, false);
+
+        assertEquals(
+                List.of(200, 400, 400, 404),
+                results.stream().map(BulkPatchResultDTO::status).toList());
+        assertEquals("updated", results.get(0).result().title());
+        BookEntity saved = bookRepository.findById(updated).orElseThrow();
+        assertEquals("updated", saved.getTitle());
+        // the version of the saved book, that an If-Match of the next patch has to send
+        assertEquals(saved.getVersion(), results.get(0).result().version());
+        assertEquals(1, saved.getVersion());
+        assertEquals("Java 106", bookRepository.findById(failedTest).orElseThrow().getTitle());
+    }
+
+    @Test
+    void updateBooks_atomicWithFailure_rollback() throws Exception {
+        int bookId = newBook("Java 107", 2).getId();
+        String patches =
+                String.format(
+                        """
+                        {
+                            "%d": [{ "op": "replace", "path": "/title", "value": "updated" }],
+                            "%d": [{ "op": "replace", "path": "/title", "value": "updated" }]
+                        }
+                        """,
+                        bookId, MISSING_ID);
+        List<BulkPatchResultDTO<BookDTO>> results = updateBooks(patches, true);
+
+        assertEquals(List.of(424, 404), results.stream().map(BulkPatchResultDTO::status).toList());
+        assertEquals("Java 107", bookRepository.findById(bookId).orElseThrow().getTitle());
+    }
+
+    @Test
+    void updateBooks_concurrentUpdate_409RolledBack() throws Exception {
+        int stale = newBook("Java 109", 2).getId();
+        int other = newBook("Java 110", 2).getId();
+        BulkPatchRequest patches =
+                objectMapper.readValue(
+                        String.format(
+                                """
+                                {
+                                    "%d": [{ "op": "replace", "path": "/title", "value": "a" }],
+                                    "%d": [{ "op": "replace", "path": "/title", "value": "b" }]
+                                }
+                                """,
+                                stale, other),
+                        BulkPatchRequest.class);
+        TransactionTemplate concurrent = new TransactionTemplate(transactionManager);
+        concurrent.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        List<BulkPatchResultDTO<BookDTO>> results =
+                new TransactionTemplate(transactionManager)
+                        .execute(
+                                status -> {
+                                    // the bulk patch joins this transaction, and gets the book
+                                    // loaded here, before another one updates it
+                                    bookRepository.findById(stale).orElseThrow();
+                                    concurrent.executeWithoutResult(
+                                            bump ->
+                                                    jdbcTemplate.update(
+                                                            "update books set version = version"
+                                                                    + " + 1 where id = ?",
+                                                            stale));
+                                    List<BulkPatchResultDTO<BookDTO>> bulk =
+                                            bookService.updateBooks(patches, false);
+                                    // the bulk patch marked the transaction it joined
+                                    status.setRollbackOnly();
+                                    return bulk;
+                                });
+
+        assertEquals(List.of(409, 424), results.stream().map(BulkPatchResultDTO::status).toList());
+        assertEquals("Java 109", bookRepository.findById(stale).orElseThrow().getTitle());
+        assertEquals("Java 110", bookRepository.findById(other).orElseThrow().getTitle());
+    }
+
+    @Test
+    void updateBooks_tooManyPatches_413() throws Exception {
+        int bookId = newBook("Java 108", 2).getId();
+        String item = "\"%d\": [{ \"op\": \"replace\", \"path\": \"/title\", \"value\": \"x\" }]";
+        // one patch over the limit of 4
+        StringJoiner patches = new StringJoiner(", ", "{", "}");
+        patches.add(String.format(item, bookId));
+        for (int i = 1; i <= 4; i++) {
+            patches.add(String.format(item, MISSING_ID + i));
+        }
+        mockMvc.perform(
+                        patch("/api/v1/books")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(patches.toString()))
+                .andExpect(status().isPayloadTooLarge());
+
+        assertEquals("Java 108", bookRepository.findById(bookId).orElseThrow().getTitle());
+    }
+
+    @Test
+    void updateBooks_atomicWithFailure_journaledRolledBack() throws Exception {
+        int bookId = newBook("Java 107", 2).getId();
+        String isbn = "journaled";
+        String patches =
+                String.format(
+                        """
+                        {
+                            "%d": [{ "op": "replace", "path": "/isbn", "value": "%s" }],
+                            "%d": [{ "op": "replace", "path": "/title", "value": "updated" }]
+                        }
+                        """,
+                        bookId, isbn, MISSING_ID);
+        updateBooks(patches, true);
+
+        // the journal holds the patches of the other tests too
+        Predicate<JournalRecord> journaled =
+                record ->
+                        record.state() != null && isbn.equals(record.state().path("isbn").asText());
+        List<JournalRecord> records = List.of();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (records.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            List<JournalRecord> journal = new ArrayList<>();
+            patchJournal.reader().replay(0, journal::add);
+            records = journal.stream().filter(journaled).toList();
+        }
+        assertEquals(1, records.size());
+        assertEquals("BookEntity", records.get(0).entity());
+        assertEquals(bookId, records.get(0).id().asInt());
+        assertEquals(Outcome.ROLLED_BACK, records.get(0).outcome());
+        assertEquals(APPLICATION_JSON_PATCH_VALUE, records.get(0).type());
+    }
+
+    private List<BulkPatchResultDTO<BookDTO>> updateBooks(String patches, boolean atomic)
+            throws Exception {
+        MvcResult resp =
+                mockMvc.perform(
+                                patch("/api/v1/books")
+                                        .param("atomic", String.valueOf(atomic))
+                                        .contentType(MediaType.APPLICATION_JSON)
+                                        .content(patches))
+                        .andExpect(status().isOk())
+                        .andReturn();
+        return objectMapper.readValue(
+                resp.getResponse().getContentAsString(), new TypeReference<>() {});
+    }
+}
@@ -0,0 +1,63 @@
+package gae.piaz.jsonpatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import gae.piaz.jsonpatch.domain.BookEntity;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+
+/** Concurrent PATCHes of the same book, coalesced by {@code PatchCoalescer}. */
+@SpringBootTest
+@AutoConfigureMockMvc
+@DirtiesContext
+public class BookConcurrentPatchIntegrationTest extends AbstractBookIntegrationTest {
+
+    @Test
+    void updateBook_concurrentPatches_allApplied() throws Exception {
+        int bookId = newBook("Java 101", 1).getId();
+        int callers = 8;
+
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> statuses = new ArrayList<>();
+        for (int i = 0; i < callers; i++) {
+            String patch =
+                    String.format(
+                            """
+                            [
+                                { "op": "replace", "path": "/isbn", "value": "90000%d" }
+                            ]
+                            """,
+                            i);
+            statuses.add(
+                    executor.submit(
+                            () -> {
+                                start.await();
+                                return mockMvc.perform(patchBook(bookId, patch))
+                                        .andReturn()
+                                        .getResponse()
+                                        .getStatus();
+                            }));
+        }
+        start.countDown();
+        executor.shutdown();
+
+        // the patches queued behind the one being saved do not race it, none of them fails
+        for (Future<Integer> status : statuses) {
+            assertEquals(200, status.get(10, TimeUnit.SECONDS));
+        }
+        BookEntity book = bookRepository.findById(bookId).orElseThrow();
+        assertTrue(book.getIsbn().startsWith("90000"));
+        assertTrue(book.getVersion() <= callers);
+    }
+}
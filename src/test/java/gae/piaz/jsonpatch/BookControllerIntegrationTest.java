@@ -33,7 +33,7 @@ public class BookControllerIntegrationTest {
     @Test
     void updateBook_correct_200() throws Exception {
         int bookId = 2;
-        Optional<BookEntity> bookEntity = bookRepository.findById(bookId);
+        Optional<BookEntity> bookEntity = bookRepository.findWithAuthorById(bookId);
         assertTrue(bookEntity.isPresent());
         assertEquals("Java 102", bookEntity.get().getTitle());
         String existingIsbn = bookEntity.get().getIsbn();
@@ -59,7 +59,8 @@ public class BookControllerIntegrationTest {
                 objectMapper.readValue(resp.getResponse().getContentAsString(), BookDTO.class);
 
         assertEquals("updated", book.title());
-        bookEntity = bookRepository.findById(bookId);
+        assertEquals("Jane Doe", book.authorName());
+        bookEntity = bookRepository.findWithAuthorById(bookId);
         assertTrue(bookEntity.isPresent());
         assertEquals("updated", bookEntity.get().getTitle());
         assertEquals(2, bookEntity.get().getAuthor().getId());
@@ -107,7 +108,7 @@ public class BookControllerIntegrationTest {
         String patch =
                 """
                 [
-                    { "op": "replace", "path": "/id", "value": "2" }
+                    { "op": "replace", "path": "/title", "value": "updated" }
                 ]
                 """;
         mockMvc.perform(
@@ -0,0 +1,53 @@
+package gae.piaz.jsonpatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import gae.piaz.jsonpatch.controller.dto.BookDTO;
+import gae.piaz.jsonpatch.domain.BookEntity;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MvcResult;
+
+/** The NDJSON export of the books, read in keyset pages. */
+@SpringBootTest(properties = "jsonpatch.export.page-size=3")
+@AutoConfigureMockMvc
+@DirtiesContext
+public class BookExportIntegrationTest extends AbstractBookIntegrationTest {
+
+    @Test
+    void exportBooks_ndjson_allBooksInIdOrder() throws Exception {
+        newBook("Exported", 1);
+        List<Integer> expected =
+                bookRepository.findAll().stream().map(BookEntity::getId).sorted().toList();
+        // more than a few pages of 3
+        assertTrue(expected.size() > 6);
+
+        MvcResult async =
+                mockMvc.perform(get("/api/v1/books").accept(MediaType.APPLICATION_NDJSON))
+                        .andExpect(request().asyncStarted())
+                        .andReturn();
+        MvcResult resp =
+                mockMvc.perform(asyncDispatch(async))
+                        .andExpect(status().isOk())
+                        .andExpect(
+                                content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                        .andReturn();
+
+        List<Integer> ids = new ArrayList<>();
+        for (String line : resp.getResponse().getContentAsString().split("\n")) {
+            ids.add(objectMapper.readValue(line, BookDTO.class).id());
+        }
+        assertEquals(expected, ids);
+    }
+}
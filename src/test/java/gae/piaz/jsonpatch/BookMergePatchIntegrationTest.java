@@ -0,0 +1,59 @@
+package gae.piaz.jsonpatch;
+
+import static gae.piaz.jsonpatch.config.Constants.APPLICATION_MERGE_PATCH_VALUE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import gae.piaz.jsonpatch.controller.dto.BookDTO;
+import gae.piaz.jsonpatch.domain.BookEntity;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MvcResult;
+
+/** JSON Merge Patches of a single book. */
+@SpringBootTest
+@AutoConfigureMockMvc
+@DirtiesContext
+public class BookMergePatchIntegrationTest extends AbstractBookIntegrationTest {
+
+    @Test
+    void updateBook_mergePatch_200() throws Exception {
+        BookEntity existing = newBook("Java 104", 2);
+
+        String patch =
+                """
+                { "isbn": "merged", "author": { "id": 1 } }
+                """;
+        MvcResult resp =
+                mockMvc.perform(
+                                patch("/api/v1/books/" + existing.getId())
+                                        .header("Content-Type", APPLICATION_MERGE_PATCH_VALUE)
+                                        .content(patch))
+                        .andExpect(status().isOk())
+                        .andReturn();
+
+        BookDTO book =
+                objectMapper.readValue(resp.getResponse().getContentAsString(), BookDTO.class);
+        assertEquals("John Doe", book.authorName());
+        BookEntity bookEntity = bookRepository.findWithAuthorById(existing.getId()).orElseThrow();
+        assertEquals("merged", bookEntity.getIsbn());
+        assertEquals(1, bookEntity.getAuthor().getId());
+    }
+
+    @Test
+    void updateBook_mergePatchDisallowedPath_400() throws Exception {
+        BookEntity existing = newBook("Java 101", 1);
+
+        String patch = """
+                { "author": { "name": "Jane Doe" } }
+                """;
+        mockMvc.perform(
+                        patch("/api/v1/books/" + existing.getId())
+                                .header("Content-Type", APPLICATION_MERGE_PATCH_VALUE)
+                                .content(patch))
+                .andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,92 @@
+package gae.piaz.jsonpatch;
+
+import static gae.piaz.jsonpatch.config.Constants.APPLICATION_JSON_PATCH_VALUE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import gae.piaz.jsonpatch.domain.BookEntity;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MvcResult;
+
+/** The If-Match, Prefer and Accept headers of the book PATCH endpoint. */
+@SpringBootTest
+@AutoConfigureMockMvc
+@DirtiesContext
+public class BookPatchHeadersIntegrationTest extends AbstractBookIntegrationTest {
+
+    @Test
+    void updateBook_staleIfMatch_412() throws Exception {
+        BookEntity existing = newBook("Java 105", 2);
+
+        String patch =
+                """
+                [
+                    { "op": "replace", "path": "/isbn", "value": "999999" }
+                ]
+                """;
+        mockMvc.perform(patchBook(existing.getId(), patch).header("If-Match", "\"0\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1\""));
+
+        mockMvc.perform(patchBook(existing.getId(), patch).header("If-Match", "\"0\""))
+                .andExpect(status().isPreconditionFailed());
+        assertEquals("999999", bookRepository.findById(existing.getId()).orElseThrow().getIsbn());
+    }
+
+    @Test
+    void updateBook_returnMinimal_204() throws Exception {
+        BookEntity existing = newBook("Java 106", 2);
+
+        String patch =
+                """
+                [
+                    { "op": "replace", "path": "/isbn", "value": "minimal" }
+                ]
+                """;
+        MvcResult resp =
+                mockMvc.perform(
+                                patchBook(existing.getId(), patch)
+                                        .header("Prefer", "return=minimal"))
+                        .andExpect(status().isNoContent())
+                        .andExpect(header().string("Preference-Applied", "return=minimal"))
+                        .andReturn();
+
+        assertEquals("", resp.getResponse().getContentAsString());
+        BookEntity bookEntity = bookRepository.findById(existing.getId()).orElseThrow();
+        assertEquals("minimal", bookEntity.getIsbn());
+        assertEquals("\"" + bookEntity.getVersion() + "\"", resp.getResponse().getHeader("ETag"));
+    }
+
+    @Test
+    void updateBook_acceptJsonPatch_diff() throws Exception {
+        BookEntity existing = newBook("Java 107", 2);
+
+        String patch =
+                """
+                [
+                    { "op": "test", "path": "/title", "value": "Java 107" },
+                    { "op": "replace", "path": "/isbn", "value": "diffed" }
+                ]
+                """;
+        MvcResult resp =
+                mockMvc.perform(
+                                patchBook(existing.getId(), patch)
+                                        .header("Accept", APPLICATION_JSON_PATCH_VALUE))
+                        .andExpect(status().isOk())
+                        .andExpect(
+                                content().contentTypeCompatibleWith(APPLICATION_JSON_PATCH_VALUE))
+                        .andReturn();
+
+        JsonNode diff = objectMapper.readTree(resp.getResponse().getContentAsString());
+        assertEquals(1, diff.size());
+        assertEquals("replace", diff.get(0).get("op").asText());
+        assertEquals("/isbn", diff.get(0).get("path").asText());
+        assertEquals("diffed", diff.get(0).get("value").asText());
+    }
+}
@@ -0,0 +1,169 @@
+package gae.piaz.jsonpatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import gae.piaz.jsonpatch.domain.AuthorEntity;
+import gae.piaz.jsonpatch.domain.BookEntity;
+import gae.piaz.jsonpatch.service.patch.AuthorReferenceResolver;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/** JSON Patches of a single book, and the errors of the invalid ones. */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureMockMvc
+@DirtiesContext
+public class BookPatchIntegrationTest extends AbstractBookIntegrationTest {
+
+    @Autowired private EntityManagerFactory entityManagerFactory;
+
+    @Autowired private MeterRegistry meterRegistry;
+
+    @Autowired private AuthorReferenceResolver authorReferenceResolver;
+
+    @Autowired private TransactionTemplate transactionTemplate;
+
+    @Test
+    void updateBook_unchanged_noUpdate() throws Exception {
+        BookEntity existing = newBook("Java 103", 1);
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        String patch =
+                """
+                [
+                    { "op": "replace", "path": "/title", "value": "Java 103" },
+                    { "op": "replace", "path": "/author/id", "value": 1 }
+                ]
+                """;
+        mockMvc.perform(patchBook(existing.getId(), patch)).andExpect(status().isOk());
+
+        assertEquals(0, statistics.getEntityUpdateCount());
+    }
+
+    @Test
+    void updateBook_cachedBook_invalidatedByPatch() throws Exception {
+        BookEntity existing = newBook("Java 103", 1);
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        for (String[] titles : new String[][] {{"Java 103", "renamed"}, {"renamed", "Java 103"}}) {
+            statistics.clear();
+            String patch =
+                    String.format(
+                            """
+                            [
+                                { "op": "test", "path": "/title", "value": "%s" },
+                                { "op": "replace", "path": "/title", "value": "%s" },
+                                { "op": "replace", "path": "/author/id", "value": 1 }
+                            ]
+                            """,
+                            titles[0], titles[1]);
+            mockMvc.perform(patchBook(existing.getId(), patch)).andExpect(status().isOk());
+        }
+
+        // the second patch read the book updated by the first one from the cache
+        assertTrue(statistics.getSecondLevelCacheHitCount() > 0);
+    }
+
+    @Test
+    void resolveAuthor_knownAndCached_loadedEntity() throws Exception {
+        BookEntity existing = newBook("Java 103", 1);
+        String patch =
+                """
+                [
+                    { "op": "replace", "path": "/author/id", "value": 2 }
+                ]
+                """;
+        mockMvc.perform(patchBook(existing.getId(), patch)).andExpect(status().isOk());
+
+        // the DTO of the next patch reads the name of the author without initializing a proxy
+        AuthorEntity author =
+                transactionTemplate.execute(status -> authorReferenceResolver.resolve(2));
+        assertTrue(Hibernate.isInitialized(author));
+        assertEquals("Jane Doe", author.getName());
+    }
+
+    @Test
+    void updateBook_clientError_stageMetrics() throws Exception {
+        BookEntity existing = newBook("Java 101", 1);
+
+        String patch =
+                """
+                [
+                    { "op": "test", "path": "/title", "value": "not the title" },
+                    { "op": "replace", "path": "/isbn", "value": "111111" }
+                ]
+                """;
+        mockMvc.perform(patchBook(existing.getId(), patch)).andExpect(status().isBadRequest());
+
+        assertTrue(
+                meterRegistry
+                                .get("jsonpatch.stage")
+                                .tags("stage", "apply", "entity", "Book", "outcome", "client_error")
+                                .timer()
+                                .count()
+                        >= 1);
+        assertTrue(
+                meterRegistry
+                                .get("jsonpatch.operations")
+                                .tags("op", "test", "entity", "Book")
+                                .counter()
+                                .count()
+                        >= 1);
+    }
+
+    @Test
+    void updateBook_disallowedPathWrongId_400() throws Exception {
+        String patch =
+                """
+                [
+                    { "op": "replace", "path": "/author/name", "value": "Jane Doe" }
+                ]
+                """;
+        mockMvc.perform(patchBook(MISSING_ID, patch)).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void updateBook_unknownAuthor_400() throws Exception {
+        BookEntity existing = newBook("Java 103", 1);
+
+        String patch =
+                """
+                [
+                    { "op": "replace", "path": "/author/id", "value": 99 }
+                ]
+                """;
+        mockMvc.perform(patchBook(existing.getId(), patch)).andExpect(status().isBadRequest());
+
+        assertEquals(
+                1,
+                bookRepository
+                        .findWithAuthorById(existing.getId())
+                        .orElseThrow()
+                        .getAuthor()
+                        .getId());
+    }
+
+    @Test
+    void updateBook_invalidOperation_400() throws Exception {
+        BookEntity existing = newBook("Java 101", 1);
+
+        String patch =
+                """
+                [
+                    { "op": "rename", "path": "/title", "value": "updated" }
+                ]
+                """;
+        mockMvc.perform(patchBook(existing.getId(), patch)).andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,158 @@
+package gae.piaz.jsonpatch;
+
+import static gae.piaz.jsonpatch.config.Constants.APPLICATION_JSON_PATCH_VALUE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gae.piaz.jsonpatch.controller.dto.BookDTO;
+import gae.piaz.jsonpatch.domain.BookEntity;
+import gae.piaz.jsonpatch.domain.BookRepository;
+import jakarta.persistence.Cache;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+/** Book patches run as a single UPDATE, which needs the journal to be disabled. */
+@SpringBootTest(
+        properties = {
+            "spring.jpa.properties.hibernate.generate_statistics=true",
+            "jsonpatch.journal.enabled=false"
+        })
+@AutoConfigureMockMvc
+@DirtiesContext
+public class BookPushdownIntegrationTest {
+
+    @Autowired private MockMvc mockMvc;
+
+    @Autowired private ObjectMapper objectMapper;
+
+    @Autowired private BookRepository bookRepository;
+
+    @Autowired private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void updateBook_testAndReplace_noEntityLoaded() throws Exception {
+        int bookId = 1;
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        String patch =
+                """
+                [
+                    { "op": "test", "path": "/title", "value": "Java 101" },
+                    { "op": "replace", "path": "/title", "value": "pushed" },
+                    { "op": "replace", "path": "/isbn", "value": "654321" }
+                ]
+                """;
+        MvcResult resp =
+                mockMvc.perform(
+                                patch("/api/v1/books/" + bookId)
+                                        .header("Content-Type", APPLICATION_JSON_PATCH_VALUE)
+                                        .header("If-Match", "\"0\"")
+                                        .content(patch))
+                        .andExpect(status().isOk())
+                        .andExpect(header().string("ETag", "\"1\""))
+                        .andReturn();
+
+        BookDTO book =
+                objectMapper.readValue(resp.getResponse().getContentAsString(), BookDTO.class);
+        assertEquals("pushed", book.title());
+        assertEquals("John Doe", book.authorName());
+        assertEquals(1, book.version());
+        assertEquals(0, statistics.getEntityLoadCount());
+
+        assertEquals("654321", bookRepository.findById(bookId).orElseThrow().getIsbn());
+    }
+
+    @Test
+    void updateBook_pushedDown_otherBooksStayCached() throws Exception {
+        Cache cache = entityManagerFactory.getCache();
+        bookRepository.findById(5).orElseThrow();
+        bookRepository.findById(6).orElseThrow();
+        assertTrue(cache.contains(BookEntity.class, 5));
+
+        mockMvc.perform(
+                        patch("/api/v1/books/5")
+                                .header("Content-Type", APPLICATION_JSON_PATCH_VALUE)
+                                .content(
+                                        """
+                                        [{ "op": "replace", "path": "/title", "value": "pushed" }]
+                                        """))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1\""));
+
+        assertFalse(cache.contains(BookEntity.class, 5));
+        assertTrue(cache.contains(BookEntity.class, 6));
+        assertEquals("pushed", bookRepository.findById(5).orElseThrow().getTitle());
+    }
+
+    @Test
+    void updateBook_unchanged_versionKept() throws Exception {
+        mockMvc.perform(
+                        patch("/api/v1/books/4")
+                                .header("Content-Type", APPLICATION_JSON_PATCH_VALUE)
+                                .content(
+                                        """
+                                        [{ "op": "replace", "path": "/title", "value": "Java 104" }]
+                                        """))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"0\""));
+    }
+
+    @Test
+    void updateBook_testFailed_400() throws Exception {
+        String patch =
+                """
+                [
+                    { "op": "test", "path": "/title", "value": "wrong" },
+                    { "op": "replace", "path": "/title", "value": "pushed" }
+                ]
+                """;
+        mockMvc.perform(
+                        patch("/api/v1/books/2")
+                                .header("Content-Type", APPLICATION_JSON_PATCH_VALUE)
+                                .content(patch))
+                .andExpect(status().isBadRequest());
+
+        assertEquals("Java 102", bookRepository.findById(2).orElseThrow().getTitle());
+    }
+
+    @Test
+    void updateBook_versionMismatch_412() throws Exception {
+        mockMvc.perform(
+                        patch("/api/v1/books/3")
+                                .header("Content-Type", APPLICATION_JSON_PATCH_VALUE)
+                                .header("If-Match", "\"5\"")
+                                .content(
+                                        """
+                                        [{ "op": "replace", "path": "/title", "value": "pushed" }]
+                                        """))
+                .andExpect(status().isPreconditionFailed());
+
+        assertEquals("Java 103", bookRepository.findById(3).orElseThrow().getTitle());
+    }
+
+    @Test
+    void updateBook_unknownBook_404() throws Exception {
+        mockMvc.perform(
+                        patch("/api/v1/books/100")
+                                .header("Content-Type", APPLICATION_JSON_PATCH_VALUE)
+                                .content(
+                                        """
+                                        [{ "op": "replace", "path": "/title", "value": "pushed" }]
+                                        """))
+                .andExpect(status().isNotFound());
+    }
+}
@@ -0,0 +1,116 @@
+package gae.piaz.jsonpatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import gae.piaz.jsonpatch.controller.support.IdempotencyKeyFilter;
+import jakarta.servlet.FilterChain;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+
+/** Checks the bounds of the requests and responses kept by the idempotency key filter. */
+public class IdempotencyKeyFilterTest {
+
+    @Test
+    void doFilter_keyInFlight_notEvicted() throws Exception {
+        IdempotencyKeyFilter filter = filter(1, DataSize.ofKilobytes(1));
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+        FilterChain blocking =
+                (request, response) -> {
+                    runs.incrementAndGet();
+                    running.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                };
+
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        Future<MockHttpServletResponse> first =
+                executor.submit(() -> doFilter(filter, request("a"), blocking));
+        running.await();
+        // more completed keys than max-entries, the running one is kept all the same
+        doFilter(filter, request("b"), (request, response) -> {});
+        doFilter(filter, request("c"), (request, response) -> {});
+
+        Future<MockHttpServletResponse> duplicate =
+                executor.submit(() -> doFilter(filter, request("a"), blocking));
+        release.countDown();
+
+        assertEquals(200, first.get(5, TimeUnit.SECONDS).getStatus());
+        MockHttpServletResponse replayed = duplicate.get(5, TimeUnit.SECONDS);
+        assertEquals(200, replayed.getStatus());
+        assertEquals("true", replayed.getHeader(IdempotencyKeyFilter.REPLAYED));
+        assertEquals(1, runs.get());
+        executor.shutdown();
+    }
+
+    @Test
+    void doFilter_contentLengthTooLarge_413() throws Exception {
+        IdempotencyKeyFilter filter = filter(10, DataSize.ofBytes(16));
+        MockHttpServletRequest request = request("a");
+        request.setContent(new byte[17]);
+
+        MockHttpServletResponse response = doFilter(filter, request, unreachable());
+
+        assertEquals(413, response.getStatus());
+    }
+
+    @Test
+    void doFilter_chunkedBodyTooLarge_413() throws Exception {
+        IdempotencyKeyFilter filter = filter(10, DataSize.ofBytes(16));
+        MockHttpServletRequest request =
+                new MockHttpServletRequest("PATCH", "/api/v1/books/1") {
+                    @Override
+                    public long getContentLengthLong() {
+                        // no Content-Length, the body is read until the limit
+                        return -1;
+                    }
+                };
+        request.addHeader(IdempotencyKeyFilter.HEADER, "a");
+        request.setContent(new byte[17]);
+
+        MockHttpServletResponse response = doFilter(filter, request, unreachable());
+
+        assertEquals(413, response.getStatus());
+        assertNull(response.getHeader(IdempotencyKeyFilter.REPLAYED));
+    }
+
+    private static IdempotencyKeyFilter filter(int maxEntries, DataSize maxBodySize) {
+        return new IdempotencyKeyFilter(
+                maxEntries, Duration.ofHours(1), Duration.ofSeconds(5), maxBodySize);
+    }
+
+    private static MockHttpServletRequest request(String key) {
+        MockHttpServletRequest request = new MockHttpServletRequest("PATCH", "/api/v1/books/1");
+        request.addHeader(IdempotencyKeyFilter.HEADER, key);
+        request.setContent("[]".getBytes());
+        return request;
+    }
+
+    private static FilterChain unreachable() {
+        return (request, response) -> {
+            throw new AssertionError("the request must not reach the controllers");
+        };
+    }
+
+    private static MockHttpServletResponse doFilter(
+            IdempotencyKeyFilter filter, MockHttpServletRequest request, FilterChain chain)
+            throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+}
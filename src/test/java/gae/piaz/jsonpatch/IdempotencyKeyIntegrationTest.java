@@ -0,0 +1,49 @@
+package gae.piaz.jsonpatch;
+
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import gae.piaz.jsonpatch.controller.support.IdempotencyKeyFilter;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MvcResult;
+
+/** PATCHes sent with an Idempotency-Key, see {@link IdempotencyKeyFilter}. */
+@SpringBootTest
+@AutoConfigureMockMvc
+@DirtiesContext
+public class IdempotencyKeyIntegrationTest extends AbstractBookIntegrationTest {
+
+    @Test
+    void updateBook_idempotencyKey_replayed() throws Exception {
+        int bookId = newBook("Java 105", 2).getId();
+        String key = "book-" + bookId + "-title";
+        String patch =
+                """
+                [
+                    { "op": "test", "path": "/title", "value": "Java 105" },
+                    { "op": "replace", "path": "/title", "value": "idempotent" }
+                ]
+                """;
+        MvcResult first =
+                mockMvc.perform(patchBook(bookId, patch).header(IdempotencyKeyFilter.HEADER, key))
+                        .andExpect(status().isOk())
+                        .andExpect(header().doesNotExist(IdempotencyKeyFilter.REPLAYED))
+                        .andReturn();
+
+        // running the patch again would fail its test operation
+        mockMvc.perform(patchBook(bookId, patch).header(IdempotencyKeyFilter.HEADER, key))
+                .andExpect(status().isOk())
+                .andExpect(header().string(IdempotencyKeyFilter.REPLAYED, "true"))
+                .andExpect(header().string("ETag", first.getResponse().getHeader("ETag")))
+                .andExpect(content().json(first.getResponse().getContentAsString()));
+
+        mockMvc.perform(
+                        patchBook(bookId, patch.replace("idempotent", "other"))
+                                .header(IdempotencyKeyFilter.HEADER, key))
+                .andExpect(status().isUnprocessableEntity());
+    }
+}
@@ -0,0 +1,64 @@
+package gae.piaz.jsonpatch;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import gae.piaz.jsonpatch.config.JsonPatchRuntimeHints;
+import gae.piaz.jsonpatch.domain.BookEntity;
+import gae.piaz.jsonpatch.service.patch.AuthorEntityUpdateBean;
+import gae.piaz.jsonpatch.service.patch.AuthorEntityUpdateBean.BooksItem;
+import gae.piaz.jsonpatch.service.patch.BookEntityUpdateBean;
+import gae.piaz.jsonpatch.service.patch.BookEntityUpdateBeanJson;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+/** Checks the native image hints of what the patches reach by reflection. */
+public class JsonPatchRuntimeHintsTest {
+
+    private final RuntimeHints hints = new RuntimeHints();
+
+    JsonPatchRuntimeHintsTest() {
+        new JsonPatchRuntimeHints().registerHints(hints, getClass().getClassLoader());
+    }
+
+    @Test
+    void registerHints_updateBeans() throws NoSuchMethodException {
+        for (Class<?> bean :
+                new Class<?>[] {
+                    AuthorEntityUpdateBean.class, BooksItem.class, BookEntityUpdateBean.class
+                }) {
+            assertTrue(
+                    RuntimeHintsPredicates.reflection()
+                            .onType(bean)
+                            .withMemberCategory(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS)
+                            .test(hints),
+                    bean.getName());
+        }
+        assertTrue(
+                RuntimeHintsPredicates.reflection()
+                        .onMethod(BooksItem.class.getMethod("title"))
+                        .test(hints));
+        // the generated (de)serializers, instantiated by Jackson from the annotations
+        assertTrue(
+                RuntimeHintsPredicates.reflection()
+                        .onType(BookEntityUpdateBeanJson.Deserializer.class)
+                        .test(hints));
+    }
+
+    @Test
+    void registerHints_entitiesAndLibraries() {
+        assertTrue(
+                RuntimeHintsPredicates.reflection()
+                        .onType(BookEntity.class)
+                        .withMemberCategory(MemberCategory.DECLARED_FIELDS)
+                        .test(hints));
+        assertTrue(
+                RuntimeHintsPredicates.reflection()
+                        .onType(TypeReference.of("com.flipkart.zjsonpatch.JsonPatch"))
+                        .test(hints));
+        assertTrue(
+                RuntimeHintsPredicates.resource().forResource("openapi/api-docs.json").test(hints));
+    }
+}
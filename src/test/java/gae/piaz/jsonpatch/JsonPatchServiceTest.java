@@ -0,0 +1,327 @@
+package gae.piaz.jsonpatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gae.piaz.jsonpatch.service.core.BoundPatch;
+import gae.piaz.jsonpatch.service.core.JsonPatchClientError;
+import gae.piaz.jsonpatch.service.core.JsonPatchCompiler;
+import gae.piaz.jsonpatch.service.core.JsonPatchDocument;
+import gae.piaz.jsonpatch.service.core.JsonPatchLimits;
+import gae.piaz.jsonpatch.service.core.JsonPatchNoOpError;
+import gae.piaz.jsonpatch.service.core.JsonPatchReader;
+import gae.piaz.jsonpatch.service.core.JsonPatchService;
+import gae.piaz.jsonpatch.service.core.MergePatchDocument;
+import gae.piaz.jsonpatch.service.core.PatchMode;
+import gae.piaz.jsonpatch.service.patch.AuthorEntityUpdateBean;
+import gae.piaz.jsonpatch.service.patch.AuthorEntityUpdateBean.BooksItem;
+import gae.piaz.jsonpatch.service.patch.BookEntityUpdateBean;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Checks that {@link PatchMode#DIRECT} gives the same results as {@link PatchMode#JSON_NODE}, and
+ * that compiled patch plans are shared by patches with the same shape.
+ */
+public class JsonPatchServiceTest {
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private final JsonPatchCompiler jsonPatchCompiler = new JsonPatchCompiler(objectMapper, 256);
+
+    private final JsonPatchService jsonPatchService =
+            new JsonPatchService(objectMapper, jsonPatchCompiler);
+
+    private final JsonPatchReader jsonPatchReader = new JsonPatchReader(JsonPatchLimits.DEFAULT);
+
+    private final BookEntityUpdateBean book =
+            new BookEntityUpdateBean("123456", "Java 101", new BookEntityUpdateBean.AuthorRef(1));
+
+    private final AuthorEntityUpdateBean author =
+            new AuthorEntityUpdateBean(
+                    "John Doe",
+                    new LinkedHashSet<>(
+                            List.of(
+                                    new BooksItem(1, "123456", "Java 101"),
+                                    new BooksItem(2, "123457", "Java 102"),
+                                    new BooksItem(3, "123458", "Java 103"))));
+
+    @ParameterizedTest
+    @ValueSource(
+            strings = {
+                """
+                [{ "op": "replace", "path": "/title", "value": "updated" }]
+                """,
+                """
+                [
+                    { "op": "test", "path": "/author/id", "value": 1 },
+                    { "op": "replace", "path": "/author/id", "value": 2 },
+                    { "op": "remove", "path": "/isbn" }
+                ]
+                """,
+                """
+                [{ "op": "replace", "path": "/author", "value": { "id": 3 } }]
+                """,
+                """
+                [{ "op": "add", "path": "/unknown", "value": "ignored" }]
+                """,
+                """
+                [
+                    { "op": "copy", "from": "/title", "path": "/isbn" },
+                    { "op": "move", "from": "/isbn", "path": "/title" }
+                ]
+                """,
+            })
+    void applyPatch_book_sameResult(String patch) throws Throwable {
+        assertSameResult(patch, book, BookEntityUpdateBean.class);
+    }
+
+    @ParameterizedTest
+    @ValueSource(
+            strings = {
+                """
+                [
+                    { "op": "test", "path": "/name", "value": "John Doe" },
+                    { "op": "replace", "path": "/name", "value": "Jane Doe" }
+                ]
+                """,
+                """
+                [{ "op": "remove", "path": "/books/0" }]
+                """,
+                """
+                [
+                    { "op": "add", "path": "/books/-", "value": { "title": "New", "isbn": "1" } },
+                    { "op": "replace", "path": "/books/1/title", "value": "Renamed" }
+                ]
+                """,
+                """
+                [{ "op": "copy", "from": "/books/2", "path": "/books/0" }]
+                """,
+            })
+    void applyPatch_author_sameResult(String patch) throws Throwable {
+        assertSameResult(patch, author, AuthorEntityUpdateBean.class);
+    }
+
+    @ParameterizedTest
+    @ValueSource(
+            strings = {
+                """
+                [{ "op": "replace", "path": "/id", "value": "2" }]
+                """,
+                """
+                [{ "op": "test", "path": "/title", "value": "Java 102" },
+                 { "op": "replace", "path": "/title", "value": "updated" }]
+                """,
+                """
+                [{ "op": "remove", "path": "/author/name" }]
+                """,
+                """
+                [{ "op": "replace", "path": "/title" }]
+                """,
+                """
+                [{ "op": "unknown", "path": "/title", "value": "updated" }]
+                """,
+            })
+    void applyPatch_book_sameClientError(String patch) {
+        for (PatchMode mode : PatchMode.values()) {
+            assertThrows(
+                    JsonPatchClientError.class,
+                    () ->
+                            jsonPatchService.applyPatch(
+                                    read(patch), book, BookEntityUpdateBean.class, mode),
+                    mode.name());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"/unknown", "/author/name"})
+    void applyPatch_jsonNodeRemoveOfMissingMember_clientError(String path) throws IOException {
+        // zjsonpatch ignores these removes unless FORBID_REMOVE_MISSING_OBJECT is set
+        JsonPatchDocument patch =
+                read(
+                        """
+                        [{ "op": "remove", "path": "%s" }]
+                        """
+                                .formatted(path));
+        assertThrows(
+                JsonPatchClientError.class,
+                () ->
+                        jsonPatchService.applyPatch(
+                                patch, book, BookEntityUpdateBean.class, PatchMode.JSON_NODE));
+    }
+
+    @ParameterizedTest
+    @EnumSource(PatchMode.class)
+    void applyPatch_onlyTest_noOp(PatchMode mode) throws Throwable {
+        JsonPatchDocument patch =
+                read(
+                        """
+                        [{ "op": "test", "path": "/name", "value": "John Doe" }]
+                        """);
+        assertThrows(
+                JsonPatchNoOpError.class,
+                () ->
+                        jsonPatchService.applyPatch(
+                                patch, author, AuthorEntityUpdateBean.class, mode));
+    }
+
+    @ParameterizedTest
+    @ValueSource(
+            strings = {
+                """
+                { "title": "merged" }
+                """,
+                """
+                { "isbn": null, "author": { "id": 2 } }
+                """,
+                """
+                { "author": null, "unknown": { "ignored": 1 } }
+                """
+            })
+    void applyMergePatch_book_sameResult(String patch) throws Throwable {
+        MergePatchDocument patchDocument =
+                jsonPatchReader.readMergePatch(objectMapper.createParser(patch));
+        BookEntityUpdateBean expected =
+                jsonPatchService.applyMergePatch(
+                        patchDocument, book, BookEntityUpdateBean.class, PatchMode.JSON_NODE);
+        BookEntityUpdateBean actual =
+                jsonPatchService.applyMergePatch(
+                        patchDocument, book, BookEntityUpdateBean.class, PatchMode.DIRECT);
+        assertEquals(expected, actual);
+    }
+
+    @ParameterizedTest
+    @EnumSource(PatchMode.class)
+    void applyMergePatch_author_replacesBooks(PatchMode mode) throws Throwable {
+        MergePatchDocument patch =
+                jsonPatchReader.readMergePatch(
+                        objectMapper.createParser(
+                                """
+                                { "name": "Jane Doe", "books": [{ "id": 1, "title": "merged" }] }
+                                """));
+        AuthorEntityUpdateBean patched =
+                jsonPatchService.applyMergePatch(patch, author, AuthorEntityUpdateBean.class, mode);
+
+        assertEquals("Jane Doe", patched.name());
+        assertEquals(List.of(new BooksItem(1, null, "merged")), List.copyOf(patched.books()));
+    }
+
+    @Test
+    void compile_sameShape_reusesPlan() throws IOException {
+        BoundPatch first =
+                jsonPatchCompiler.compile(
+                        read(
+                                """
+                                [{ "op": "replace", "path": "/title", "value": "first" }]
+                                """),
+                        BookEntityUpdateBean.class);
+        BoundPatch second =
+                jsonPatchCompiler.compile(
+                        read(
+                                """
+                                [{ "op": "replace", "path": "/title", "value": "second" }]
+                                """),
+                        BookEntityUpdateBean.class);
+
+        assertSame(first.plan(), second.plan());
+        assertEquals("second", second.values()[0].asText());
+        assertNotSame(
+                first.plan(),
+                jsonPatchCompiler
+                        .compile(
+                                read(
+                                        """
+                                        [{ "op": "replace", "path": "/isbn", "value": "1" }]
+                                        """),
+                                BookEntityUpdateBean.class)
+                        .plan());
+    }
+
+    @Test
+    void compile_separatorsInPointers_distinctPlans() throws IOException {
+        // the same op, path and from joined with spaces
+        BoundPatch spaceInPath =
+                jsonPatchCompiler.compile(
+                        read(
+                                """
+                                [{ "op": "move", "path": "/title /isbn", "from": "/a" }]
+                                """),
+                        BookEntityUpdateBean.class);
+        BoundPatch spaceInFrom =
+                jsonPatchCompiler.compile(
+                        read(
+                                """
+                                [{ "op": "move", "path": "/title", "from": "/isbn /a" }]
+                                """),
+                        BookEntityUpdateBean.class);
+
+        assertNotSame(spaceInPath.plan(), spaceInFrom.plan());
+    }
+
+    @Test
+    void generatedUpdateBean_jsonRoundTrip() throws IOException {
+        String json = objectMapper.writeValueAsString(book);
+
+        assertEquals(
+                """
+                {"isbn":"123456","title":"Java 101","author":{"id":1}}\
+                """,
+                json);
+        assertEquals(book, objectMapper.readValue(json, BookEntityUpdateBean.class));
+        assertEquals(
+                new BookEntityUpdateBean(null, "Java 101", null),
+                objectMapper.readValue(
+                        """
+                        {"title":"Java 101","author":null,"unknown":{"ignored":[1]}}
+                        """,
+                        BookEntityUpdateBean.class));
+    }
+
+    @Test
+    void read_exceedsLimits_clientError() {
+        JsonPatchReader reader = new JsonPatchReader(new JsonPatchLimits(2, 16, 1));
+        List<String> patches =
+                List.of(
+                        """
+                        [{ "op": "remove", "path": "/title" },
+                         { "op": "remove", "path": "/isbn" },
+                         { "op": "remove", "path": "/author" }]
+                        """,
+                        """
+                        [{ "op": "replace", "path": "/title", "value": "a very long title value" }]
+                        """,
+                        """
+                        [{ "op": "replace", "path": "/author", "value": { "id": { "id": 1 } } }]
+                        """);
+        for (String patch : patches) {
+            assertThrows(
+                    JsonPatchClientError.class,
+                    () -> reader.read(objectMapper.createParser(patch)),
+                    patch);
+        }
+    }
+
+    private JsonPatchDocument read(String patch) throws IOException {
+        return jsonPatchReader.read(objectMapper.createParser(patch));
+    }
+
+    private <T> void assertSameResult(String patch, T target, Class<T> targetClass)
+            throws Throwable {
+        JsonPatchDocument patchDocument = read(patch);
+        T expected =
+                jsonPatchService.applyPatch(
+                        patchDocument, target, targetClass, PatchMode.JSON_NODE);
+        T actual =
+                jsonPatchService.applyPatch(patchDocument, target, targetClass, PatchMode.DIRECT);
+        assertEquals(expected, actual);
+    }
+}
@@ -0,0 +1,81 @@
+package gae.piaz.jsonpatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import gae.piaz.jsonpatch.service.journal.JournalRecord;
+import gae.piaz.jsonpatch.service.journal.MappedPatchJournal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+/** The retention of the journal segments, which are kept small to roll after a few patches. */
+@SpringBootTest(
+        properties = {
+            "jsonpatch.journal.enabled=true",
+            "jsonpatch.journal.segment-size=1KB",
+            "jsonpatch.journal.max-segments=2"
+        })
+@AutoConfigureMockMvc
+@DirtiesContext
+public class PatchJournalIntegrationTest extends AbstractBookIntegrationTest {
+
+    @TempDir static Path journalDirectory;
+
+    @DynamicPropertySource
+    static void journalDirectory(DynamicPropertyRegistry registry) {
+        registry.add("jsonpatch.journal.directory", () -> journalDirectory.toString());
+    }
+
+    @Autowired private MappedPatchJournal patchJournal;
+
+    @Test
+    void updateBook_manyPatches_oldestSegmentsDeleted() throws Exception {
+        int bookId = newBook("Java 101", 1).getId();
+        int patches = 20;
+        for (int i = 0; i < patches; i++) {
+            String patch =
+                    String.format(
+                            """
+                            [
+                                { "op": "replace", "path": "/isbn", "value": "journal-%d" }
+                            ]
+                            """,
+                            i);
+            mockMvc.perform(patchBook(bookId, patch)).andExpect(status().isOk());
+        }
+
+        String last = "journal-" + (patches - 1);
+        List<JournalRecord> records = List.of();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((records.isEmpty() || !last.equals(isbn(records.getLast())))
+                && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            List<JournalRecord> journal = new ArrayList<>();
+            patchJournal.reader().replay(0, journal::add);
+            records = journal;
+        }
+        assertEquals(last, isbn(records.getLast()));
+        // the first patches were in the deleted segments
+        assertTrue(records.getFirst().sequence() > 0);
+        try (Stream<Path> files = Files.list(journalDirectory)) {
+            assertEquals(2, files.filter(file -> file.toString().endsWith(".journal")).count());
+        }
+    }
+
+    private static String isbn(JournalRecord record) {
+        return record.state().path("isbn").asText();
+    }
+}
@@ -0,0 +1,380 @@
+package gae.piaz.jsonpatch.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import gae.piaz.jsonpatch.domain.AuthorEntity;
+import gae.piaz.jsonpatch.service.core.ConcurrentUpdateException;
+import gae.piaz.jsonpatch.service.core.JsonPatchClientError;
+import gae.piaz.jsonpatch.service.core.JsonPatchCompiler;
+import gae.piaz.jsonpatch.service.core.JsonPatchDocument;
+import gae.piaz.jsonpatch.service.core.JsonPatchLimits;
+import gae.piaz.jsonpatch.service.core.JsonPatchReader;
+import gae.piaz.jsonpatch.service.core.JsonPatchServerError;
+import gae.piaz.jsonpatch.service.core.JsonPatchService;
+import gae.piaz.jsonpatch.service.core.PatchDocument;
+import gae.piaz.jsonpatch.service.core.PatchMetrics;
+import gae.piaz.jsonpatch.service.core.PreconditionFailedException;
+import gae.piaz.jsonpatch.service.patch.AuthorPatchService;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/** Checks the drains of the coalescer and the errors its callers get. */
+public class PatchCoalescerTest {
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private final AuthorEntity author = new AuthorEntity();
+
+    @Test
+    void patch_steadyStreamOfPatches_firstCallerReturns() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<Thread> firstCaller = new AtomicReference<>();
+        AtomicInteger firstCallerLoads = new AtomicInteger();
+        PatchCoalescer<AuthorEntity, String> coalescer =
+                coalescer(
+                        (id, patches) -> {
+                            try {
+                                if (firstCaller.compareAndSet(null, Thread.currentThread())) {
+                                    firstCallerLoads.incrementAndGet();
+                                    loading.countDown();
+                                    release.await();
+                                } else {
+                                    if (firstCaller.get() == Thread.currentThread()) {
+                                        firstCallerLoads.incrementAndGet();
+                                    }
+                                    Thread.sleep(5);
+                                }
+                            } catch (InterruptedException e) {
+                                throw new IllegalStateException(e);
+                            }
+                            return Optional.of(author);
+                        });
+
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        Future<PatchOutcome<String>> first =
+                rename(executor, coalescer, "first", ReturnPreference.REPRESENTATION, null);
+        loading.await();
+
+        // a patch every millisecond while each drain takes 5, the queue is never empty
+        AtomicBoolean streaming = new AtomicBoolean(true);
+        CountDownLatch streamed = new CountDownLatch(10);
+        Future<List<Future<PatchOutcome<String>>>> stream =
+                executor.submit(
+                        () -> {
+                            List<Future<PatchOutcome<String>>> others = new ArrayList<>();
+                            for (int i = 0; streaming.get(); i++) {
+                                others.add(
+                                        rename(
+                                                executor,
+                                                coalescer,
+                                                "other " + i,
+                                                ReturnPreference.MINIMAL,
+                                                null));
+                                streamed.countDown();
+                                Thread.sleep(1);
+                            }
+                            return others;
+                        });
+        // the first drain ends with patches queued behind it
+        streamed.await();
+        release.countDown();
+
+        try {
+            assertEquals("first", first.get(5, TimeUnit.SECONDS).body());
+            // the first caller loaded the entity for its own patch only
+            assertEquals(1, firstCallerLoads.get());
+        } finally {
+            streaming.set(false);
+        }
+        // the callers queued behind the first one drained the other patches
+        List<Future<PatchOutcome<String>>> others = stream.get(5, TimeUnit.SECONDS);
+        for (Future<PatchOutcome<String>> other : others) {
+            other.get(5, TimeUnit.SECONDS);
+        }
+        assertTrue(author.getName().startsWith("other "));
+        executor.shutdown();
+    }
+
+    @Test
+    void patch_lostRace_conflictUnlessIfMatch() throws Exception {
+        author.setVersion(0);
+        PatchCoalescer<AuthorEntity, String> coalescer =
+                coalescer(
+                        (id, patches) -> Optional.of(author),
+                        repository(
+                                (proxy, method, args) -> {
+                                    // another request updated the author since it was loaded
+                                    throw new ObjectOptimisticLockingFailureException(
+                                            AuthorEntity.class, 1);
+                                }));
+
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        Future<PatchOutcome<String>> withoutIfMatch =
+                rename(executor, coalescer, "plain", ReturnPreference.MINIMAL, null);
+        assertInstanceOf(ConcurrentUpdateException.class, failure(withoutIfMatch));
+        Future<PatchOutcome<String>> withIfMatch =
+                rename(executor, coalescer, "conditional", ReturnPreference.MINIMAL, 0);
+        assertInstanceOf(PreconditionFailedException.class, failure(withIfMatch));
+        executor.shutdown();
+    }
+
+    @Test
+    void patch_queuedPatches_oneLoadAndOneSavePerDrain() throws Exception {
+        AtomicInteger saves = new AtomicInteger();
+        List<List<PatchDocument>> loads = new CopyOnWriteArrayList<>();
+        CountDownLatch release = new CountDownLatch(1);
+        PatchCoalescer<AuthorEntity, String> coalescer =
+                coalescer(
+                        holdingFirstLoad(loads, release),
+                        repository(
+                                (proxy, method, args) -> {
+                                    if (method.getName().equals("saveAndFlush")) {
+                                        saves.incrementAndGet();
+                                    }
+                                    return args[0];
+                                }));
+
+        Future<PatchOutcome<String>> first = firstPatch(coalescer, loads);
+        List<Future<PatchOutcome<String>>> queued = new ArrayList<>();
+        for (String name : List.of("a", "b", "c")) {
+            queued.add(queue(coalescer, rename(name), ReturnPreference.REPRESENTATION, null));
+        }
+        release.countDown();
+
+        assertEquals("first", first.get(5, TimeUnit.SECONDS).body());
+        for (Future<PatchOutcome<String>> patch : queued) {
+            // every caller gets the entity as saved by the drain, after the last patch
+            assertEquals("c", patch.get(5, TimeUnit.SECONDS).body());
+        }
+        // one drain for the first patch, one for the three queued behind it
+        assertEquals(List.of(1, 3), loads.stream().map(List::size).toList());
+        assertEquals(2, saves.get());
+    }
+
+    @Test
+    void patch_failingPatch_othersOfTheDrainApplied() throws Exception {
+        List<List<PatchDocument>> loads = new CopyOnWriteArrayList<>();
+        CountDownLatch release = new CountDownLatch(1);
+        PatchCoalescer<AuthorEntity, String> coalescer =
+                coalescer(holdingFirstLoad(loads, release));
+
+        Future<PatchOutcome<String>> first = firstPatch(coalescer, loads);
+        Future<PatchOutcome<String>> before =
+                queue(coalescer, rename("before"), ReturnPreference.REPRESENTATION, null);
+        Future<PatchOutcome<String>> failing =
+                queue(
+                        coalescer,
+                        """
+                        [
+                            { "op": "test", "path": "/name", "value": "someone else" },
+                            { "op": "replace", "path": "/name", "value": "failing" }
+                        ]
+                        """,
+                        ReturnPreference.REPRESENTATION,
+                        null);
+        Future<PatchOutcome<String>> after =
+                queue(coalescer, rename("after"), ReturnPreference.REPRESENTATION, null);
+        release.countDown();
+
+        first.get(5, TimeUnit.SECONDS);
+        assertInstanceOf(JsonPatchClientError.class, failure(failing));
+        assertEquals("after", before.get(5, TimeUnit.SECONDS).body());
+        assertEquals("after", after.get(5, TimeUnit.SECONDS).body());
+        assertEquals(List.of(1, 3), loads.stream().map(List::size).toList());
+        assertEquals("after", author.getName());
+    }
+
+    @Test
+    void patch_ifMatchAfterChangeInDrain_preconditionFailed() throws Exception {
+        author.setVersion(0);
+        List<List<PatchDocument>> loads = new CopyOnWriteArrayList<>();
+        CountDownLatch release = new CountDownLatch(1);
+        PatchCoalescer<AuthorEntity, String> coalescer =
+                coalescer(holdingFirstLoad(loads, release));
+
+        Future<PatchOutcome<String>> first = firstPatch(coalescer, loads);
+        // the first patch of the drain still sees the version it expects
+        Future<PatchOutcome<String>> matching =
+                queue(coalescer, rename("matching"), ReturnPreference.MINIMAL, 0);
+        // the same version no longer matches once the patch above changed the entity
+        Future<PatchOutcome<String>> stale =
+                queue(coalescer, rename("stale"), ReturnPreference.MINIMAL, 0);
+        Future<PatchOutcome<String>> unconditional =
+                queue(coalescer, rename("unconditional"), ReturnPreference.MINIMAL, null);
+        release.countDown();
+
+        first.get(5, TimeUnit.SECONDS);
+        matching.get(5, TimeUnit.SECONDS);
+        assertInstanceOf(PreconditionFailedException.class, failure(stale));
+        unconditional.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of(1, 3), loads.stream().map(List::size).toList());
+        assertEquals("unconditional", author.getName());
+    }
+
+    private PatchCoalescer<AuthorEntity, String> coalescer(
+            PatchCoalescer.Loader<AuthorEntity> loader) {
+        // saveAndFlush returns the entity, the only repository method the coalescer calls
+        return coalescer(loader, repository((proxy, method, args) -> args[0]));
+    }
+
+    private PatchCoalescer<AuthorEntity, String> coalescer(
+            PatchCoalescer.Loader<AuthorEntity> loader,
+            JpaRepository<AuthorEntity, Integer> repository) {
+        return new PatchCoalescer<>(
+                new TransactionTemplate(new NoTransactionManager()),
+                repository,
+                loader,
+                new AuthorPatchService(
+                        new JsonPatchService(
+                                objectMapper, new JsonPatchCompiler(objectMapper, 256))),
+                AuthorEntity::getVersion,
+                AuthorEntity::getName,
+                PatchMetrics.NOOP,
+                AuthorEntity.class,
+                PatchCoalescer.Pushdown.none());
+    }
+
+    /** Renames the author of id 1 through the coalescer, from a thread of the executor. */
+    private Future<PatchOutcome<String>> rename(
+            ExecutorService executor,
+            PatchCoalescer<AuthorEntity, String> coalescer,
+            String name,
+            ReturnPreference preference,
+            Integer expectedVersion)
+            throws Exception {
+        return executor.submit(call(coalescer, rename(name), preference, expectedVersion));
+    }
+
+    /**
+     * Loads the author and records the patches of each load. The first load waits for {@code
+     * release}, so that the patches queued meanwhile end up in a single drain.
+     */
+    private PatchCoalescer.Loader<AuthorEntity> holdingFirstLoad(
+            List<List<PatchDocument>> loads, CountDownLatch release) {
+        return (id, patches) -> {
+            loads.add(patches);
+            if (loads.size() == 1) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return Optional.of(author);
+        };
+    }
+
+    /** Sends the first patch, and returns once its drain is loading the author. */
+    private Future<PatchOutcome<String>> firstPatch(
+            PatchCoalescer<AuthorEntity, String> coalescer, List<List<PatchDocument>> loads)
+            throws Exception {
+        FutureTask<PatchOutcome<String>> first =
+                new FutureTask<>(
+                        call(coalescer, rename("first"), ReturnPreference.REPRESENTATION, null));
+        Thread.ofVirtual().start(first);
+        while (loads.isEmpty()) {
+            Thread.sleep(1);
+        }
+        return first;
+    }
+
+    /**
+     * Sends a patch while a drain is running, and returns once its caller waits for its turn, that
+     * is once the patch is queued.
+     */
+    private Future<PatchOutcome<String>> queue(
+            PatchCoalescer<AuthorEntity, String> coalescer,
+            String json,
+            ReturnPreference preference,
+            Integer expectedVersion)
+            throws Exception {
+        FutureTask<PatchOutcome<String>> task =
+                new FutureTask<>(call(coalescer, json, preference, expectedVersion));
+        Thread caller = Thread.ofVirtual().start(task);
+        while (caller.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+        return task;
+    }
+
+    /** Applies the patch to the author of id 1 through the coalescer. */
+    private Callable<PatchOutcome<String>> call(
+            PatchCoalescer<AuthorEntity, String> coalescer,
+            String json,
+            ReturnPreference preference,
+            Integer expectedVersion)
+            throws Exception {
+        JsonPatchDocument patch =
+                new JsonPatchReader(JsonPatchLimits.DEFAULT).read(objectMapper.createParser(json));
+        return () -> {
+            try {
+                return coalescer.patch(1, patch, expectedVersion, preference);
+            } catch (JsonPatchServerError e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    private static String rename(String name) {
+        return String.format(
+                "[{ \"op\": \"replace\", \"path\": \"/name\", \"value\": \"%s\" }]", name);
+    }
+
+    private static Throwable failure(Future<?> future) {
+        return assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS))
+                .getCause();
+    }
+
+    /** A repository whose methods are all implemented by the given handler. */
+    @SuppressWarnings("unchecked")
+    private static JpaRepository<AuthorEntity, Integer> repository(InvocationHandler handler) {
+        return (JpaRepository<AuthorEntity, Integer>)
+                Proxy.newProxyInstance(
+                        JpaRepository.class.getClassLoader(),
+                        new Class<?>[] {JpaRepository.class},
+                        handler);
+    }
+
+    private static class NoTransactionManager implements PlatformTransactionManager {
+
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {}
+
+        @Override
+        public void rollback(TransactionStatus status) {}
+    }
+}
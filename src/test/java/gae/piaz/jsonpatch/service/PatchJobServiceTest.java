@@ -0,0 +1,70 @@
+package gae.piaz.jsonpatch.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import gae.piaz.jsonpatch.controller.dto.PatchJobDTO;
+import gae.piaz.jsonpatch.controller.dto.PatchJobDTO.State;
+import gae.piaz.jsonpatch.service.core.JsonPatchClientError;
+import java.util.UUID;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/** Checks that every job ends in a final state, whatever its task throws. */
+public class PatchJobServiceTest {
+
+    private final PatchJobService service = new PatchJobService(1, 10, 10);
+
+    @AfterEach
+    void shutdown() {
+        service.shutdown();
+    }
+
+    @Test
+    void submit_taskReturns_succeeded() throws InterruptedException {
+        PatchJobDTO job = awaitDone(service.submit(() -> "patched"));
+
+        assertEquals(State.SUCCEEDED, job.state());
+        assertEquals(200, job.status());
+        assertEquals("patched", job.result());
+    }
+
+    @Test
+    void submit_taskThrowsClientError_failedWithItsStatus() throws InterruptedException {
+        PatchJobDTO job =
+                awaitDone(
+                        service.submit(
+                                () -> {
+                                    throw new JsonPatchClientError("invalid patch");
+                                }));
+
+        assertEquals(State.FAILED, job.state());
+        assertEquals(400, job.status());
+        assertEquals("invalid patch", job.error());
+    }
+
+    @Test
+    void submit_taskThrowsError_failed() throws InterruptedException {
+        PatchJobDTO job =
+                awaitDone(
+                        service.submit(
+                                () -> {
+                                    throw new AssertionError("broken");
+                                }));
+
+        assertEquals(State.FAILED, job.state());
+        assertEquals(500, job.status());
+        assertEquals("broken", job.error());
+    }
+
+    private PatchJobDTO awaitDone(UUID id) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (System.nanoTime() < deadline) {
+            PatchJobDTO job = service.find(id).orElseThrow();
+            if (job.state() == State.SUCCEEDED || job.state() == State.FAILED) {
+                return job;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("job " + id + " did not finish");
+    }
+}